@@ -4,7 +4,7 @@
 JAVA=java
 BASEDIR=..
 LIBDIR=$BASEDIR/runtime/GephiForceDiagramTool/lib
-CLASSPATH="$LIBDIR/GephiForceDiagramTool.jar:$LIBDIR/jcolorbrewer-5.2.jar:$LIBDIR/argparse4j-0.4.4.jar:$LIBDIR/commons-math3-3.4.1.jar:$LIBDIR/gephi-toolkit-0.9.1-all.jar"
+CLASSPATH="$LIBDIR/GephiForceDiagramTool.jar:$LIBDIR/jcolorbrewer-5.2.jar:$LIBDIR/argparse4j-0.4.4.jar:$LIBDIR/gephi-toolkit-0.9.1-all.jar"
 
 $JAVA -cp $CLASSPATH com.civisanalytics.gephi.CreateGephiForceDiagram \
     --gml_input_file "$1" \
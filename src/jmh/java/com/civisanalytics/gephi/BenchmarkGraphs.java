@@ -0,0 +1,77 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.gephi.graph.api.GraphModel;
+import org.openide.util.Lookup;
+
+/**
+ * Reproducible random graphs for benchmarks
+ * <p>
+ * Graphs are generated by {@link GraphGenerator} with its default model
+ * (a stochastic block model of mean degree 10) and a fixed seed, so
+ * benchmarks run on the same graphs as load tests.  Nodes have the
+ * attributes used by default for a diagram: {@code centrality} (the
+ * node's degree), {@code community} and {@code name}.
+ */
+public abstract class BenchmarkGraphs {
+
+    static final long SEED = 42L;
+
+    /**
+     * Degree filter for benchmarks, pruning the sparsest nodes
+     */
+    static final int DEGREE_FILTER = 5;
+
+    /**
+     * Seeded generator of a random graph
+     *
+     * @param numNodes  number of nodes
+     */
+    static GraphGenerator generator(final int numNodes) {
+        GraphGenerator generator = new GraphGenerator();
+        generator.setNumNodes(numNodes);
+        generator.setSeed(SEED);
+        return generator;
+    }
+
+    /**
+     * Create a new project containing a random graph, with nodes at
+     * random positions
+     *
+     * @param numNodes  number of nodes
+     * @return Gephi state for the project's workspace
+     */
+    static GephiState createGraph(final int numNodes) throws IOException {
+        GephiState gephiState = new GephiState(Lookup.getDefault());
+        if (gephiState.projectController.getCurrentProject() != null) {
+            gephiState.projectController.closeCurrentProject();
+        }
+        gephiState.projectController.newProject();
+        GraphModel graphModel = gephiState.graphController.getGraphModel();
+
+        // Load through a snapshot, which places nodes as import of GML would
+        File snapshot = File.createTempFile("benchmark", ".snapshot");
+        try {
+            generator(numNodes).writeSnapshot(snapshot);
+            GraphSnapshot.read(snapshot, graphModel);
+        } finally {
+            snapshot.delete();
+        }
+
+        gephiState.initializeGraphModel();
+        return gephiState;
+    }
+
+    /**
+     * Diagram with default options, for graph created by {@code createGraph}
+     */
+    static GephiForceDiagram createDiagram(final GephiState gephiState) {
+        GephiForceDiagram fd = new GephiForceDiagram(gephiState);
+        fd.setNodeSizeColumn("centrality");
+        fd.setNodeColorColumn("community");
+        fd.setNodeLabelColumn("name");
+        return fd;
+    }
+}
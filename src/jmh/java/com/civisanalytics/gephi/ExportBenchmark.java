@@ -0,0 +1,64 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PNG export of a diagram at the default figure size
+ * <p>
+ * Rendering requires a display (e.g. Xvfb on a server).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int numNodes;
+
+    private GephiState gephiState;
+    private GephiForceDiagram diagram;
+    private File png;
+
+    @Setup(Level.Trial)
+    public void createDiagram() throws GephiForceDiagramException, IOException {
+        gephiState = BenchmarkGraphs.createGraph(numNodes);
+        diagram = BenchmarkGraphs.createDiagram(gephiState);
+        diagram.resizeNodes();
+        diagram.colorNodes();
+        diagram.labelNodes();
+        png = File.createTempFile("benchmark", ".png");
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePng() {
+        if (!png.delete()) {
+            png.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public File exportFile() throws IOException {
+        GephiUtils.exportFile(gephiState, diagram.getFigureWidth(), diagram.getFigureHeight(),
+                              gephiState.workspace, png);
+        return png;
+    }
+}
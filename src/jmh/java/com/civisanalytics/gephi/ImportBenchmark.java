@@ -0,0 +1,76 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a GML file, by Gephi's importer and by {@link GmlReader}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int numNodes;
+
+    @Param({"gephi", "streaming"})
+    public String importer;
+
+    private File gml;
+    private GephiForceDiagram diagram;
+    private GephiState gephiState;
+    private Workspace workspace;
+
+    @Setup(Level.Trial)
+    public void writeGml() throws IOException {
+        gml = File.createTempFile("benchmark", ".gml");
+        BenchmarkGraphs.generator(numNodes).writeGml(gml);
+        gephiState = new GephiState(Lookup.getDefault());
+        diagram = new GephiForceDiagram(gephiState);
+        diagram.setStreamingImport(importer.equals("streaming"));
+    }
+
+    @Setup(Level.Iteration)
+    public void newProject() {
+        if (gephiState.projectController.getCurrentProject() != null) {
+            gephiState.projectController.closeCurrentProject();
+        }
+        gephiState.projectController.newProject();
+        workspace = gephiState.projectController.getCurrentWorkspace();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteGml() {
+        if (!gml.delete()) {
+            gml.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public Graph importGraph() throws IOException {
+        diagram.importGraph(gml, workspace);
+        return gephiState.graphController.getGraphModel(workspace).getGraph();
+    }
+}
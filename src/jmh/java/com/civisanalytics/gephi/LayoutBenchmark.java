@@ -0,0 +1,79 @@
+package com.civisanalytics.gephi;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.gephi.layout.plugin.forceAtlas.ForceAtlasLayout;
+import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2Builder;
+import org.gephi.layout.plugin.labelAdjust.LabelAdjust;
+import org.gephi.layout.spi.Layout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single iterations of each layout algorithm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LayoutBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int numNodes;
+
+    @Param({"force_atlas", "force_atlas2", "force_atlas2_fast", "label_adjust"})
+    public String algorithm;
+
+    private GephiState gephiState;
+    private Layout layout;
+
+    @Setup(Level.Trial)
+    public void createGraph() throws GephiForceDiagramException, IOException {
+        gephiState = BenchmarkGraphs.createGraph(numNodes);
+
+        // Labels and sizes affect label adjust and ForceAtlas2 size adjustment
+        GephiForceDiagram diagram = BenchmarkGraphs.createDiagram(gephiState);
+        diagram.resizeNodes();
+        diagram.labelNodes();
+    }
+
+    @Setup(Level.Iteration)
+    public void initLayout() {
+        if (algorithm.equals("force_atlas")) {
+            layout = new ForceAtlasLayout(null);
+        } else if (algorithm.equals("force_atlas2")) {
+            layout = new ForceAtlas2Builder().buildLayout();
+        } else if (algorithm.equals("force_atlas2_fast")) {
+            layout = new FastForceAtlas2Layout();
+        } else {
+            layout = new LabelAdjust(null);
+        }
+        layout.setGraphModel(gephiState.graphModel);
+        layout.resetPropertiesValues();
+        layout.initAlgo();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endLayout() {
+        layout.endAlgo();
+    }
+
+    @Benchmark
+    public void goAlgo() {
+        layout.goAlgo();
+    }
+}
@@ -0,0 +1,64 @@
+package com.civisanalytics.gephi;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stages of {@code GephiForceDiagram} that run once per diagram, each
+ * measured on a freshly generated graph
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int numNodes;
+
+    private GephiState gephiState;
+    private GephiForceDiagram diagram;
+
+    @Setup(Level.Iteration)
+    public void createGraph() throws IOException {
+        gephiState = BenchmarkGraphs.createGraph(numNodes);
+        diagram = BenchmarkGraphs.createDiagram(gephiState);
+        diagram.setDegreeFilter(BenchmarkGraphs.DEGREE_FILTER);
+    }
+
+    @Benchmark
+    public int degreeFilterNodes() {
+        diagram.degreeFilterNodes();
+        return gephiState.graph.getNodeCount();
+    }
+
+    @Benchmark
+    public void resizeNodes() {
+        diagram.resizeNodes();
+    }
+
+    @Benchmark
+    public void colorNodes() throws GephiForceDiagramException {
+        diagram.colorNodes();
+    }
+
+    @Benchmark
+    public void labelNodes() throws GephiForceDiagramException {
+        diagram.labelNodes();
+    }
+}
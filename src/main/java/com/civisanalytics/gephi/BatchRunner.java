@@ -0,0 +1,234 @@
+package com.civisanalytics.gephi;
+
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Render many force-directed diagrams concurrently, as listed in a
+ * manifest file
+ * <p>
+ * Each non-blank line of the manifest (other than comments beginning
+ * with {@code #}) describes one job: the input GML file, the output PNG
+ * file, and optionally any command-line options of
+ * {@link CreateGephiForceDiagram} that should override the options shared
+ * by all jobs, separated by whitespace and quoted as for
+ * {@link GephiRenderDaemon#splitArgs}.  Jobs with CSV input options are
+ * reported as failed.
+ * <p>
+ * Jobs are run on a bounded pool of worker threads.  Each job has its own
+ * {@code GephiState} and workspace, so that import, filtering and layout
+ * of different graphs proceed in parallel; the short steps that rely on
+ * Gephi's current workspace (node appearance and image export) are
+ * serialized.
+ */
+public class BatchRunner {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Outcome of a single job in the manifest
+     */
+    public static class JobResult {
+        private final String input;
+        private final String output;
+        private final boolean success;
+        private final double seconds;
+        private final String message;
+
+        JobResult(final String i, final String o, final boolean s,
+                  final double sec, final String m) {
+            input = i;
+            output = o;
+            success = s;
+            seconds = sec;
+            message = m;
+        }
+
+        public String getInput() { return input; }
+        public String getOutput() { return output; }
+        public boolean isSuccess() { return success; }
+        public double getSeconds() { return seconds; }
+        public String getMessage() { return message; }
+    }
+
+    private final String[] baseArgs;
+    private final int numThreads;
+
+    /**
+     * @param args     options shared by all jobs (not including input
+     *                 and output files)
+     * @param threads  number of jobs to run concurrently
+     */
+    public BatchRunner(final String[] args, final int threads) {
+        baseArgs = args.clone();
+        numThreads = threads;
+    }
+
+    /**
+     * Read jobs from manifest file
+     *
+     * @param manifest  manifest file
+     * @return list of jobs, each an array of the input file, output file
+     *         and any overriding options
+     */
+    public static List<String[]> readManifest(final File manifest) throws IOException {
+        List<String[]> jobs = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+            manifest), UTF8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                List<String> tokenList;
+                try {
+                    tokenList = GephiRenderDaemon.splitArgs(trimmed);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + " of " + manifest + ": "
+                                          + e.getMessage());
+                }
+                String[] tokens = tokenList.toArray(new String[tokenList.size()]);
+                if (tokens.length < 2) {
+                    throw new IOException("Line " + lineNumber + " of " + manifest
+                                          + " must list input and output files");
+                }
+                jobs.add(tokens);
+            }
+        } finally {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    /**
+     * Run all jobs, returning their results in the order given
+     *
+     * @param jobs  jobs as returned by {@code readManifest}
+     * @return result of each job
+     */
+    public List<JobResult> run(final List<String[]> jobs) throws InterruptedException {
+        // All job workspaces belong to a single project
+        final ProjectController projectController
+            = Lookup.getDefault().lookup(ProjectController.class);
+        synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+            if (projectController.getCurrentProject() == null) {
+                projectController.newProject();
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        List<Future<JobResult>> futures = new ArrayList<Future<JobResult>>();
+        try {
+            for (final String[] job : jobs) {
+                futures.add(pool.submit(new Callable<JobResult>() {
+                        @Override
+                        public JobResult call() {
+                            return runJob(projectController, job);
+                        }
+                    }));
+            }
+
+            List<JobResult> results = new ArrayList<JobResult>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new JobResult(jobs.get(i)[0], jobs.get(i)[1], false, 0.0,
+                                              String.valueOf(e.getCause())));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run a single job in a new workspace
+     */
+    private JobResult runJob(final ProjectController projectController, final String[] job) {
+        long start = System.nanoTime();
+        List<String> args = new ArrayList<String>(Arrays.asList(baseArgs));
+        args.add("--gml_input_file");
+        args.add(job[0]);
+        args.add("--png_output_file");
+        args.add(job[1]);
+        args.addAll(Arrays.asList(job).subList(2, job.length));
+        String[] jobArgs = args.toArray(new String[args.size()]);
+
+        Workspace workspace;
+        synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+            workspace = projectController.newWorkspace(projectController.getCurrentProject());
+        }
+        try {
+            ArgumentParser parser = CreateGephiForceDiagram.createParser();
+            Namespace ns = parser.parseArgs(jobArgs);
+            if (ns.get("edges_csv") != null || ns.get("nodes_csv") != null) {
+                return new JobResult(job[0], job[1], false, elapsedSeconds(start),
+                                     "CSV input is not supported in batch manifests, "
+                                     + "whose input files are GML");
+            }
+            CreateGephiForceDiagram.validateArgs(parser, ns, jobArgs);
+            GephiForceDiagram fd = CreateGephiForceDiagram
+                .initDiagram(ns, new GephiState(Lookup.getDefault()));
+            fd.run(CreateGephiForceDiagram.getInputFile(ns), (File) ns.get("png_output_file"),
+                   workspace);
+            return new JobResult(job[0], job[1], true, elapsedSeconds(start), "");
+        } catch (ArgumentParserException e) {
+            return new JobResult(job[0], job[1], false, elapsedSeconds(start), e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new JobResult(job[0], job[1], false, elapsedSeconds(start), e.toString());
+        } finally {
+            synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+                projectController.deleteWorkspace(workspace);
+            }
+        }
+    }
+
+    private static double elapsedSeconds(final long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Write tab-separated report of job results
+     *
+     * @param results  job results
+     * @param out      stream to which report is written
+     */
+    public static void writeReport(final List<JobResult> results, final PrintStream out) {
+        out.println("input\toutput\tstatus\tseconds\tmessage");
+        for (JobResult r : results) {
+            out.println(r.getInput() + "\t" + r.getOutput() + "\t"
+                        + (r.isSuccess() ? "OK" : "ERROR") + "\t"
+                        + String.format("%.3f", r.getSeconds()) + "\t"
+                        + r.getMessage().replaceAll("\\s+", " "));
+        }
+        out.flush();
+    }
+}
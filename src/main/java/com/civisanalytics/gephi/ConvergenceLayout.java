@@ -0,0 +1,208 @@
+package com.civisanalytics.gephi;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.spi.LayoutData;
+import org.gephi.layout.plugin.AutoLayout;
+import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2LayoutData;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+
+/**
+ * Layout wrapper that stops an {@code AutoLayout} once the wrapped
+ * force-directed layout has settled, or has run a given number of
+ * iterations
+ * <p>
+ * After every iteration, the total displacement of all nodes is measured,
+ * along with the global swing of ForceAtlas2 (when the wrapped layout is
+ * ForceAtlas2 or {@link FastForceAtlas2Layout}).  Each metric is compared
+ * with the largest value it has taken so far in the run; once every metric
+ * stays below {@code tolerance} times its peak for {@code stableIterations}
+ * consecutive iterations, the {@code AutoLayout} is cancelled.  For a
+ * {@link MultilevelLayout}, only iterations on the finest level (the graph
+ * itself) are measured.  The
+ * duration of the {@code AutoLayout} remains a hard ceiling on the time
+ * spent in layout.
+ * <p>
+ * If {@code maxIterations} is set, the {@code AutoLayout} is also cancelled
+ * after that many iterations (of all levels, for a {@link MultilevelLayout}),
+ * so that the layout does not depend on the speed of the machine.
+ * Convergence is not measured if {@code tolerance} is zero.
+ */
+public class ConvergenceLayout implements Layout {
+    private final Layout layout;
+    private final AutoLayout autoLayout;
+    private final double tolerance;
+    private final int stableIterations;
+    private int maxIterations;
+
+    private GraphModel graphModel;
+    private float[] lastX;
+    private float[] lastY;
+    private double peakDisplacement;
+    private double peakSwing;
+    private int numStable;
+    private int iterations;
+    private boolean converged;
+
+    /**
+     * @param l                 layout to be wrapped
+     * @param a                 {@code AutoLayout} that will execute this layout
+     * @param tol               fraction of peak displacement (and swing)
+     *                          below which the layout is considered settled
+     *                          (zero never to consider it settled)
+     * @param numIterations     number of consecutive settled iterations
+     *                          required before stopping
+     */
+    public ConvergenceLayout(final Layout l, final AutoLayout a,
+                             final double tol, final int numIterations) {
+        layout = l;
+        autoLayout = a;
+        tolerance = tol;
+        stableIterations = numIterations;
+    }
+
+    public Layout getLayout() { return layout; }
+    public int getMaxIterations() { return maxIterations; }
+    public void setMaxIterations(final int t) { maxIterations = t; }
+    public int getIterations() { return iterations; }
+    public boolean isConverged() { return converged; }
+
+    @Override
+    public void initAlgo() {
+        layout.initAlgo();
+        peakDisplacement = 0.0;
+        peakSwing = 0.0;
+        numStable = 0;
+        iterations = 0;
+        converged = false;
+        lastX = null;
+        lastY = null;
+    }
+
+    @Override
+    public void setGraphModel(final GraphModel gm) {
+        graphModel = gm;
+        layout.setGraphModel(gm);
+    }
+
+    @Override
+    public void goAlgo() {
+        if (converged) {
+            return;
+        }
+        layout.goAlgo();
+        iterations++;
+        if (maxIterations > 0 && iterations >= maxIterations) {
+            System.err.println("Layout stopped after " + iterations + " iterations");
+            autoLayout.cancel();
+            return;
+        }
+        if (tolerance <= 0) {
+            return;
+        }
+
+        // Coarse levels of a multilevel layout do not move the graph's nodes
+        if (layout instanceof MultilevelLayout && !((MultilevelLayout) layout).isFinestLevel()) {
+            return;
+        }
+
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            int n = graph.getNodeCount();
+            boolean initialized = lastX != null && lastX.length == n;
+            if (!initialized) {
+                lastX = new float[n];
+                lastY = new float[n];
+            }
+
+            double displacement = 0.0;
+            double swing = 0.0;
+            boolean hasSwing = false;
+            int i = 0;
+            for (Node node : graph.getNodes()) {
+                float x = node.x();
+                float y = node.y();
+                if (initialized) {
+                    displacement += Math.hypot(x - lastX[i], y - lastY[i]);
+                }
+                lastX[i] = x;
+                lastY[i] = y;
+
+                // Global swing, as computed internally by ForceAtlas2
+                LayoutData data = node.getLayoutData();
+                if (data instanceof ForceAtlas2LayoutData) {
+                    ForceAtlas2LayoutData fa2Data = (ForceAtlas2LayoutData) data;
+                    swing += fa2Data.mass * Math.hypot(fa2Data.old_dx - fa2Data.dx,
+                                                       fa2Data.old_dy - fa2Data.dy);
+                    hasSwing = true;
+                }
+                i++;
+            }
+
+            if (layout instanceof FastForceAtlas2Layout) {
+                swing = ((FastForceAtlas2Layout) layout).getEngine().getGlobalSwing();
+                hasSwing = true;
+            }
+
+            if (initialized) {
+                updateConvergence(displacement, hasSwing ? swing : 0.0);
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        if (converged) {
+            System.err.println("Layout converged after " + iterations + " iterations");
+            autoLayout.cancel();
+        }
+    }
+
+    /**
+     * Compare metrics for the latest iteration with their peak values
+     *
+     * @param displacement  total distance moved by all nodes
+     * @param swing         ForceAtlas2 global swing (zero if unavailable)
+     */
+    private void updateConvergence(final double displacement, final double swing) {
+        peakDisplacement = Math.max(peakDisplacement, displacement);
+        peakSwing = Math.max(peakSwing, swing);
+
+        boolean settled = displacement <= tolerance * peakDisplacement
+            && swing <= tolerance * peakSwing;
+        if (settled) {
+            numStable++;
+        } else {
+            numStable = 0;
+        }
+        converged = numStable >= stableIterations;
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return !converged && layout.canAlgo();
+    }
+
+    @Override
+    public void endAlgo() {
+        layout.endAlgo();
+    }
+
+    @Override
+    public LayoutProperty[] getProperties() {
+        return layout.getProperties();
+    }
+
+    @Override
+    public void resetPropertiesValues() {
+        layout.resetPropertiesValues();
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return layout.getBuilder();
+    }
+}
@@ -9,9 +9,14 @@ import net.sourceforge.argparse4j.inf.ArgumentType;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 
+import org.openide.util.Lookup;
+
 import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -93,20 +98,96 @@ public class CreateGephiForceDiagram {
         }
     }
 
-    public static void main(final String[] args) {
+    /**
+     * Create parser for command-line options
+     *
+     * @return argparse4j parser for all options of {@code CreateGephiForceDiagram}
+     */
+    protected static ArgumentParser createParser() {
         ArgumentParser parser = ArgumentParsers.newArgumentParser("CreateGephiForceDiagram")
             .defaultHelp(true)
             .description("Create Gephi Force Diagram for Network");
 
         ArgumentGroup ioGroup = parser.addArgumentGroup("I/O Options");
         ioGroup.addArgument("-gml", "--gml_input_file")
-            .required(true)
             .type(Arguments.fileType().verifyCanRead())
-            .help("Specify input file in GML format");
+            .help("Specify input file in GML format (required unless --batch_manifest is given)");
         ioGroup.addArgument("-png", "--png_output_file")
-            .required(true)
             .type(Arguments.fileType())
-            .help("Specify output file in PNG format");
+            .help("Specify output file in PNG format (required unless --batch_manifest is given)");
+        ioGroup.addArgument("-ecsv", "--edges_csv")
+            .type(Arguments.fileType().verifyCanRead())
+            .help("Specify input file of edges (columns source, target and optionally weight), "
+                  + "as comma- or tab-separated values, instead of --gml_input_file");
+        ioGroup.addArgument("-ncsv", "--nodes_csv")
+            .type(Arguments.fileType().verifyCanRead())
+            .help("Input file of nodes (columns id, optionally label, and node attributes), "
+                  + "as comma- or tab-separated values, to be read with --edges_csv");
+        ioGroup.addArgument("-si", "--streaming_import")
+            .action(Arguments.storeTrue())
+            .help("Read GML input in a single streaming pass, loading only the node attributes "
+                  + "used for sizing, coloring and labeling");
+        ioGroup.addArgument("-sc", "--snapshot_cache")
+            .action(Arguments.storeTrue())
+            .help("Load graph from a binary snapshot of the input file when one exists, "
+                  + "and write a snapshot otherwise");
+        ioGroup.addArgument("-sd", "--snapshot_dir")
+            .type(Arguments.fileType())
+            .help("Directory in which to store snapshots (defaults to directory of input file)");
+        ioGroup.addArgument("-rcd", "--render_cache_dir")
+            .type(Arguments.fileType())
+            .help("Directory of a cache from which the figure of an identical earlier run, "
+                  + "or the layout of one differing only in rendering options, is reused");
+        ioGroup.addArgument("-rcs", "--render_cache_size_mb")
+            .type(new BoundedNumericArgument<Long>(0L, Long.MAX_VALUE >> 20, true, true))
+            .setDefault(1024L)
+            .help("Maximum size of render cache in megabytes, beyond which least recently "
+                  + "used entries are deleted");
+        ioGroup.addArgument("-pin", "--positions_input_file")
+            .type(Arguments.fileType().verifyCanRead())
+            .help("CSV file of node positions (columns id, x, y) from an earlier run, "
+                  + "from which to start layout");
+        ioGroup.addArgument("-rs", "--restyle")
+            .action(Arguments.storeTrue())
+            .help("Apply sizes, colors and labels to the positions in --positions_input_file "
+                  + "and export, without running layout");
+        ioGroup.addArgument("-pout", "--positions_output_file")
+            .type(Arguments.fileType())
+            .help("File to which id, position, size, color and label of each node are written "
+                  + "after layout");
+        ioGroup.addArgument("-pfmt", "--positions_output_format")
+            .choices("csv", "binary").setDefault("csv")
+            .help("Format of positions output file (little-endian binary or CSV)");
+        ioGroup.addArgument("-dzi", "--deep_zoom_output")
+            .type(Arguments.fileType())
+            .help("Descriptor file (.dzi) of a Deep Zoom tile pyramid to write in addition to "
+                  + "the PNG file; tiles are written to a directory named after it");
+        ioGroup.addArgument("-dzs", "--deep_zoom_scale")
+            .type(new BoundedNumericArgument<Integer>(1, null, true, true)).setDefault(1)
+            .help("Size of the most detailed level of the tile pyramid, "
+                  + "as a multiple of the figure size");
+        ioGroup.addArgument("-dzt", "--deep_zoom_threads")
+            .type(new BoundedNumericArgument<Integer>(0, null, false, true))
+            .setDefault(Runtime.getRuntime().availableProcessors())
+            .help("Number of threads rendering tiles of the pyramid");
+        ioGroup.addArgument("-mout", "--metrics_output")
+            .type(Arguments.fileType())
+            .help("File to which a JSON report of the time and memory used by each phase "
+                  + "is written");
+
+        ArgumentGroup batchGroup = parser.addArgumentGroup("Batch Options");
+        batchGroup.addArgument("-bm", "--batch_manifest")
+            .type(Arguments.fileType().verifyCanRead())
+            .help("File listing one job per line: input GML file, output PNG file, "
+                  + "and any options overriding those given on the command line");
+        batchGroup.addArgument("-bt", "--batch_threads")
+            .type(new BoundedNumericArgument<Integer>(0, null, false, true))
+            .setDefault(Runtime.getRuntime().availableProcessors())
+            .help("Number of batch jobs to run concurrently");
+        batchGroup.addArgument("-br", "--batch_report")
+            .type(Arguments.fileType())
+            .help("File to which status and timing of each batch job is written "
+                  + "(standard output if not given)");
 
         ArgumentGroup layoutGroup = parser.addArgumentGroup("General Layout Options");
         layoutGroup.addArgument("-fight", "--figure_height")
@@ -115,6 +196,10 @@ public class CreateGephiForceDiagram {
         layoutGroup.addArgument("-figwd", "--figure_width")
             .type(new BoundedNumericArgument<Integer>(0, null, false, true)).setDefault(4096)
             .help("Width of output figure in pixels");
+        layoutGroup.addArgument("-tile", "--tile_size")
+            .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(0)
+            .help("Render figure in horizontal tiles of this many rows, "
+                  + "so that large figures fit in memory (0 to render at once)");
         layoutGroup.addArgument("-minls", "--min_label_size")
             .type(new BoundedNumericArgument<Float>(0f, null, true, true)).setDefault(0.0f)
             .help("Minimum size for labels");
@@ -132,7 +217,12 @@ public class CreateGephiForceDiagram {
             .help("Whether to adjust layout to prevent overlapping labels");
         layoutGroup.addArgument("-lat", "--label_adjust_time_seconds")
             .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(20)
-            .help("Number of seconds to spend on label adjust");
+            .help("Maximum number of seconds to spend on label adjust");
+        layoutGroup.addArgument("-laa", "--label_adjust_algorithm")
+            .setDefault("label_adjust")
+            .choices("label_adjust", "grid")
+            .help("Algorithm to use for label adjust: Gephi's LabelAdjust, or removal of "
+                  + "overlaps on a grid");
         layoutGroup.addArgument("-eo", "--edge_opacity")
             .type(new BoundedNumericArgument<Double>(0.0, 100.0, true, true)).setDefault(10.0)
             .help("Edge opacity for image rendering");
@@ -140,20 +230,48 @@ public class CreateGephiForceDiagram {
         ArgumentGroup faGroup = parser.addArgumentGroup("ForceAtlas Options");
         faGroup.addArgument("-la", "--layout_algorithm")
             .setDefault("force_atlas2")
-            .choices("force_atlas", "force_atlas2")
+            .choices("force_atlas", "force_atlas2", "force_atlas2_fast",
+                     "force_atlas2_multilevel")
             .help("Name of layout algorithm to use");
         faGroup.addArgument("-t", "--layout_time_seconds")
             .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(60)
             .help("Number of seconds to spend doing force-directed layout");
+        faGroup.addArgument("-li", "--layout_iterations")
+            .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(0)
+            .help("Number of iterations of force-directed layout to run, regardless of time "
+                  + "taken, instead of --layout_time_seconds (0 to disable)");
+        faGroup.addArgument("-seed", "--seed")
+            .type(Long.class)
+            .help("Seed for random initial node positions, replacing those of the input file, "
+                  + "so that runs with --layout_iterations are reproducible");
+        faGroup.addArgument("-ct", "--convergence_tolerance")
+            .type(new BoundedNumericArgument<Double>(0.0, 1.0, true, false)).setDefault(0.0)
+            .help("Stop layout early once node displacement (and ForceAtlas2 swing) "
+                  + "falls below this fraction of its peak value (0 to disable)");
+        faGroup.addArgument("-ci", "--convergence_iterations")
+            .type(new BoundedNumericArgument<Integer>(0, null, false, true)).setDefault(10)
+            .help("Number of consecutive converged iterations required to stop layout");
+        faGroup.addArgument("-delta", "--delta_file")
+            .type(Arguments.fileType().verifyCanRead())
+            .help("File of nodes and edges added to or removed from the input graph (columns "
+                  + "action, source, and optionally target and weight), after which layout is "
+                  + "refined only around the affected nodes");
+        faGroup.addArgument("-rh", "--refinement_hops")
+            .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(2)
+            .help("Number of hops from nodes affected by --delta_file within which nodes move");
+        faGroup.addArgument("-gpt", "--global_pass_threshold")
+            .type(new BoundedNumericArgument<Double>(0.0, null, true, true)).setDefault(0.25)
+            .help("Mean displacement of refined nodes, as a fraction of the layout's radius, "
+                  + "above which the whole graph is laid out again");
         faGroup.addArgument("-g", "--gravity")
             .type(new BoundedNumericArgument<Double>(0.0, null, true, true)).setDefault(1.0)
-            .help("Gravity parameter for force_atlas/force_atlas2");
+            .help("Gravity parameter for force_atlas/force_atlas2(_fast/_multilevel)");
         faGroup.addArgument("-sr", "--scaling_ratio")
             .type(new BoundedNumericArgument<Double>(0.0, null, true, true)).setDefault(5.0)
-            .help("Scaling ratio parameter for force_atlas/force_atlas2");
+            .help("Scaling ratio parameter for force_atlas/force_atlas2(_fast/_multilevel)");
         faGroup.addArgument("-jt", "--jitter_tolerance")
             .type(new BoundedNumericArgument<Double>(0.0, null, true, true)).setDefault(1.0)
-            .help("Jitter tolerance parameter for force_atlas2");
+            .help("Jitter tolerance parameter for force_atlas2(_fast/_multilevel)");
         faGroup.addArgument("-i", "--inertia")
             .type(new BoundedNumericArgument<Double>(0.0, null, true, true)).setDefault(0.1)
             .help("Inertia parameter for force_atlas");
@@ -181,6 +299,25 @@ public class CreateGephiForceDiagram {
         fieldGroup.addArgument("-df", "--degree_filter")
             .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(0)
             .help("Minimum number of connections for a node not to be filtered out of network");
+        fieldGroup.addArgument("-es", "--edge_sparsification")
+            .setDefault("none")
+            .choices("none", "threshold", "top_k", "sample")
+            .help("Method by which edges of a dense graph are dropped before layout, keeping "
+                  + "all nodes: by minimum weight, each node's heaviest edges, or sampling by "
+                  + "weight and estimated effective resistance");
+        fieldGroup.addArgument("-est", "--sparsify_threshold")
+            .type(Double.class).setDefault(0.0)
+            .help("Minimum weight of edges kept by threshold sparsification");
+        fieldGroup.addArgument("-esk", "--sparsify_top_k")
+            .type(new BoundedNumericArgument<Integer>(1, null, true, true)).setDefault(10)
+            .help("Number of heaviest edges of each node kept by top_k sparsification");
+        fieldGroup.addArgument("-esf", "--sparsify_fraction")
+            .type(new BoundedNumericArgument<Double>(0.0, 1.0, false, true)).setDefault(0.2)
+            .help("Approximate fraction of edges kept by sample sparsification");
+        fieldGroup.addArgument("-rae", "--render_all_edges")
+            .action(Arguments.storeTrue())
+            .help("Whether to render all edges of a graph sparsified for layout, rather than "
+                  + "only those kept");
 
         ArgumentGroup colorGroup = parser.addArgumentGroup("Color Palette Options");
         colorGroup.addArgument("-cps", "--color_palette_source")
@@ -198,37 +335,40 @@ public class CreateGephiForceDiagram {
             .type(new BoundedNumericArgument<Integer>(0, null, true, true)).setDefault(9)
             .help("Number of colors in palette");
 
+        return parser;
+    }
+
+    public static void main(final String[] args) {
+        // Subcommand generating a random graph
+        if (args.length > 0 && args[0].equals("generate")) {
+            GraphGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        ArgumentParser parser = createParser();
+
         Namespace ns = null;
         try {
             ns = parser.parseArgs(args);
+            validateArgs(parser, ns, args);
         } catch (ArgumentParserException e) {
             parser.handleError(e);
             System.exit(1);
         }
 
-        Set<String> hashArgs = new HashSet<String>(Arrays.asList(args));
-        if (ns.getString("layout_algorithm").equals("force_atlas")) {
-            if (hashArgs.contains("--jitter_tolerance") || hashArgs.contains("-jt")) {
-                System.err.println("Parameter --jitter_tolerance may not be specified "
-                                   + "for force_atlas algorithm");
-                System.exit(1);
-            }
-        } else if (ns.getString("layout_algorithm").equals("force_atlas2")) {
-            if (hashArgs.contains("--inertia") || hashArgs.contains("-i")) {
-                System.err.println("Parameter --inertia may not be specified "
-                                   + "for force_atlas2 algorithm");
-                System.exit(1);
-            } else if (hashArgs.contains("--speed") || hashArgs.contains("-s")) {
-                System.err.println("Parameter --speed may not be specified "
-                                   + "for force_atlas2 algorithm");
-                System.exit(1);
-            }
+        if (ns.get("batch_manifest") != null) {
+            System.exit(runBatch(ns, args));
         }
 
-        GephiForceDiagram fd = initDiagram(ns);
+        GephiForceDiagram fd = null;
+        try {
+            fd = initDiagram(ns, new GephiState(Lookup.getDefault()));
+        } catch (GephiForceDiagramException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
         try {
-            fd.run((File) ns.get("gml_input_file"),
-                   (File) ns.get("png_output_file"));
+            fd.run(getInputFile(ns), (File) ns.get("png_output_file"));
         } catch (Exception ex) {
             ex.printStackTrace();
             System.exit(1);
@@ -240,21 +380,167 @@ public class CreateGephiForceDiagram {
     }
 
     /**
-     * Initialize GephiForceDiagram with command-line parameters
+     * Input file of a run: the GML file, or the table of edges for CSV input
+     * (whose table of nodes is set on the diagram by {@code initDiagram})
      *
      * @param ns  Namespace object returned by argparse4j
+     * @return input file, or null if neither is given
+     */
+    protected static File getInputFile(final Namespace ns) {
+        File infile = (File) ns.get("gml_input_file");
+        return infile != null ? infile : (File) ns.get("edges_csv");
+    }
+
+    /**
+     * Run all jobs in batch manifest
+     *
+     * @param ns    Namespace object returned by argparse4j
+     * @param args  command-line arguments, to be shared by all jobs
+     * @return exit status (nonzero if any job failed)
+     */
+    private static int runBatch(final Namespace ns, final String[] args) {
+        String[] sharedArgs = removeOptions(args, "-bm", "--batch_manifest",
+                                            "-bt", "--batch_threads",
+                                            "-br", "--batch_report");
+        BatchRunner runner = new BatchRunner(sharedArgs, ns.getInt("batch_threads"));
+        try {
+            List<BatchRunner.JobResult> results
+                = runner.run(BatchRunner.readManifest((File) ns.get("batch_manifest")));
+
+            File reportFile = (File) ns.get("batch_report");
+            PrintStream report = reportFile == null ? System.out : new PrintStream(reportFile,
+                                                                                   "UTF-8");
+            try {
+                BatchRunner.writeReport(results, report);
+            } finally {
+                if (reportFile != null) {
+                    report.close();
+                }
+            }
+
+            int numFailed = 0;
+            for (BatchRunner.JobResult r : results) {
+                if (!r.isSuccess()) {
+                    numFailed++;
+                }
+            }
+            System.err.println("Completed " + (results.size() - numFailed) + " of "
+                               + results.size() + " batch jobs");
+            return numFailed == 0 ? 0 : 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /**
+     * Remove options (and their values) from command-line arguments
+     *
+     * @param args   command-line arguments
+     * @param names  names of options, each taking a single value
+     * @return arguments without named options
+     */
+    protected static String[] removeOptions(final String[] args, final String... names) {
+        Set<String> nameSet = new HashSet<String>(Arrays.asList(names));
+        List<String> kept = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].split("=", 2)[0];
+            if (nameSet.contains(name)) {
+                if (!args[i].contains("=")) {
+                    i++;
+                }
+            } else {
+                kept.add(args[i]);
+            }
+        }
+        return kept.toArray(new String[kept.size()]);
+    }
+
+    /**
+     * Check for missing options, and options that are inconsistent with
+     * the chosen layout algorithm
+     *
+     * @param parser  parser with which {@code args} were parsed
+     * @param ns      Namespace object returned by argparse4j
+     * @param args    command-line arguments
+     */
+    protected static void validateArgs(final ArgumentParser parser, final Namespace ns,
+                                       final String[] args) throws ArgumentParserException {
+        if (ns.get("batch_manifest") == null
+            && ((ns.get("gml_input_file") == null && ns.get("edges_csv") == null)
+                || ns.get("png_output_file") == null)) {
+            throw new ArgumentParserException("Parameters --gml_input_file (or --edges_csv) and "
+                                              + "--png_output_file are required", parser);
+        }
+        if (ns.get("edges_csv") != null
+            && (ns.get("gml_input_file") != null || ns.get("batch_manifest") != null)) {
+            throw new ArgumentParserException("Parameter --edges_csv may not be specified "
+                                              + "with --gml_input_file or --batch_manifest",
+                                              parser);
+        }
+        if (ns.get("nodes_csv") != null && ns.get("edges_csv") == null) {
+            throw new ArgumentParserException("Parameter --nodes_csv requires --edges_csv",
+                                              parser);
+        }
+        if (ns.getBoolean("restyle") && ns.get("positions_input_file") == null
+            && ns.get("batch_manifest") == null) {
+            throw new ArgumentParserException("Parameter --restyle requires "
+                                              + "--positions_input_file", parser);
+        }
+
+        Set<String> hashArgs = new HashSet<String>(Arrays.asList(args));
+        String layoutAlgorithm = ns.getString("layout_algorithm");
+        if (layoutAlgorithm.equals("force_atlas")) {
+            if (hashArgs.contains("--jitter_tolerance") || hashArgs.contains("-jt")) {
+                throw new ArgumentParserException("Parameter --jitter_tolerance may not be "
+                                                  + "specified for force_atlas algorithm",
+                                                  parser);
+            }
+        } else if (layoutAlgorithm.startsWith("force_atlas2")) {
+            if (hashArgs.contains("--inertia") || hashArgs.contains("-i")) {
+                throw new ArgumentParserException("Parameter --inertia may not be specified "
+                                                  + "for " + layoutAlgorithm + " algorithm",
+                                                  parser);
+            } else if (hashArgs.contains("--speed") || hashArgs.contains("-s")) {
+                throw new ArgumentParserException("Parameter --speed may not be specified "
+                                                  + "for " + layoutAlgorithm + " algorithm",
+                                                  parser);
+            }
+        }
+    }
+
+    /**
+     * Initialize GephiForceDiagram with command-line parameters
+     *
+     * @param ns          Namespace object returned by argparse4j
+     * @param gephiState  Gephi state with which to create diagram
      * @return initialized GephiForceDiagram object, on which
      *         `run` can be called
      */
-    private static GephiForceDiagram initDiagram(final Namespace ns) {
+    protected static GephiForceDiagram initDiagram(final Namespace ns,
+                                                   final GephiState gephiState)
+        throws GephiForceDiagramException {
 
-        GephiForceDiagram fd = new GephiForceDiagram();
+        GephiForceDiagram fd = new GephiForceDiagram(gephiState);
 
         fd.setLayoutTime(ns.getInt("layout_time_seconds"));
+        fd.setLayoutIterations(ns.getInt("layout_iterations"));
+        fd.setSeed((Long) ns.get("seed"));
+        fd.setConvergenceTolerance(ns.getDouble("convergence_tolerance"));
+        fd.setConvergenceIterations(ns.getInt("convergence_iterations"));
+        fd.setDeltaFile((File) ns.get("delta_file"));
+        fd.setRefinementHops(ns.getInt("refinement_hops"));
+        fd.setGlobalPassThreshold(ns.getDouble("global_pass_threshold"));
+        fd.setEdgeSparsification(ns.getString("edge_sparsification"));
+        fd.setSparsifyThreshold(ns.getDouble("sparsify_threshold"));
+        fd.setSparsifyTopK(ns.getInt("sparsify_top_k"));
+        fd.setSparsifyFraction(ns.getDouble("sparsify_fraction"));
+        fd.setRenderAllEdges(ns.getBoolean("render_all_edges"));
         fd.setLabelAdjustTime(ns.getInt("label_adjust_time_seconds"));
         fd.setDegreeFilter(ns.getInt("degree_filter"));
         fd.setFigureHeight(ns.getInt("figure_height"));
         fd.setFigureWidth(ns.getInt("figure_width"));
+        fd.setTileSize(ns.getInt("tile_size"));
         fd.setNodeSizeColumn(ns.getString("node_size_column"));
         fd.setNodeColorType(ns.getString("node_color_type"));
         fd.setNodeColorColumn(ns.getString("node_color_column"));
@@ -272,16 +558,29 @@ public class CreateGephiForceDiagram {
         fd.setMinNodeSize(ns.getInt("min_node_size"));
         fd.setMaxNodeSize(ns.getInt("max_node_size"));
         fd.setLabelAdjust(ns.getBoolean("label_adjust"));
-
-        try {
-            fd.setColorPaletteSource(CustomPalette
-                                     .parseSourceString(ns.getString("color_palette_source")));
-            fd.setColorPaletteType(CustomPalette
-                                   .parseTypeString(ns.getString("color_palette_type")));
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(-1);
+        fd.setLabelAdjustAlgorithm(ns.getString("label_adjust_algorithm"));
+        fd.setPositionsInputFile((File) ns.get("positions_input_file"));
+        fd.setRestyle(ns.getBoolean("restyle"));
+        fd.setPositionsOutputFile((File) ns.get("positions_output_file"));
+        fd.setPositionsOutputFormat(ns.getString("positions_output_format"));
+        fd.setDeepZoomOutputFile((File) ns.get("deep_zoom_output"));
+        fd.setDeepZoomScale(ns.getInt("deep_zoom_scale"));
+        fd.setDeepZoomThreads(ns.getInt("deep_zoom_threads"));
+        fd.setMetricsOutputFile((File) ns.get("metrics_output"));
+        fd.setStreamingImport(ns.getBoolean("streaming_import"));
+        fd.setSnapshotCache(ns.getBoolean("snapshot_cache"));
+        fd.setSnapshotDir((File) ns.get("snapshot_dir"));
+        fd.setRenderCacheDir((File) ns.get("render_cache_dir"));
+        fd.setRenderCacheSize(ns.getLong("render_cache_size_mb") << 20);
+        if (ns.get("edges_csv") != null) {
+            fd.setInputFormat("csv");
+            fd.setNodesCsvFile((File) ns.get("nodes_csv"));
         }
+
+        fd.setColorPaletteSource(CustomPalette
+                                 .parseSourceString(ns.getString("color_palette_source")));
+        fd.setColorPaletteType(CustomPalette
+                               .parseTypeString(ns.getString("color_palette_type")));
         fd.setColorPaletteNumber(ns.getInt("color_palette_number"));
         fd.setNumColors(ns.getInt("num_colors"));
 
@@ -0,0 +1,472 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+/**
+ * Reader of graphs from tables of nodes and edges, as comma- or
+ * tab-separated values, that adds nodes and edges directly to a graph
+ * model
+ * <p>
+ * Each file starts with a header row naming its columns (in any order,
+ * ignoring case); values are separated by tabs if the header contains a
+ * tab, and by commas otherwise.  Values containing the separator or quotes
+ * may be quoted, with embedded quotes doubled, but no value may contain a
+ * line break.  The nodes file has an {@code id} column, an optional
+ * {@code label} column, and any of the requested node attributes; other
+ * columns are skipped.  The edges file has {@code source} and
+ * {@code target} columns, and an optional {@code weight} column.
+ * <p>
+ * Each file is split into chunks of whole lines, which are parsed in
+ * parallel.  Numeric attributes are stored as {@code Float} columns and
+ * other attributes as {@code String} columns, so that they need no later
+ * conversion.  Nodes and edges are then added to the graph in file order,
+ * following {@link GmlReader}: edges may name nodes missing from the
+ * nodes file (which are added without attributes), all edges are
+ * directed, parallel edges are merged by summing their weights, and node
+ * positions are randomized and centered on the origin.
+ */
+public class CsvGraphReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final float DEFAULT_SIZE = 10f;
+
+    /**
+     * Smallest and largest numbers of bytes of a file parsed by a single task
+     */
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Number of chunks per thread, so that threads finishing early can
+     * take up the work of others
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final GraphModel graphModel;
+    private final String[] attributes;
+    private final boolean[] numeric;
+    private final Random random = new Random();
+
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    public int getNumThreads() { return numThreads; }
+    public void setNumThreads(final int t) { numThreads = t; }
+
+    /**
+     * @param gm            graph model into which graph is read
+     * @param numericAttrs  names of node attributes to be read as numbers
+     * @param textAttrs     names of node attributes to be read as text
+     *                      (unless also named in {@code numericAttrs})
+     */
+    public CsvGraphReader(final GraphModel gm, final Collection<String> numericAttrs,
+                          final Collection<String> textAttrs) {
+        graphModel = gm;
+        List<String> names = new ArrayList<String>();
+        List<Boolean> isNumeric = new ArrayList<Boolean>();
+        addAttributes(numericAttrs, true, names, isNumeric);
+        addAttributes(textAttrs, false, names, isNumeric);
+        attributes = names.toArray(new String[names.size()]);
+        numeric = new boolean[attributes.length];
+        for (int a = 0; a < attributes.length; a++) {
+            numeric[a] = isNumeric.get(a);
+        }
+    }
+
+    /**
+     * Add lower-cased attribute names not already present (nor the node id
+     * and label, which are always read)
+     */
+    private static void addAttributes(final Collection<String> attrs, final boolean isNumeric,
+                                      final List<String> names, final List<Boolean> numeric) {
+        for (String attr : attrs) {
+            String name = attr.toLowerCase(Locale.ENGLISH);
+            if (!names.contains(name) && !name.equals("id") && !name.equals("label")) {
+                names.add(name);
+                numeric.add(isNumeric);
+            }
+        }
+    }
+
+    /**
+     * Read nodes and edges files into graph model
+     *
+     * @param nodesFile  file of nodes and their attributes (if null, nodes
+     *                   are only those named by edges)
+     * @param edgesFile  file of edges
+     */
+    public void read(final File nodesFile, final File edgesFile) throws IOException {
+        Graph graph = graphModel.getGraph();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            if (nodesFile != null) {
+                readNodes(nodesFile, graph, pool);
+            }
+            readEdges(edgesFile, graph, pool);
+        } finally {
+            pool.shutdown();
+        }
+        GmlReader.placeNodes(graph, true, random);
+    }
+
+    private void readNodes(final File infile, final Graph graph, final ForkJoinPool pool)
+        throws IOException {
+        // Slots 0 and 1 hold ids and labels, and the rest attribute values
+        String[] names = new String[attributes.length + 2];
+        boolean[] slotNumeric = new boolean[names.length];
+        names[0] = "id";
+        names[1] = "label";
+        Column[] columns = new Column[attributes.length];
+        Table table = graphModel.getNodeTable();
+        for (int a = 0; a < attributes.length; a++) {
+            names[a + 2] = attributes[a];
+            columns[a] = table.getColumn(attributes[a]);
+            if (columns[a] == null) {
+                columns[a] = table.addColumn(attributes[a],
+                                             numeric[a] ? Float.class : String.class);
+            }
+            slotNumeric[a + 2] = columns[a].getTypeClass() == Float.class;
+        }
+
+        List<Chunk> chunks = parse(infile, names, slotNumeric, 1, pool);
+        GraphFactory factory = graphModel.factory();
+        for (Chunk chunk : chunks) {
+            String[] ids = (String[]) chunk.values[0];
+            String[] labels = (String[]) chunk.values[1];
+            for (int r = 0; r < chunk.numRows; r++) {
+                Node node = getOrAddNode(graph, factory, ids[r]);
+                if (labels != null && labels[r] != null) {
+                    node.setLabel(labels[r]);
+                }
+                for (int a = 0; a < attributes.length; a++) {
+                    Object v = chunk.values[a + 2];
+                    if (v instanceof float[]) {
+                        float f = ((float[]) v)[r];
+                        if (!Float.isNaN(f)) {
+                            node.setAttribute(columns[a], f);
+                        }
+                    } else if (v != null && ((String[]) v)[r] != null) {
+                        node.setAttribute(columns[a], ((String[]) v)[r]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readEdges(final File infile, final Graph graph, final ForkJoinPool pool)
+        throws IOException {
+        String[] names = {"source", "target", "weight"};
+        boolean[] slotNumeric = {false, false, true};
+        List<Chunk> chunks = parse(infile, names, slotNumeric, 2, pool);
+        GraphFactory factory = graphModel.factory();
+        for (Chunk chunk : chunks) {
+            String[] sources = (String[]) chunk.values[0];
+            String[] targets = (String[]) chunk.values[1];
+            float[] weights = (float[]) chunk.values[2];
+            for (int r = 0; r < chunk.numRows; r++) {
+                double weight = weights == null || Float.isNaN(weights[r]) ? 1.0 : weights[r];
+                Node s = getOrAddNode(graph, factory, sources[r]);
+                Node d = getOrAddNode(graph, factory, targets[r]);
+                Edge existing = graph.getEdge(s, d);
+                if (existing != null) {
+                    existing.setWeight(existing.getWeight() + weight);
+                } else {
+                    graph.addEdge(factory.newEdge(s, d, 0, weight, true));
+                }
+            }
+        }
+    }
+
+    private static Node getOrAddNode(final Graph graph, final GraphFactory factory,
+                                     final String id) {
+        Node node = graph.getNode(id);
+        if (node == null) {
+            node = factory.newNode(id);
+            node.setSize(DEFAULT_SIZE);
+            graph.addNode(node);
+        }
+        return node;
+    }
+
+    /**
+     * Values of selected columns from a range of lines of a file: for
+     * each slot, either {@code String[]} or {@code float[]} (with missing
+     * numbers as NaN), or null if the file has no such column
+     */
+    static class Chunk {
+        int numRows;
+        final Object[] values;
+
+        Chunk(final int numSlots) {
+            values = new Object[numSlots];
+        }
+    }
+
+    /**
+     * Parse file in parallel chunks of whole lines
+     *
+     * @param infile       delimited file with header row
+     * @param names        lower-case names of columns to be read, one per slot
+     * @param slotNumeric  whether each slot holds numbers (rather than text)
+     * @param numRequired  number of leading slots whose columns must be
+     *                     present, and whose values must be non-empty
+     * @param pool         pool on which chunks are parsed
+     * @return chunks in file order
+     */
+    static List<Chunk> parse(final File infile, final String[] names,
+                             final boolean[] slotNumeric, final int numRequired,
+                             final ForkJoinPool pool) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(infile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long headerEnd = nextLine(channel, 0L);
+            if (headerEnd == 0L) {
+                throw new IOException("File " + infile + " is empty");
+            }
+            ByteBuffer headerBuf = ByteBuffer.allocate((int) headerEnd);
+            channel.read(headerBuf, 0L);
+            String header = new String(headerBuf.array(), UTF8).replaceAll("[\r\n]+$", "");
+            char delimiter = header.indexOf('\t') >= 0 ? '\t' : ',';
+
+            // Map each column of file to the slot of its values (or -1 to skip it)
+            List<String> fields = LayoutIO.parseCsvLine(header, delimiter);
+            int[] slots = new int[fields.size()];
+            boolean[] present = new boolean[names.length];
+            for (int c = 0; c < slots.length; c++) {
+                String field = fields.get(c).trim().toLowerCase(Locale.ENGLISH);
+                slots[c] = Arrays.asList(names).indexOf(field);
+                if (slots[c] >= 0) {
+                    present[slots[c]] = true;
+                }
+            }
+            for (int s = 0; s < numRequired; s++) {
+                if (!present[s]) {
+                    throw new IOException("File " + infile + " has no " + names[s] + " column");
+                }
+            }
+
+            // Split rest of file at line breaks
+            long chunkSize = (size - headerEnd) / (Math.max(1, pool.getParallelism())
+                                                   * CHUNKS_PER_THREAD);
+            chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, chunkSize));
+            List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+            long start = headerEnd;
+            while (start < size) {
+                long end = start + chunkSize < size ? nextLine(channel, start + chunkSize) : size;
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long in " + infile);
+                }
+                tasks.add(new ParseTask(infile, channel.map(FileChannel.MapMode.READ_ONLY,
+                                                             start, end - start),
+                                        delimiter, slots, present, slotNumeric,
+                                        Arrays.copyOf(names, numRequired)));
+                start = end;
+            }
+
+            List<Chunk> chunks = new ArrayList<Chunk>();
+            for (Future<Chunk> f : pool.invokeAll(tasks)) {
+                chunks.add(f.get());
+            }
+            return chunks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + infile, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not read " + infile, e.getCause());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Position just after the first line break at or after {@code position}
+     * (or the end of the file, if there is none)
+     */
+    private static long nextLine(final FileChannel channel, final long position)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        long p = position;
+        while (true) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if (n < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+    }
+
+    /**
+     * Parse the lines of one chunk of a file
+     */
+    private static class ParseTask implements Callable<Chunk> {
+        private final File infile;
+        private final MappedByteBuffer buf;
+        private final byte delimiter;
+        private final int[] slots;
+        private final boolean[] present;
+        private final boolean[] slotNumeric;
+        // Names of the leading slots, whose values must not be empty
+        private final String[] required;
+
+        private final String[] row;
+        private byte[] field = new byte[256];
+        private int fieldLength;
+        private Chunk chunk;
+        private int capacity;
+
+        ParseTask(final File f, final MappedByteBuffer b, final char d, final int[] s,
+                  final boolean[] p, final boolean[] n, final String[] r) {
+            infile = f;
+            buf = b;
+            delimiter = (byte) d;
+            slots = s;
+            present = p;
+            slotNumeric = n;
+            required = r;
+            row = new String[p.length];
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            chunk = new Chunk(present.length);
+            grow(1024);
+            int col = 0;
+            boolean quoted = false;
+            boolean empty = true;
+            fieldLength = 0;
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                if (quoted) {
+                    if (b != '"') {
+                        append(b);
+                    } else if (buf.hasRemaining() && buf.get(buf.position()) == '"') {
+                        append(b);
+                        buf.get();
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == '"') {
+                    quoted = true;
+                    empty = false;
+                } else if (b == delimiter) {
+                    endField(col++);
+                    empty = false;
+                } else if (b == '\n') {
+                    if (!empty || fieldLength > 0) {
+                        endField(col);
+                        endRow();
+                    }
+                    col = 0;
+                    empty = true;
+                } else if (b != '\r') {
+                    append(b);
+                }
+            }
+            if (!empty || fieldLength > 0) {
+                endField(col);
+                endRow();
+            }
+            return chunk;
+        }
+
+        private void append(final byte b) {
+            if (fieldLength == field.length) {
+                field = Arrays.copyOf(field, 2 * field.length);
+            }
+            field[fieldLength++] = b;
+        }
+
+        private void endField(final int col) {
+            if (col < slots.length && slots[col] >= 0) {
+                row[slots[col]] = fieldLength > 0 ? new String(field, 0, fieldLength, UTF8) : null;
+            }
+            fieldLength = 0;
+        }
+
+        private void endRow() throws IOException {
+            for (int s = 0; s < required.length; s++) {
+                if (row[s] == null) {
+                    throw new IOException("Row without " + required[s] + " in " + infile);
+                }
+            }
+            int r = chunk.numRows;
+            if (r == capacity) {
+                grow(2 * capacity);
+            }
+            for (int s = 0; s < row.length; s++) {
+                if (!present[s]) {
+                    continue;
+                }
+                if (slotNumeric[s]) {
+                    ((float[]) chunk.values[s])[r] = parseFloat(row[s]);
+                } else {
+                    ((String[]) chunk.values[s])[r] = row[s];
+                }
+                row[s] = null;
+            }
+            chunk.numRows++;
+        }
+
+        private float parseFloat(final String text) {
+            if (text == null) {
+                return Float.NaN;
+            }
+            try {
+                return Float.parseFloat(text);
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring non-numeric value \"" + text + "\" in " + infile);
+                return Float.NaN;
+            }
+        }
+
+        private void grow(final int newCapacity) {
+            for (int s = 0; s < present.length; s++) {
+                if (!present[s]) {
+                    continue;
+                }
+                if (slotNumeric[s]) {
+                    float[] a = (float[]) chunk.values[s];
+                    chunk.values[s] = a == null ? new float[newCapacity]
+                        : Arrays.copyOf(a, newCapacity);
+                } else {
+                    String[] a = (String[]) chunk.values[s];
+                    chunk.values[s] = a == null ? new String[newCapacity]
+                        : Arrays.copyOf(a, newCapacity);
+                }
+            }
+            capacity = newCapacity;
+        }
+    }
+}
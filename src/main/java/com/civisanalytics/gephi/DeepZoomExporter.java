@@ -0,0 +1,530 @@
+package com.civisanalytics.gephi;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gephi.preview.api.Item;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.preview.api.PreviewModel;
+import org.gephi.preview.api.PreviewProperties;
+import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.plugin.items.NodeItem;
+import org.gephi.preview.plugin.items.NodeLabelItem;
+import org.gephi.preview.plugin.renderers.EdgeRenderer;
+import org.gephi.preview.plugin.renderers.NodeLabelRenderer;
+import org.gephi.preview.spi.Renderer;
+
+/**
+ * Export of the preview as a
+ * <a href="https://msdn.microsoft.com/en-us/library/cc645077.aspx">Deep Zoom</a>
+ * tile pyramid, for interactive viewing (e.g. with OpenSeadragon)
+ * <p>
+ * The pyramid is written as a descriptor file {@code NAME.dzi} and a
+ * directory {@code NAME_files} holding a subdirectory for each level,
+ * with PNG tiles named {@code COLUMN_ROW.png}.  The last level is the
+ * figure at full size, and each level before it is half the size of the
+ * next, down to a single pixel.
+ * <p>
+ * Tiles are rendered in parallel, each drawing only the preview items
+ * whose (generously estimated) bounds overlap it.  Tiles overlapping no
+ * items, or rendering only background, are not written, so viewers
+ * should use the same background color as the figure.  On smaller levels
+ * edges are dropped when there would be fewer than {@code minEdgePixels}
+ * pixels per edge, and labels are dropped when their font would be
+ * smaller than {@code minLabelPixels}.
+ */
+public class DeepZoomExporter extends TiledPngExporter {
+
+    /**
+     * Types of preview items drawn in tiles
+     */
+    private static final String[] ITEM_TYPES = {
+        Item.EDGE, Item.NODE, Item.NODE_LABEL, Item.EDGE_LABEL
+    };
+
+    /**
+     * Values stored per item by {@code computeGeometry}: end points of a
+     * segment and a distance from it (all in pixels of the full-size figure)
+     * within which the item is drawn, and the smallest zoom at which the
+     * item is drawn
+     */
+    private static final int GEOMETRY_SIZE = 6;
+
+    /**
+     * Extent of curved edges from the straight line between their nodes,
+     * relative to the length of the edge
+     */
+    private static final float CURVE_EXTENT = 0.25f;
+
+    /**
+     * Number of threads rendering tiles
+     */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    public int getNumThreads() { return numThreads; }
+    public void setNumThreads(final int n) { numThreads = n; }
+
+    /**
+     * Minimum number of pixels per edge in a level for edges to be drawn
+     */
+    private float minEdgePixels = 16f;
+    public float getMinEdgePixels() { return minEdgePixels; }
+    public void setMinEdgePixels(final float m) { minEdgePixels = m; }
+
+    /**
+     * Minimum font size in pixels for a label to be drawn
+     */
+    private float minLabelPixels = 6f;
+    public float getMinLabelPixels() { return minLabelPixels; }
+    public void setMinLabelPixels(final float m) { minLabelPixels = m; }
+
+    /**
+     * Number of tiles written and skipped by last export
+     */
+    private long tilesWritten = 0;
+    public long getTilesWritten() { return tilesWritten; }
+    private long tilesSkipped = 0;
+    public long getTilesSkipped() { return tilesSkipped; }
+
+    /**
+     * Renderers, properties and items of the preview, with the geometry
+     * of each item, set during export
+     */
+    private Renderer[] renderers;
+    private PreviewProperties props;
+    private Item[][] items;
+    private float[][] geometry;
+
+    public DeepZoomExporter(final PreviewController previewController) {
+        super(previewController);
+        setTileSize(256);
+    }
+
+    /**
+     * Directory in which tiles are written for a given descriptor file
+     *
+     * @param descriptor  descriptor ({@code .dzi}) file
+     * @return tile directory
+     */
+    public static File getTileDirectory(final File descriptor) {
+        String name = descriptor.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(descriptor.getAbsoluteFile().getParentFile(), name + "_files");
+    }
+
+    /**
+     * Number of the last (full-size) level of a pyramid
+     *
+     * @param width   width of figure in pixels
+     * @param height  height of figure in pixels
+     * @return number of levels, less one
+     */
+    public static int getMaxLevel(final int width, final int height) {
+        int size = Math.max(width, height);
+        int level = 0;
+        while ((1L << level) < size) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Render the preview of the workspace into a tile pyramid
+     *
+     * @param descriptor  descriptor ({@code .dzi}) file
+     */
+    @Override
+    public void export(final File descriptor) throws IOException {
+        tilesWritten = 0;
+        tilesSkipped = 0;
+        File tileDir = getTileDirectory(descriptor);
+        PreviewModel model = previewController.getModel(getWorkspace());
+        Color oldBackground = prepare(model);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        try {
+            renderers = model.getManagedEnabledRenderers();
+            props = model.getProperties();
+            items = new Item[ITEM_TYPES.length][];
+            geometry = new float[ITEM_TYPES.length][];
+            for (int t = 0; t < ITEM_TYPES.length; t++) {
+                items[t] = model.getItems(ITEM_TYPES[t]);
+                geometry[t] = computeGeometry(ITEM_TYPES[t], items[t]);
+            }
+            int maxLevel = getMaxLevel(getWidth(), getHeight());
+            for (int level = maxLevel; level >= 0; level--) {
+                File dir = new File(tileDir, String.valueOf(level));
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Could not create directory " + dir);
+                }
+                exportLevel(Math.scalb(1f, level - maxLevel), dir, pool);
+            }
+            writeDescriptor(descriptor);
+        } finally {
+            pool.shutdown();
+            restore(model, oldBackground);
+            renderers = null;
+            props = null;
+            items = null;
+            geometry = null;
+        }
+    }
+
+    /**
+     * Render and write the tiles of one level, a row at a time
+     *
+     * @param zoom  scale of level relative to full-size figure
+     * @param dir   directory in which tiles of level are written
+     * @param pool  thread pool rendering tiles
+     */
+    private void exportLevel(final float zoom, final File dir, final ExecutorService pool)
+        throws IOException {
+        int tileSize = getTileSize();
+        int levelWidth = (int) Math.ceil(getWidth() * (double) zoom);
+        int levelHeight = (int) Math.ceil(getHeight() * (double) zoom);
+        int numCols = (levelWidth + tileSize - 1) / tileSize;
+        int numRows = (levelHeight + tileSize - 1) / tileSize;
+        for (int row = 0; row < numRows; row++) {
+            final int y = row * tileSize;
+            final int tileHeight = Math.min(tileSize, levelHeight - y);
+            int[][][] buckets = bucketRow(zoom, y, y + tileHeight, numCols, levelWidth);
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int col = 0; col < numCols; col++) {
+                final int x = col * tileSize;
+                final int tileWidth = Math.min(tileSize, levelWidth - x);
+                final int[][] bucket = buckets[col];
+                final File file = new File(dir, col + "_" + row + ".png");
+                if (bucket == null) {
+                    Files.deleteIfExists(file.toPath());
+                    tilesSkipped++;
+                    continue;
+                }
+                futures.add(pool.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws IOException {
+                            return writeTile(zoom, bucket, x, y, tileWidth, tileHeight, file);
+                        }
+                    }));
+            }
+            for (Future<Boolean> future : futures) {
+                boolean written;
+                try {
+                    written = future.get();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while rendering tiles", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not render tile", e.getCause());
+                }
+                if (written) {
+                    tilesWritten++;
+                } else {
+                    tilesSkipped++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Render a tile and write it unless it is empty
+     *
+     * @return whether tile was written
+     */
+    private boolean writeTile(final float zoom, final int[][] bucket,
+                              final int x, final int y, final int tileWidth,
+                              final int tileHeight, final File file) throws IOException {
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight,
+                                                getTransparentBackground()
+                                                ? BufferedImage.TYPE_INT_ARGB
+                                                : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = createGraphics(image, x, y, zoom);
+        try {
+            render(new TileTarget(image, g2, scaling * zoom), bucket);
+        } finally {
+            g2.dispose();
+        }
+        if (isEmpty(image)) {
+            Files.deleteIfExists(file.toPath());
+            return false;
+        }
+        PngStreamWriter writer = new PngStreamWriter(
+            new BufferedOutputStream(new FileOutputStream(file)),
+            tileWidth, tileHeight, getTransparentBackground());
+        try {
+            writer.writeRows(image, tileHeight);
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * Whether every pixel of an image is the background color
+     */
+    private boolean isEmpty(final BufferedImage image) {
+        int empty = background == null ? 0 : background.getRGB() | 0xff000000;
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for (int pixel : row) {
+                if (pixel != empty) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void writeDescriptor(final File descriptor) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+            new FileOutputStream(descriptor), LayoutIO.UTF8));
+        try {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" "
+                        + "Format=\"png\" Overlap=\"0\" TileSize=\"" + getTileSize() + "\">");
+            out.println("  <Size Width=\"" + getWidth() + "\" Height=\"" + getHeight() + "\"/>");
+            out.println("</Image>");
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Could not write " + descriptor);
+        }
+    }
+
+    /**
+     * Estimate where each item is drawn and from which zoom it is shown
+     *
+     * @param type       item type
+     * @param typeItems  items of type
+     * @return {@code GEOMETRY_SIZE} values for each item
+     */
+    protected float[] computeGeometry(final String type, final Item[] typeItems) {
+        float[] g = new float[GEOMETRY_SIZE * typeItems.length];
+        float edgeThickness = props.getFloatValue(PreviewProperty.EDGE_THICKNESS);
+        float arrowSize = props.getFloatValue(PreviewProperty.ARROW_SIZE);
+        float borderWidth = props.getFloatValue(PreviewProperty.NODE_BORDER_WIDTH);
+        float outlineSize = props.getFloatValue(PreviewProperty.NODE_LABEL_OUTLINE_SIZE);
+        boolean curved = props.getBooleanValue(PreviewProperty.EDGE_CURVED);
+        Float maxWeight = props.getBooleanValue(PreviewProperty.EDGE_RESCALE_WEIGHT)
+            ? props.getFloatValue(PreviewProperty.EDGE_RESCALE_WEIGHT_MAX) : null;
+        // Edges are shown once a level has enough pixels per edge
+        float edgeZoom = (float) Math.sqrt(minEdgePixels * (double) typeItems.length
+                                           / ((double) getWidth() * getHeight()));
+
+        for (int i = 0; i < typeItems.length; i++) {
+            Item item = typeItems[i];
+            int k = GEOMETRY_SIZE * i;
+            float x1;
+            float y1;
+            float x2;
+            float y2;
+            float pad;
+            float minZoom = 0f;
+            if (type.equals(Item.NODE)) {
+                x1 = x2 = getFloat(item, NodeItem.X);
+                y1 = y2 = getFloat(item, NodeItem.Y);
+                pad = getFloat(item, NodeItem.SIZE) / 2f + borderWidth;
+            } else if (type.equals(Item.EDGE)) {
+                Item source = item.getData(EdgeRenderer.SOURCE);
+                Item target = item.getData(EdgeRenderer.TARGET);
+                x1 = getFloat(source, NodeItem.X);
+                y1 = getFloat(source, NodeItem.Y);
+                x2 = getFloat(target, NodeItem.X);
+                y2 = getFloat(target, NodeItem.Y);
+                Object w = item.getData("weight");
+                float weight = maxWeight != null ? maxWeight
+                    : w instanceof Number ? ((Number) w).floatValue() : 1f;
+                pad = edgeThickness * Math.abs(weight) * (1f + arrowSize);
+                float length = (float) Math.hypot(x2 - x1, y2 - y1);
+                if (source == target) {
+                    // Self loops are drawn as a loop around the node
+                    pad += getFloat(source, NodeItem.SIZE) * 2f;
+                } else if (curved) {
+                    pad += CURVE_EXTENT * length;
+                }
+                minZoom = edgeZoom;
+            } else if (type.equals(Item.NODE_LABEL)) {
+                Object label = item.getData(NodeLabelItem.LABEL);
+                Object fontSize = item.getData(NodeLabelRenderer.FONT_SIZE);
+                float size = fontSize instanceof Number ? ((Number) fontSize).floatValue() : 0f;
+                if (!(label instanceof String) || ((String) label).isEmpty() || size <= 0f) {
+                    x1 = x2 = y1 = y2 = pad = 0f;
+                    minZoom = Float.POSITIVE_INFINITY;
+                } else {
+                    // Labels are centered on their nodes; allow a full
+                    // em per character
+                    float halfWidth = ((String) label).length() * size / 2f;
+                    x1 = getFloat(item, NodeLabelRenderer.NODE_X) - halfWidth;
+                    x2 = x1 + 2f * halfWidth;
+                    y1 = y2 = getFloat(item, NodeLabelRenderer.NODE_Y);
+                    pad = size + outlineSize;
+                    minZoom = minLabelPixels / (size * scaling);
+                }
+            } else {
+                // Unknown extent: draw in every tile
+                x1 = x2 = y1 = y2 = 0f;
+                pad = Float.POSITIVE_INFINITY;
+            }
+            g[k] = toPixelX(x1);
+            g[k + 1] = toPixelY(y1);
+            g[k + 2] = toPixelX(x2);
+            g[k + 3] = toPixelY(y2);
+            g[k + 4] = pad * scaling;
+            g[k + 5] = minZoom;
+        }
+        return g;
+    }
+
+    private float toPixelX(final float x) {
+        return getWidth() / 2f + scaling * (x - centerX);
+    }
+
+    private float toPixelY(final float y) {
+        return getHeight() / 2f + scaling * (y - centerY);
+    }
+
+    private static float getFloat(final Item item, final String key) {
+        Object value = item.getData(key);
+        return value instanceof Number ? ((Number) value).floatValue() : 0f;
+    }
+
+    /**
+     * Find the items drawn in each tile of a row
+     *
+     * @param zoom        scale of level relative to full-size figure
+     * @param y0          top of row in pixels
+     * @param y1          bottom of row in pixels
+     * @param numCols     number of tiles in row
+     * @param tileSize    width of tiles in pixels
+     * @param levelWidth  width of level in pixels
+     * @return for each tile, indices of items of each type drawn in
+     *         it in ascending order (or {@code null} if there are none)
+     */
+    private int[][][] bucketRow(final float zoom, final int y0, final int y1,
+                                final int numCols, final int levelWidth) {
+        int numTypes = items.length;
+        int[][][] buckets = new int[numCols][][];
+        int[][] counts = new int[numTypes][numCols];
+        int[] cols = new int[2];
+        for (int t = 0; t < numTypes; t++) {
+            float[] g = geometry[t];
+            for (int i = 0; i < items[t].length; i++) {
+                if (columnRange(g, i, zoom, y0, y1, levelWidth, cols)) {
+                    for (int c = cols[0]; c <= cols[1]; c++) {
+                        counts[t][c]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < numCols; c++) {
+            boolean any = false;
+            for (int t = 0; t < numTypes; t++) {
+                any |= counts[t][c] > 0;
+            }
+            if (any) {
+                buckets[c] = new int[numTypes][];
+                for (int t = 0; t < numTypes; t++) {
+                    buckets[c][t] = new int[counts[t][c]];
+                }
+            }
+        }
+        for (int t = 0; t < numTypes; t++) {
+            float[] g = geometry[t];
+            Arrays.fill(counts[t], 0);
+            for (int i = 0; i < items[t].length; i++) {
+                if (columnRange(g, i, zoom, y0, y1, levelWidth, cols)) {
+                    for (int c = cols[0]; c <= cols[1]; c++) {
+                        buckets[c][t][counts[t][c]++] = i;
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Find the tiles of a row in which an item is drawn
+     *
+     * @param cols  set to first and last column of tiles
+     * @return whether item is drawn in any tile of the row
+     */
+    private boolean columnRange(final float[] g, final int i, final float zoom,
+                                final int y0, final int y1, final int levelWidth,
+                                final int[] cols) {
+        int tileSize = getTileSize();
+        int numCols = (levelWidth + tileSize - 1) / tileSize;
+        int k = GEOMETRY_SIZE * i;
+        if (g[k + 5] > zoom) {
+            return false;
+        }
+        // Allow a pixel of antialiasing at this level
+        float pad = g[k + 4] + 1f / zoom;
+        if (Float.isInfinite(pad)) {
+            cols[0] = 0;
+            cols[1] = numCols - 1;
+            return true;
+        }
+        float top = y0 / zoom - pad;
+        float bottom = y1 / zoom + pad;
+        float ax = g[k];
+        float ay = g[k + 1];
+        float bx = g[k + 2];
+        float by = g[k + 3];
+        if (Math.max(ay, by) < top || Math.min(ay, by) > bottom) {
+            return false;
+        }
+        // Clip the segment to the (padded) row
+        float minX = Math.min(ax, bx);
+        float maxX = Math.max(ax, bx);
+        if (ay != by) {
+            float ta = Math.max(0f, Math.min(1f, (top - ay) / (by - ay)));
+            float tb = Math.max(0f, Math.min(1f, (bottom - ay) / (by - ay)));
+            float xa = ax + ta * (bx - ax);
+            float xb = ax + tb * (bx - ax);
+            minX = Math.min(xa, xb);
+            maxX = Math.max(xa, xb);
+        }
+        float left = (minX - pad) * zoom;
+        float right = (maxX + pad) * zoom;
+        if (right < 0f || left >= levelWidth) {
+            return false;
+        }
+        cols[0] = Math.max(0, (int) Math.floor(left / tileSize));
+        cols[1] = Math.min(numCols - 1, (int) Math.floor(right / tileSize));
+        return true;
+    }
+
+    /**
+     * Draw the given items with every renderer, in the order used by
+     * Gephi's preview controller
+     */
+    private void render(final TileTarget target, final int[][] bucket) {
+        for (Renderer renderer : renderers) {
+            for (int t = 0; t < bucket.length; t++) {
+                Item[] typeItems = items[t];
+                for (int i : bucket[t]) {
+                    if (renderer.isRendererForitem(typeItems[i], props)) {
+                        renderer.render(typeItems[i], target, props);
+                    }
+                }
+            }
+        }
+    }
+}
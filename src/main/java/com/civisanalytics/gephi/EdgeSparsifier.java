@@ -0,0 +1,297 @@
+package com.civisanalytics.gephi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+
+/**
+ * Reduction of the edges of a dense graph before layout, keeping all nodes
+ * <p>
+ * Force-directed attraction costs time in proportion to the number of
+ * edges, so laying out a sparser graph with the same overall structure is
+ * much faster.  Edges are kept by one of three methods:
+ * <ul>
+ * <li>{@code threshold}: edges of at least a given weight</li>
+ * <li>{@code top_k}: each node's {@code topK} heaviest edges (so an edge
+ *     is kept if it is among the heaviest of either endpoint)</li>
+ * <li>{@code sample}: a random sample of about {@code fraction} of the
+ *     edges, as in spectral sparsification: each edge is kept with
+ *     probability proportional to its weight times an estimate of its
+ *     effective resistance, {@code 1/s(u) + 1/s(v)} for weighted degrees
+ *     {@code s}, and its weight divided by that probability, so that the
+ *     expected weight of every edge is unchanged.  Probabilities are
+ *     capped at 1; the importance they are scaled from is not.  Edges
+ *     bridging sparse regions are thus kept, while those within dense
+ *     regions are thinned.  Each node also keeps its heaviest edge, so
+ *     that no node is cut off from the graph.</li>
+ * </ul>
+ * Dropped edges are either removed from the graph, or hidden during layout
+ * by a view of the graph holding only the kept edges, so that all edges
+ * can still be rendered.  Reweighted edges get their original weights back
+ * after layout.
+ */
+public class EdgeSparsifier {
+
+    /**
+     * Method by which edges are kept ("threshold" | "top_k" | "sample")
+     */
+    private final String method;
+
+    private double threshold = 0.0;
+    public double getThreshold() { return threshold; }
+    public void setThreshold(final double t) { threshold = t; }
+
+    private int topK = 10;
+    public int getTopK() { return topK; }
+    public void setTopK(final int k) { topK = k; }
+
+    private double fraction = 0.2;
+    public double getFraction() { return fraction; }
+    public void setFraction(final double f) { fraction = f; }
+
+    private Random random = new Random();
+    public void setRandom(final Random r) { random = r; }
+
+    private GraphModel graphModel;
+    private GraphView oldView;
+    private GraphView sparseView;
+    private Edge[] reweighted;
+    private double[] originalWeights;
+
+    /**
+     * @param m  method by which edges are kept ("threshold" | "top_k" | "sample")
+     */
+    public EdgeSparsifier(final String m) {
+        if (!m.equals("threshold") && !m.equals("top_k") && !m.equals("sample")) {
+            throw new IllegalArgumentException("Unknown edge sparsification method: " + m);
+        }
+        method = m;
+    }
+
+    /**
+     * Select edges to keep
+     *
+     * @param graph  graph whose edges are sparsified
+     * @param edges  edges of graph
+     * @return weight during layout of each edge (zero for dropped edges)
+     */
+    public double[] select(final Graph graph, final Edge[] edges) {
+        double[] kept = new double[edges.length];
+        if (method.equals("threshold")) {
+            for (int e = 0; e < edges.length; e++) {
+                if (edges[e].getWeight() >= threshold) {
+                    kept[e] = edges[e].getWeight();
+                }
+            }
+            return kept;
+        }
+
+        // Index incident edges of each node
+        Node[] nodes = graph.getNodes().toArray();
+        int maxStoreId = 0;
+        for (Node n : nodes) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
+        }
+        int[] index = new int[maxStoreId + 1];
+        for (int i = 0; i < nodes.length; i++) {
+            index[nodes[i].getStoreId()] = i;
+        }
+        int[] offsets = new int[nodes.length + 1];
+        double[] strength = new double[nodes.length];
+        for (Edge edge : edges) {
+            int s = index[edge.getSource().getStoreId()];
+            int t = index[edge.getTarget().getStoreId()];
+            offsets[s + 1]++;
+            strength[s] += edge.getWeight();
+            if (t != s) {
+                offsets[t + 1]++;
+                strength[t] += edge.getWeight();
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = new int[nodes.length];
+        int[] incident = new int[offsets[nodes.length]];
+        for (int e = 0; e < edges.length; e++) {
+            int s = index[edges[e].getSource().getStoreId()];
+            int t = index[edges[e].getTarget().getStoreId()];
+            incident[offsets[s] + fill[s]++] = e;
+            if (t != s) {
+                incident[offsets[t] + fill[t]++] = e;
+            }
+        }
+
+        if (method.equals("top_k")) {
+            // Keep edges heavier than each node's k-th heaviest, then those
+            //   equal to it (first found first) up to k
+            for (int i = 0; i < nodes.length; i++) {
+                int degree = offsets[i + 1] - offsets[i];
+                if (degree <= topK) {
+                    for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                        kept[incident[k]] = edges[incident[k]].getWeight();
+                    }
+                    continue;
+                }
+                double[] ws = new double[degree];
+                for (int k = 0; k < degree; k++) {
+                    ws[k] = edges[incident[offsets[i] + k]].getWeight();
+                }
+                Arrays.sort(ws);
+                double cutoff = ws[degree - topK];
+                int numKept = 0;
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    if (edges[incident[k]].getWeight() > cutoff) {
+                        kept[incident[k]] = edges[incident[k]].getWeight();
+                        numKept++;
+                    }
+                }
+                for (int k = offsets[i]; k < offsets[i + 1] && numKept < topK; k++) {
+                    if (edges[incident[k]].getWeight() == cutoff) {
+                        kept[incident[k]] = edges[incident[k]].getWeight();
+                        numKept++;
+                    }
+                }
+            }
+            return kept;
+        }
+
+        // Sample edges by importance, scaled so that about fraction of them are kept
+        double[] importance = new double[edges.length];
+        for (int e = 0; e < edges.length; e++) {
+            double s = strength[index[edges[e].getSource().getStoreId()]];
+            double t = strength[index[edges[e].getTarget().getStoreId()]];
+            double w = edges[e].getWeight();
+            importance[e] = s > 0 && t > 0 ? w * (1.0 / s + 1.0 / t) : 1.0;
+        }
+        double scale = sampleScale(importance, fraction * edges.length);
+        for (int e = 0; e < edges.length; e++) {
+            double p = Math.min(1.0, scale * importance[e]);
+            if (random.nextDouble() < p) {
+                kept[e] = edges[e].getWeight() / p;
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            int heaviest = -1;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (heaviest < 0 || edges[incident[k]].getWeight() > edges[heaviest].getWeight()) {
+                    heaviest = incident[k];
+                }
+            }
+            if (heaviest >= 0 && kept[heaviest] == 0.0) {
+                kept[heaviest] = edges[heaviest].getWeight();
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Scale of importances for which the sum of sampling probabilities
+     * {@code min(1, scale * importance)} is the target number of edges
+     * (found by bisection, as the sum increases with the scale)
+     */
+    static double sampleScale(final double[] importance, final double target) {
+        double lo = 0.0;
+        double hi = 1.0;
+        while (expectedKept(importance, hi) < target && hi < 1e300) {
+            hi *= 2.0;
+        }
+        for (int iter = 0; iter < 100; iter++) {
+            double mid = 0.5 * (lo + hi);
+            if (expectedKept(importance, mid) < target) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    private static double expectedKept(final double[] importance, final double scale) {
+        double sum = 0.0;
+        for (double q : importance) {
+            sum += Math.min(1.0, scale * q);
+        }
+        return sum;
+    }
+
+    /**
+     * Sparsify the edges of the visible graph for layout, until {@code restore}
+     *
+     * @param gm           graph model
+     * @param keepDropped  whether to keep dropped edges in the graph (hiding
+     *                     them during layout), so that they are rendered
+     * @return number of edges kept
+     */
+    public int apply(final GraphModel gm, final boolean keepDropped) {
+        graphModel = gm;
+        Graph graph = graphModel.getGraphVisible();
+        Edge[] edges = graph.getEdges().toArray();
+        double[] weights = select(graph, edges);
+
+        List<Edge> kept = new ArrayList<Edge>();
+        List<Edge> dropped = new ArrayList<Edge>();
+        List<Edge> changed = new ArrayList<Edge>();
+        List<Double> changedWeights = new ArrayList<Double>();
+        for (int e = 0; e < edges.length; e++) {
+            if (weights[e] > 0) {
+                kept.add(edges[e]);
+                if (weights[e] != edges[e].getWeight()) {
+                    changed.add(edges[e]);
+                    changedWeights.add(edges[e].getWeight());
+                    edges[e].setWeight(weights[e]);
+                }
+            } else {
+                dropped.add(edges[e]);
+            }
+        }
+        reweighted = changed.toArray(new Edge[changed.size()]);
+        originalWeights = new double[reweighted.length];
+        for (int e = 0; e < reweighted.length; e++) {
+            originalWeights[e] = changedWeights.get(e);
+        }
+
+        if (keepDropped) {
+            oldView = graphModel.getVisibleView();
+            sparseView = graphModel.createView();
+            Subgraph sparse = graphModel.getGraph(sparseView);
+            sparse.addAllNodes(Arrays.asList(graph.getNodes().toArray()));
+            sparse.addAllEdges(kept);
+            graphModel.setVisibleView(sparseView);
+        } else {
+            graph.writeLock();
+            try {
+                graph.removeAllEdges(dropped);
+            } finally {
+                graph.writeUnlock();
+            }
+        }
+        return kept.size();
+    }
+
+    /**
+     * Restore the original weights of kept edges, and show dropped edges
+     * again if they were kept
+     */
+    public void restore() {
+        if (reweighted != null) {
+            for (int e = 0; e < reweighted.length; e++) {
+                reweighted[e].setWeight(originalWeights[e]);
+            }
+            reweighted = null;
+        }
+        if (sparseView != null) {
+            graphModel.setVisibleView(oldView);
+            graphModel.destroyView(sparseView);
+            sparseView = null;
+        }
+    }
+}
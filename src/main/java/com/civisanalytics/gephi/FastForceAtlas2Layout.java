@@ -0,0 +1,195 @@
+package com.civisanalytics.gephi;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+
+/**
+ * Gephi {@code Layout} running {@link ForceAtlas2Engine} on all cores
+ * <p>
+ * Positions, sizes and adjacency of the visible graph are copied into
+ * primitive arrays when the layout is initialized.  Iterations then run
+ * entirely on those arrays, and coordinates are copied back into the
+ * graph's {@code Node} objects after each iteration (so that the layout
+ * may be stopped at any time, e.g. by {@code AutoLayout}).  Nodes that are
+ * fixed in the graph when the layout is initialized are not moved.
+ */
+public class FastForceAtlas2Layout implements Layout {
+    private GraphModel graphModel;
+    protected Node[] nodes;
+    protected ForceAtlas2Engine engine;
+    protected ForkJoinPool pool;
+
+    private double scalingRatio = 2.0;
+    public double getScalingRatio() { return scalingRatio; }
+    public void setScalingRatio(final double t) { scalingRatio = t; }
+
+    private double gravity = 1.0;
+    public double getGravity() { return gravity; }
+    public void setGravity(final double t) { gravity = t; }
+
+    private double jitterTolerance = 1.0;
+    public double getJitterTolerance() { return jitterTolerance; }
+    public void setJitterTolerance(final double t) { jitterTolerance = t; }
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    public int getThreadCount() { return threadCount; }
+    public void setThreadCount(final int t) { threadCount = t; }
+
+    /**
+     * Engine running the layout, available once the layout has been initialized
+     */
+    public ForceAtlas2Engine getEngine() { return engine; }
+
+    @Override
+    public void initAlgo() {
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+
+            // Map Gephi store ids to array indices
+            int maxStoreId = 0;
+            for (Node node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] index = new int[maxStoreId + 1];
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            double[] sizes = new double[n];
+            for (int i = 0; i < n; i++) {
+                index[nodes[i].getStoreId()] = i;
+                xs[i] = nodes[i].x();
+                ys[i] = nodes[i].y();
+                sizes[i] = nodes[i].size();
+            }
+
+            // Build symmetric adjacency in CSR form, ignoring self-loops
+            Edge[] edges = graph.getEdges().toArray();
+            int[] offsets = new int[n + 1];
+            for (Edge e : edges) {
+                if (!e.isSelfLoop()) {
+                    offsets[index[e.getSource().getStoreId()] + 1]++;
+                    offsets[index[e.getTarget().getStoreId()] + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] fill = new int[n];
+            int[] neighbors = new int[offsets[n]];
+            double[] weights = new double[offsets[n]];
+            for (Edge e : edges) {
+                if (!e.isSelfLoop()) {
+                    int s = index[e.getSource().getStoreId()];
+                    int t = index[e.getTarget().getStoreId()];
+                    double w = e.getWeight();
+                    neighbors[offsets[s] + fill[s]] = t;
+                    weights[offsets[s] + fill[s]++] = w;
+                    neighbors[offsets[t] + fill[t]] = s;
+                    weights[offsets[t] + fill[t]++] = w;
+                }
+            }
+
+            pool = new ForkJoinPool(Math.max(1, threadCount));
+            initEngine(xs, ys, sizes, offsets, neighbors, weights);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Create the engine for the graph, once it has been copied into arrays
+     *
+     * @param xs         initial x coordinates of nodes
+     * @param ys         initial y coordinates of nodes
+     * @param sizes      node radii
+     * @param offsets    CSR row offsets
+     * @param neighbors  CSR column indices
+     * @param weights    CSR edge weights
+     */
+    protected void initEngine(final double[] xs, final double[] ys, final double[] sizes,
+                              final int[] offsets, final int[] neighbors,
+                              final double[] weights) {
+        engine = createEngine(xs, ys, sizes, offsets, neighbors, weights);
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].isFixed()) {
+                engine.setFixed(i, true);
+            }
+        }
+    }
+
+    /**
+     * Create an engine with the parameters of this layout
+     */
+    protected ForceAtlas2Engine createEngine(final double[] xs, final double[] ys,
+                                             final double[] sizes, final int[] offsets,
+                                             final int[] neighbors, final double[] weights) {
+        ForceAtlas2Engine e = new ForceAtlas2Engine(xs, ys, sizes, offsets, neighbors,
+                                                    weights, pool);
+        e.setScalingRatio(scalingRatio);
+        e.setGravity(gravity);
+        e.setJitterTolerance(jitterTolerance);
+        return e;
+    }
+
+    @Override
+    public void setGraphModel(final GraphModel gm) {
+        graphModel = gm;
+    }
+
+    @Override
+    public void goAlgo() {
+        engine.step();
+        writePositions(engine.getX(), engine.getY());
+    }
+
+    /**
+     * Copy coordinates back into the graph's nodes
+     */
+    protected void writePositions(final double[] xs, final double[] ys) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setX((float) xs[i]);
+            nodes[i].setY((float) ys[i]);
+        }
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return engine != null;
+    }
+
+    @Override
+    public void endAlgo() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = null;
+        engine = null;
+        nodes = null;
+    }
+
+    /**
+     * Parameters are set directly (rather than through Gephi layout properties)
+     */
+    @Override
+    public LayoutProperty[] getProperties() {
+        return new LayoutProperty[0];
+    }
+
+    @Override
+    public void resetPropertiesValues() {
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return null;
+    }
+}
@@ -0,0 +1,514 @@
+package com.civisanalytics.gephi;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ForceAtlas2 (with size adjustment) on primitive arrays
+ * <p>
+ * Node positions, sizes and masses are held in flat {@code double[]}
+ * arrays, and the (symmetric) adjacency structure in compressed sparse row
+ * form: the neighbors of node {@code i} are
+ * {@code neighbors[offsets[i]] ... neighbors[offsets[i + 1] - 1]}, with
+ * corresponding edge weights in {@code weights}.
+ * <p>
+ * Repulsion is approximated with a Barnes-Hut quadtree, which is built
+ * once per iteration and then traversed in parallel for each node.
+ * Attraction is computed in the same parallel pass over the rows of the
+ * adjacency structure, so that every node's force is accumulated by a
+ * single task, in a fixed order.  Results are therefore identical
+ * regardless of the number of threads.
+ * <p>
+ * Speed and swing adaptation follow Jacomy et al. (2014) and Gephi's
+ * own {@code ForceAtlas2} implementation.
+ */
+public class ForceAtlas2Engine {
+
+    /**
+     * Number of nodes processed sequentially by a single fork-join task
+     */
+    private static final int CHUNK_SIZE = 512;
+
+    /**
+     * Depth beyond which quadtree cells are no longer subdivided
+     * (only reached by coincident nodes)
+     */
+    private static final int MAX_TREE_DEPTH = 48;
+
+    private final int numNodes;
+    private final double[] x;
+    private final double[] y;
+    private final double[] size;
+    private final double[] mass;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final double[] weights;
+    private final boolean[] fixed;
+
+    private final double[] dx;
+    private final double[] dy;
+    private final double[] oldDx;
+    private final double[] oldDy;
+
+    private double scalingRatio = 2.0;
+    private double gravity = 1.0;
+    private double jitterTolerance = 1.0;
+    private double barnesHutTheta = 1.2;
+
+    private double speed = 1.0;
+    private double speedEfficiency = 1.0;
+    private double globalSwing;
+    private double globalTraction;
+
+    private final QuadTree tree;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param xs         initial x coordinates (modified in place)
+     * @param ys         initial y coordinates (modified in place)
+     * @param sizes      node radii
+     * @param rowOffsets CSR row offsets, of length {@code numNodes + 1}
+     * @param cols       CSR column indices (neighbor of each entry)
+     * @param vals       CSR edge weights
+     * @param p          fork-join pool on which to run parallel passes
+     */
+    public ForceAtlas2Engine(final double[] xs, final double[] ys, final double[] sizes,
+                             final int[] rowOffsets, final int[] cols, final double[] vals,
+                             final ForkJoinPool p) {
+        numNodes = xs.length;
+        x = xs;
+        y = ys;
+        size = sizes;
+        offsets = rowOffsets;
+        neighbors = cols;
+        weights = vals;
+        pool = p;
+
+        mass = new double[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            mass[i] = 1.0 + (offsets[i + 1] - offsets[i]);
+        }
+        fixed = new boolean[numNodes];
+        dx = new double[numNodes];
+        dy = new double[numNodes];
+        oldDx = new double[numNodes];
+        oldDy = new double[numNodes];
+        tree = new QuadTree(numNodes);
+    }
+
+    public int getNodeCount() { return numNodes; }
+    public double[] getX() { return x; }
+    public double[] getY() { return y; }
+    public double getGlobalSwing() { return globalSwing; }
+    public double getGlobalTraction() { return globalTraction; }
+
+    public double getScalingRatio() { return scalingRatio; }
+    public void setScalingRatio(final double t) { scalingRatio = t; }
+    public double getGravity() { return gravity; }
+    public void setGravity(final double t) { gravity = t; }
+    public double getJitterTolerance() { return jitterTolerance; }
+    public void setJitterTolerance(final double t) { jitterTolerance = t; }
+    public double getBarnesHutTheta() { return barnesHutTheta; }
+    public void setBarnesHutTheta(final double t) { barnesHutTheta = t; }
+
+    /**
+     * Prevent node {@code i} from being moved by subsequent iterations
+     * (it still exerts forces on other nodes)
+     */
+    public void setFixed(final int i, final boolean b) { fixed[i] = b; }
+    public boolean isFixed(final int i) { return fixed[i]; }
+
+    /**
+     * Run a single ForceAtlas2 iteration
+     */
+    public void step() {
+        if (numNodes == 0) {
+            return;
+        }
+        tree.build(x, y, mass, numNodes);
+
+        double[] sums = pool.invoke(new ForceTask(0, numNodes));
+        globalSwing = sums[0];
+        globalTraction = sums[1];
+        adaptSpeed();
+
+        pool.invoke(new ApplyTask(0, numNodes));
+    }
+
+    /**
+     * Update global speed from swing and traction of the latest iteration
+     */
+    private void adaptSpeed() {
+        double estimatedOptimalJitterTolerance = 0.05 * Math.sqrt(numNodes);
+        double minJT = Math.sqrt(estimatedOptimalJitterTolerance);
+        double maxJT = 10;
+        double jt = jitterTolerance
+            * Math.max(minJT, Math.min(maxJT, estimatedOptimalJitterTolerance
+                                       * globalTraction / ((double) numNodes * numNodes)));
+
+        double minSpeedEfficiency = 0.05;
+        if (globalTraction > 0 && globalSwing / globalTraction > 2.0) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.5;
+            }
+            jt = Math.max(jt, jitterTolerance);
+        }
+
+        if (globalSwing == 0) {
+            return;
+        }
+        double targetSpeed = jt * speedEfficiency * globalTraction / globalSwing;
+
+        if (globalSwing > jt * globalTraction) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.7;
+            }
+        } else if (speed < 1000) {
+            speedEfficiency *= 1.3;
+        }
+
+        double maxRise = 0.5;
+        speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
+    }
+
+    /**
+     * Accumulate repulsion, gravity and attraction for a range of nodes,
+     * returning the partial sums of swing and effective traction
+     */
+    private class ForceTask extends RecursiveTask<double[]> {
+        private final int start;
+        private final int end;
+
+        ForceTask(final int s, final int e) {
+            start = s;
+            end = e;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start > CHUNK_SIZE) {
+                int mid = (start + end) >>> 1;
+                ForceTask left = new ForceTask(start, mid);
+                left.fork();
+                double[] right = new ForceTask(mid, end).compute();
+                double[] result = left.join();
+                result[0] += right[0];
+                result[1] += right[1];
+                return result;
+            }
+
+            int[] stack = new int[4 * MAX_TREE_DEPTH + 4];
+            double swing = 0.0;
+            double traction = 0.0;
+            for (int i = start; i < end; i++) {
+                oldDx[i] = dx[i];
+                oldDy[i] = dy[i];
+                dx[i] = 0.0;
+                dy[i] = 0.0;
+
+                repulse(i, stack);
+                attract(i);
+                applyGravity(i);
+
+                swing += mass[i] * Math.sqrt((oldDx[i] - dx[i]) * (oldDx[i] - dx[i])
+                                             + (oldDy[i] - dy[i]) * (oldDy[i] - dy[i]));
+                traction += mass[i] * 0.5 * Math.sqrt((oldDx[i] + dx[i]) * (oldDx[i] + dx[i])
+                                                      + (oldDy[i] + dy[i]) * (oldDy[i] + dy[i]));
+            }
+            return new double[] {swing, traction};
+        }
+    }
+
+    /**
+     * Barnes-Hut repulsion on node {@code i}, with anti-collision between
+     * individual nodes
+     */
+    private void repulse(final int i, final int[] stack) {
+        double xi = x[i];
+        double yi = y[i];
+        double fx = 0.0;
+        double fy = 0.0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int cell = stack[--top];
+            int body = tree.body[cell];
+            if (body == i || tree.mass[cell] == 0) {
+                continue;
+            }
+            if (body >= 0) {
+                double xDist = xi - x[body];
+                double yDist = yi - y[body];
+                double distance = Math.sqrt(xDist * xDist + yDist * yDist)
+                    - size[i] - size[body];
+                double factor = 0.0;
+                if (distance > 0) {
+                    factor = scalingRatio * mass[i] * mass[body] / distance / distance;
+                } else if (distance < 0) {
+                    factor = 100 * scalingRatio * mass[i] * mass[body];
+                }
+                fx += xDist * factor;
+                fy += yDist * factor;
+                continue;
+            }
+
+            double xDist = xi - tree.centerX[cell];
+            double yDist = yi - tree.centerY[cell];
+            double distance2 = xDist * xDist + yDist * yDist;
+            boolean leaf = body == -2;
+            if (leaf || tree.width[cell] * tree.width[cell]
+                < distance2 * barnesHutTheta * barnesHutTheta) {
+                // Approximate whole cell by its center of mass (a leaf that is
+                // not a single body holds coincident nodes, possibly including i)
+                if (distance2 > 0) {
+                    double cellMass = tree.mass[cell];
+                    if (leaf && tree.containsPoint(cell, xi, yi)) {
+                        cellMass -= mass[i];
+                    }
+                    double factor = scalingRatio * mass[i] * cellMass / distance2;
+                    fx += xDist * factor;
+                    fy += yDist * factor;
+                }
+            } else {
+                for (int q = 0; q < 4; q++) {
+                    int c = tree.child[4 * cell + q];
+                    if (c >= 0) {
+                        stack[top++] = c;
+                    }
+                }
+            }
+        }
+        dx[i] += fx;
+        dy[i] += fy;
+    }
+
+    /**
+     * Attraction along the edges of node {@code i}, ignoring overlapping nodes
+     */
+    private void attract(final int i) {
+        double xi = x[i];
+        double yi = y[i];
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            int j = neighbors[k];
+            double xDist = xi - x[j];
+            double yDist = yi - y[j];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - size[i] - size[j];
+            if (distance > 0) {
+                dx[i] -= xDist * weights[k];
+                dy[i] -= yDist * weights[k];
+            }
+        }
+    }
+
+    /**
+     * Gravity pulling node {@code i} towards the origin
+     */
+    private void applyGravity(final int i) {
+        double distance = Math.sqrt(x[i] * x[i] + y[i] * y[i]);
+        if (distance > 0) {
+            double factor = mass[i] * gravity / distance;
+            dx[i] -= x[i] * factor;
+            dy[i] -= y[i] * factor;
+        }
+    }
+
+    /**
+     * Move a range of nodes according to their forces and the global speed
+     */
+    private class ApplyTask extends RecursiveAction {
+        private final int start;
+        private final int end;
+
+        ApplyTask(final int s, final int e) {
+            start = s;
+            end = e;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > CHUNK_SIZE) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new ApplyTask(start, mid), new ApplyTask(mid, end));
+                return;
+            }
+
+            for (int i = start; i < end; i++) {
+                if (fixed[i]) {
+                    continue;
+                }
+                double swinging = mass[i] * Math.sqrt((oldDx[i] - dx[i]) * (oldDx[i] - dx[i])
+                                                      + (oldDy[i] - dy[i]) * (oldDy[i] - dy[i]));
+                double factor = 0.1 * speed / (1.0 + Math.sqrt(speed * swinging));
+                double df = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+                if (df > 0) {
+                    factor = Math.min(factor * df, 10.0) / df;
+                    x[i] += dx[i] * factor;
+                    y[i] += dy[i] * factor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Barnes-Hut quadtree stored in flat arrays
+     * <p>
+     * Cell 0 is the root.  For each cell, {@code child[4 * cell + q]} is
+     * the index of its q-th quadrant (or -1), {@code body} is the single
+     * node contained in the cell (-1 if empty or subdivided, -2 for a leaf
+     * of coincident nodes), and {@code mass}, {@code centerX} and
+     * {@code centerY} describe its center of mass.
+     */
+    static class QuadTree {
+        int[] child;
+        int[] body;
+        double[] mass;
+        double[] centerX;
+        double[] centerY;
+        double[] minX;
+        double[] minY;
+        double[] width;
+        int numCells;
+
+        QuadTree(final int capacity) {
+            allocate(Math.max(4, 2 * capacity));
+        }
+
+        private void allocate(final int n) {
+            child = new int[4 * n];
+            body = new int[n];
+            mass = new double[n];
+            centerX = new double[n];
+            centerY = new double[n];
+            minX = new double[n];
+            minY = new double[n];
+            width = new double[n];
+        }
+
+        private void grow() {
+            int n = body.length * 2;
+            child = Arrays.copyOf(child, 4 * n);
+            body = Arrays.copyOf(body, n);
+            mass = Arrays.copyOf(mass, n);
+            centerX = Arrays.copyOf(centerX, n);
+            centerY = Arrays.copyOf(centerY, n);
+            minX = Arrays.copyOf(minX, n);
+            minY = Arrays.copyOf(minY, n);
+            width = Arrays.copyOf(width, n);
+        }
+
+        private int newCell(final double x0, final double y0, final double w) {
+            if (numCells == body.length) {
+                grow();
+            }
+            int c = numCells++;
+            child[4 * c] = -1;
+            child[4 * c + 1] = -1;
+            child[4 * c + 2] = -1;
+            child[4 * c + 3] = -1;
+            body[c] = -1;
+            mass[c] = 0.0;
+            centerX[c] = 0.0;
+            centerY[c] = 0.0;
+            minX[c] = x0;
+            minY[c] = y0;
+            width[c] = w;
+            return c;
+        }
+
+        boolean containsPoint(final int c, final double px, final double py) {
+            return px >= minX[c] && px <= minX[c] + width[c]
+                && py >= minY[c] && py <= minY[c] + width[c];
+        }
+
+        /**
+         * Build tree over the first {@code n} points
+         */
+        void build(final double[] xs, final double[] ys, final double[] ms, final int n) {
+            double x0 = Double.POSITIVE_INFINITY;
+            double y0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY;
+            double y1 = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                x0 = Math.min(x0, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                x1 = Math.max(x1, xs[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+            double w = Math.max(Math.max(x1 - x0, y1 - y0), 1e-6) * 1.0001;
+
+            numCells = 0;
+            newCell(x0, y0, w);
+            for (int i = 0; i < n; i++) {
+                insert(i, xs, ys, ms);
+            }
+            for (int c = 0; c < numCells; c++) {
+                if (mass[c] > 0) {
+                    centerX[c] /= mass[c];
+                    centerY[c] /= mass[c];
+                }
+            }
+        }
+
+        private int quadrant(final int c, final double px, final double py) {
+            double half = width[c] / 2;
+            int q = px >= minX[c] + half ? 1 : 0;
+            if (py >= minY[c] + half) {
+                q += 2;
+            }
+            return q;
+        }
+
+        private int childCell(final int c, final int q) {
+            int existing = child[4 * c + q];
+            if (existing >= 0) {
+                return existing;
+            }
+            double half = width[c] / 2;
+            double cx = minX[c] + ((q & 1) != 0 ? half : 0.0);
+            double cy = minY[c] + ((q & 2) != 0 ? half : 0.0);
+            int created = newCell(cx, cy, half);
+            child[4 * c + q] = created;
+            return created;
+        }
+
+        /**
+         * Insert point {@code i}; center-of-mass sums are divided by
+         * total mass once all points have been inserted
+         */
+        private void insert(final int i, final double[] xs, final double[] ys,
+                            final double[] ms) {
+            int c = 0;
+            int depth = 0;
+            while (true) {
+                boolean empty = mass[c] == 0;
+                mass[c] += ms[i];
+                centerX[c] += xs[i] * ms[i];
+                centerY[c] += ys[i] * ms[i];
+                if (empty) {
+                    body[c] = i;
+                    return;
+                }
+                if (depth >= MAX_TREE_DEPTH) {
+                    body[c] = -2;
+                    return;
+                }
+                int existing = body[c];
+                if (existing >= 0) {
+                    // Push the current occupant down one level
+                    body[c] = -1;
+                    int e = childCell(c, quadrant(c, xs[existing], ys[existing]));
+                    mass[e] += ms[existing];
+                    centerX[e] += xs[existing] * ms[existing];
+                    centerY[e] += ys[existing] * ms[existing];
+                    body[e] = existing;
+                } else if (existing == -2) {
+                    return;
+                }
+                c = childCell(c, quadrant(c, xs[i], ys[i]));
+                depth++;
+            }
+        }
+    }
+}
@@ -3,20 +3,27 @@ package com.civisanalytics.gephi;
 import static com.civisanalytics.gephi.GephiUtils.getFloatAttributeValue;
 import static com.civisanalytics.gephi.GephiUtils.getStringAttributeValue;
 import static com.civisanalytics.gephi.GephiUtils.getNumericColumn;
+import static com.civisanalytics.gephi.GephiUtils.getNumericCopy;
 import static com.civisanalytics.gephi.GephiUtils.getNodeRankingFunction;
 import static com.civisanalytics.gephi.GephiUtils.getNodePartitionFunction;
 import static com.civisanalytics.gephi.GephiUtils.getDynamicProperty;
 import static com.civisanalytics.gephi.GephiUtils.exportFile;
 import static com.civisanalytics.gephi.GephiUtils.validateColumn;
 import static com.civisanalytics.gephi.GephiUtils.hackLabels;
+import static com.civisanalytics.gephi.GephiUtils.percentile;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.util.concurrent.TimeUnit;
 import java.awt.Color;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import org.openide.util.Lookup;
 import org.gephi.io.importer.api.Container;
@@ -41,6 +48,11 @@ import org.gephi.appearance.plugin.PartitionElementColorTransformer;
 import org.gephi.layout.spi.Layout;
 
 import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Subgraph;
 import org.gephi.graph.api.Column;
 
 /**
@@ -50,6 +62,23 @@ import org.gephi.graph.api.Column;
  */
 public class GephiForceDiagram {
 
+    /**
+     * Duration of layout when running a fixed number of iterations,
+     * long enough never to cut layout short
+     */
+    private static final long ITERATION_TIME_LIMIT_DAYS = 365L;
+
+    /**
+     * Fewest iterations of the local pass of incremental layout
+     */
+    private static final int MIN_REFINEMENT_ITERATIONS = 10;
+
+    /**
+     * Convergence tolerance of the local pass of incremental layout, when
+     * {@code convergenceTolerance} is not set
+     */
+    private static final double REFINEMENT_CONVERGENCE_TOLERANCE = 0.01;
+
     /**
      * Number of seconds to spend on force-directed layout
      */
@@ -58,7 +87,39 @@ public class GephiForceDiagram {
     public void setLayoutTime(final int t) { layoutTime = t; }
 
     /**
-     * Number of seconds to spend adjusting layout for layout readability
+     * Number of layout iterations to run, regardless of time taken (zero to
+     * run layout for {@code layoutTime} seconds)
+     */
+    private int layoutIterations = 0;
+    public int getLayoutIterations() { return layoutIterations; }
+    public void setLayoutIterations(final int t) { layoutIterations = t; }
+
+    /**
+     * Seed from which initial node positions are randomized, replacing
+     * imported positions (if null, imported positions are kept)
+     */
+    private Long seed = null;
+    public Long getSeed() { return seed; }
+    public void setSeed(final Long s) { seed = s; }
+
+    /**
+     * Fraction of peak per-iteration node displacement (and ForceAtlas2 swing)
+     * below which layout is considered to have converged (zero to always
+     * run layout for {@code layoutTime} seconds)
+     */
+    private double convergenceTolerance = 0.0;
+    public double getConvergenceTolerance() { return convergenceTolerance; }
+    public void setConvergenceTolerance(final double t) { convergenceTolerance = t; }
+
+    /**
+     * Number of consecutive converged iterations required to stop layout early
+     */
+    private int convergenceIterations = 10;
+    public int getConvergenceIterations() { return convergenceIterations; }
+    public void setConvergenceIterations(final int t) { convergenceIterations = t; }
+
+    /**
+     * Maximum number of seconds to spend adjusting layout for label readability
      */
     private int labelAdjustTime = 20;
     public int getLabelAdjustTime() { return labelAdjustTime; }
@@ -85,6 +146,14 @@ public class GephiForceDiagram {
     public int getFigureWidth() { return figureWidth; }
     public void setFigureWidth(final int t) { figureWidth = t; }
 
+    /**
+     * Height in pixels of tiles in which figure is rendered
+     * (0 to render the whole figure at once)
+     */
+    private int tileSize = 0;
+    public int getTileSize() { return tileSize; }
+    public void setTileSize(final int t) { tileSize = t; }
+
     /**
      * Whether palette is from Gephi or Colorbrewer
      */
@@ -142,7 +211,8 @@ public class GephiForceDiagram {
     public void setNodeColorType(final String c) { nodeColorType = c; }
 
     /**
-     * Gephi algorithm to use for layout ("force_atlas" | "force_atlas2")
+     * Gephi algorithm to use for layout ("force_atlas" | "force_atlas2" |
+     * "force_atlas2_fast" | "force_atlas2_multilevel")
      */
     private String layoutAlgorithm = "force_atlas2";
     public String getayoutAlgorithm() { return layoutAlgorithm; }
@@ -155,6 +225,13 @@ public class GephiForceDiagram {
     public boolean getLabelAdjust() { return labelAdjust; }
     public void setLabelAdjust(final boolean b) { labelAdjust = b; }
 
+    /**
+     * Algorithm to use for label adjust ("label_adjust" | "grid")
+     */
+    private String labelAdjustAlgorithm = "label_adjust";
+    public String getLabelAdjustAlgorithm() { return labelAdjustAlgorithm; }
+    public void setLabelAdjustAlgorithm(final String c) { labelAdjustAlgorithm = c; }
+
     /**
      * Gravity parameter of force_atlas / force_atlas2
      */
@@ -232,6 +309,194 @@ public class GephiForceDiagram {
     public float getMaxNodeSize() { return maxNodeSize; }
     public void setMaxNodeSize(final int t) { maxNodeSize = t; }
 
+    /**
+     * Whether to read GML input in a single streaming pass (loading only
+     * the node attributes needed for the diagram), rather than through
+     * Gephi's import container
+     */
+    private boolean streamingImport = false;
+    public boolean getStreamingImport() { return streamingImport; }
+    public void setStreamingImport(final boolean b) { streamingImport = b; }
+
+    /**
+     * Whether to load graph from (and save graph to) a binary snapshot,
+     * rather than parsing the input file every time
+     */
+    private boolean snapshotCache = false;
+    public boolean getSnapshotCache() { return snapshotCache; }
+    public void setSnapshotCache(final boolean b) { snapshotCache = b; }
+
+    /**
+     * Directory in which to store snapshots (if null, snapshots are
+     * stored alongside input files)
+     */
+    private File snapshotDir = null;
+    public File getSnapshotDir() { return snapshotDir; }
+    public void setSnapshotDir(final File f) { snapshotDir = f; }
+
+    /**
+     * Directory of {@link RenderCache}, from which the figure of an
+     * identical earlier job (or the layout of one differing only in
+     * rendering options) is reused (if null, nothing is cached)
+     */
+    private File renderCacheDir = null;
+    public File getRenderCacheDir() { return renderCacheDir; }
+    public void setRenderCacheDir(final File f) { renderCacheDir = f; }
+
+    /**
+     * Maximum total size of render cache, in bytes
+     */
+    private long renderCacheSize = 1L << 30;
+    public long getRenderCacheSize() { return renderCacheSize; }
+    public void setRenderCacheSize(final long s) { renderCacheSize = s; }
+
+    /**
+     * Format of input file ("gml" | "csv"); GML input may also be a
+     * {@link GraphSnapshot}, and CSV input is a table of edges, read along
+     * with the table of nodes in {@code nodesCsvFile}
+     */
+    private String inputFormat = "gml";
+    public String getInputFormat() { return inputFormat; }
+    public void setInputFormat(final String f) { inputFormat = f; }
+
+    /**
+     * Table of nodes and their attributes, for CSV input (if null, nodes
+     * are only those named by edges)
+     */
+    private File nodesCsvFile = null;
+    public File getNodesCsvFile() { return nodesCsvFile; }
+    public void setNodesCsvFile(final File f) { nodesCsvFile = f; }
+
+    /**
+     * File of node positions from an earlier run, from which layout is
+     * started (if null, layout starts from imported positions)
+     */
+    private File positionsInputFile = null;
+    public File getPositionsInputFile() { return positionsInputFile; }
+    public void setPositionsInputFile(final File f) { positionsInputFile = f; }
+
+    /**
+     * Whether to restyle the layout in {@code positionsInputFile} (applying
+     * sizes, colors and labels, and exporting) without running layout
+     */
+    private boolean restyle = false;
+    public boolean getRestyle() { return restyle; }
+    public void setRestyle(final boolean b) { restyle = b; }
+
+    /**
+     * File of changes ({@link GraphDelta}) to apply to the imported graph,
+     * refining the layout only around the nodes they affect (if null, the
+     * whole graph is laid out)
+     */
+    private File deltaFile = null;
+    public File getDeltaFile() { return deltaFile; }
+    public void setDeltaFile(final File f) { deltaFile = f; }
+
+    /**
+     * Number of hops from nodes affected by a delta within which nodes are
+     * moved by incremental layout
+     */
+    private int refinementHops = 2;
+    public int getRefinementHops() { return refinementHops; }
+    public void setRefinementHops(final int h) { refinementHops = h; }
+
+    /**
+     * Mean displacement of nodes moved by incremental layout, as a fraction
+     * of the RMS distance of nodes from their centroid, above which the
+     * whole graph is laid out again
+     */
+    private double globalPassThreshold = 0.25;
+    public double getGlobalPassThreshold() { return globalPassThreshold; }
+    public void setGlobalPassThreshold(final double t) { globalPassThreshold = t; }
+
+    /**
+     * Method by which edges are sparsified before layout ("none" |
+     * "threshold" | "top_k" | "sample"; see {@link EdgeSparsifier})
+     */
+    private String edgeSparsification = "none";
+    public String getEdgeSparsification() { return edgeSparsification; }
+    public void setEdgeSparsification(final String s) { edgeSparsification = s; }
+
+    /**
+     * Minimum weight of edges kept by "threshold" sparsification
+     */
+    private double sparsifyThreshold = 0.0;
+    public double getSparsifyThreshold() { return sparsifyThreshold; }
+    public void setSparsifyThreshold(final double t) { sparsifyThreshold = t; }
+
+    /**
+     * Number of heaviest edges of each node kept by "top_k" sparsification
+     */
+    private int sparsifyTopK = 10;
+    public int getSparsifyTopK() { return sparsifyTopK; }
+    public void setSparsifyTopK(final int k) { sparsifyTopK = k; }
+
+    /**
+     * Approximate fraction of edges kept by "sample" sparsification
+     */
+    private double sparsifyFraction = 0.2;
+    public double getSparsifyFraction() { return sparsifyFraction; }
+    public void setSparsifyFraction(final double f) { sparsifyFraction = f; }
+
+    /**
+     * Whether to render all edges of a graph sparsified for layout (if
+     * false, only the kept edges are rendered)
+     */
+    private boolean renderAllEdges = false;
+    public boolean getRenderAllEdges() { return renderAllEdges; }
+    public void setRenderAllEdges(final boolean b) { renderAllEdges = b; }
+
+    /**
+     * File to which final node positions are written (if null, positions
+     * are not written)
+     */
+    private File positionsOutputFile = null;
+    public File getPositionsOutputFile() { return positionsOutputFile; }
+    public void setPositionsOutputFile(final File f) { positionsOutputFile = f; }
+
+    /**
+     * Format of positions output file ("csv" | "binary")
+     */
+    private String positionsOutputFormat = "csv";
+    public String getPositionsOutputFormat() { return positionsOutputFormat; }
+    public void setPositionsOutputFormat(final String f) { positionsOutputFormat = f; }
+
+    /**
+     * Descriptor file of Deep Zoom tile pyramid (if null, no pyramid is
+     * written)
+     */
+    private File deepZoomOutputFile = null;
+    public File getDeepZoomOutputFile() { return deepZoomOutputFile; }
+    public void setDeepZoomOutputFile(final File f) { deepZoomOutputFile = f; }
+
+    /**
+     * Size of full-size level of tile pyramid, as a multiple of figure size
+     */
+    private int deepZoomScale = 1;
+    public int getDeepZoomScale() { return deepZoomScale; }
+    public void setDeepZoomScale(final int s) { deepZoomScale = s; }
+
+    /**
+     * Number of threads rendering tiles of pyramid
+     */
+    private int deepZoomThreads = Runtime.getRuntime().availableProcessors();
+    public int getDeepZoomThreads() { return deepZoomThreads; }
+    public void setDeepZoomThreads(final int t) { deepZoomThreads = t; }
+
+    /**
+     * File to which JSON report of time and memory used by each phase is
+     * written (if null, report is not written)
+     */
+    private File metricsOutputFile = null;
+    public File getMetricsOutputFile() { return metricsOutputFile; }
+    public void setMetricsOutputFile(final File f) { metricsOutputFile = f; }
+
+    /**
+     * Time and memory used by each phase of the most recent run
+     */
+    private PhaseMetrics metrics = new PhaseMetrics();
+    public PhaseMetrics getMetrics() { return metrics; }
+
     /**
      * State of associated Gephi project
      */
@@ -240,16 +505,25 @@ public class GephiForceDiagram {
     public void setGephiState(final GephiState gs) { gephiState = gs; }
 
     /**
-     * Number of times to process the graph, removing nodes with
-     * degree < {@code degreeFilter}
+     * Layout algorithm most recently added by {@code initializeLayout}
      */
-    private static final int NUM_DEGREE_FILTER_ITERATIONS = 4;
+    private Layout currentLayout;
 
     public GephiForceDiagram() {
         // Initialize controllers
         gephiState = new GephiState(Lookup.getDefault());
     }
 
+    /**
+     * Create diagram using controllers that have already been initialized
+     * (e.g. by a long-running process rendering many diagrams)
+     *
+     * @param gs  Gephi state, whose controllers will be reused
+     */
+    public GephiForceDiagram(final GephiState gs) {
+        gephiState = gs;
+    }
+
     /**
      * Top-level function for creating a force-directed graph diagram
      *
@@ -261,38 +535,262 @@ public class GephiForceDiagram {
                IOException {
 
         // Initialize project workspace
-        gephiState.projectController.newProject();
-        Workspace workspace = gephiState.projectController.getCurrentWorkspace();
+        Workspace workspace;
+        synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+            gephiState.projectController.newProject();
+            workspace = gephiState.projectController.getCurrentWorkspace();
+        }
+
+        run(infile, outfile, workspace);
+    }
+
+    /**
+     * Create a force-directed graph diagram in a given workspace
+     * <p>
+     * Diagrams may be created concurrently in different workspaces,
+     * by {@code GephiForceDiagram} objects with separate {@code GephiState}.
+     *
+     * @param infile     GML-format input File
+     * @param outfile    PNG-format output File
+     * @param workspace  empty workspace in which to load graph
+     */
+    public void run(final File infile, final File outfile, final Workspace workspace)
+        throws GephiForceDiagramException, FileNotFoundException,
+               IOException {
 
-        // Import file
-        Container container = gephiState.importController.importFile(infile);
-        if (container == null) {
-            throw new FileNotFoundException("Could not open file " + infile);
+        if (restyle && positionsInputFile == null) {
+            throw new GephiForceDiagramException("Restyling requires a positions input file");
+        }
+
+        metrics = new PhaseMetrics();
+        metrics.put("input_file", infile.getPath());
+
+        // Reuse figure of an identical earlier job
+        RenderCache cache = null;
+        String layoutKey = null;
+        String figureKey = null;
+        if (renderCacheDir != null) {
+            metrics.start("render_cache");
+            cache = new RenderCache(renderCacheDir, renderCacheSize);
+            List<File> inputs = Arrays.asList(infile, nodesCsvFile);
+            Map<String, Object> options = getLayoutOptions();
+            layoutKey = RenderCache.key(inputs, options);
+            options.putAll(getRenderOptions());
+            figureKey = RenderCache.key(inputs, options);
+            if (deepZoomOutputFile == null
+                && cache.readFigure(figureKey, outfile, positionsOutputFile)) {
+                System.err.println("Reusing cached figure " + figureKey);
+                metrics.count("figure_cached", true);
+                metrics.stop();
+                if (metricsOutputFile != null) {
+                    metrics.writeJson(metricsOutputFile);
+                }
+                return;
+            }
+            metrics.count("figure_cached", false);
         }
-        container.getLoader().setEdgeDefault(EdgeDirectionDefault.DIRECTED);
 
-        // Append imported data to GraphAPI
-        gephiState.importController.process(container, new DefaultProcessor(), workspace);
+        // Import file (or its snapshot)
+        metrics.start("import");
+        importGraph(infile, workspace);
 
         // Get handle to graph
-        gephiState.initializeGraphModel();
+        gephiState.initializeGraphModel(workspace);
+        metrics.count("nodes", gephiState.graph.getNodeCount());
+        metrics.count("edges", gephiState.graph.getEdgeCount());
+
+        // Start from seeded positions, for reproducible layout
+        if (seed != null) {
+            GmlReader.placeNodes(gephiState.graph, true, new Random(seed));
+        }
 
-        // Validate columns needed for layout
+        // Validate columns needed for layout, and convert those to be ranked to numbers
+        metrics.start("validate_columns");
         validateColumns();
+        convertNumericColumns();
+
+        // Apply changes since the graph was imported
+        List<Node> changedNodes = null;
+        if (deltaFile != null) {
+            metrics.start("apply_delta");
+            changedNodes = new ArrayList<Node>(applyDelta(deltaFile).getChangedNodes());
+        }
 
         // Filter out nodes with very few connections
+        metrics.start("degree_filter");
         degreeFilterNodes();
+        metrics.count("nodes", gephiState.graph.getNodeCount());
+        metrics.count("edges", gephiState.graph.getEdgeCount());
+
+        // Start layout from (or restyle) positions of an earlier run
+        if (positionsInputFile != null) {
+            metrics.start("read_positions");
+            int numPositioned = LayoutIO.readPositions(positionsInputFile, gephiState.graph,
+                                                       seed != null ? new Random(seed)
+                                                       : new Random());
+            System.err.println("Read positions of " + numPositioned + " of "
+                               + gephiState.graph.getNodeCount() + " nodes");
+            metrics.count("nodes_positioned", numPositioned);
+        }
 
-        // Do layout
-        executeLayout();
+        // Drop edges for layout from a dense graph (but render all of them when
+        //   restyling, which skips layout)
+        EdgeSparsifier sparsifier = restyle ? null : sparsifyEdges();
+
+        // Do layout, unless restyling saved positions, or an earlier job differing
+        //   only in rendering options has cached it
+        if (restyle) {
+            applyAppearance();
+            metrics.stop();
+        } else if (cache != null && readCachedLayout(cache, layoutKey)) {
+            System.err.println("Reusing cached layout " + layoutKey);
+        } else {
+            if (changedNodes != null) {
+                executeIncrementalLayout(changedNodes);
+            } else {
+                executeLayout();
+            }
+            if (cache != null) {
+                metrics.start("write_cached_layout");
+                cache.writeLayout(layoutKey, gephiState.graph);
+                metrics.stop();
+            }
+        }
+        if (sparsifier != null) {
+            metrics.start("restore_edges");
+            sparsifier.restore();
+            metrics.stop();
+        }
 
         // Do label adjust
         if (labelAdjust) {
+            metrics.start("label_adjust");
             adjustLabels();
         }
 
+        // Output node positions
+        if (positionsOutputFile != null) {
+            metrics.start("write_positions");
+            LayoutIO.writePositions(gephiState.graph, positionsOutputFile, positionsOutputFormat);
+        }
+
         // Output image file
-        exportFile(gephiState, figureWidth, figureHeight, workspace, outfile);
+        metrics.start("export");
+        synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+            gephiState.openWorkspace();
+            exportFile(gephiState, figureWidth, figureHeight, tileSize, workspace, outfile);
+        }
+
+        // Output tile pyramid
+        if (deepZoomOutputFile != null) {
+            metrics.start("export_deep_zoom");
+            DeepZoomExporter exporter = new DeepZoomExporter(gephiState.previewController);
+            exporter.setWorkspace(workspace);
+            exporter.setWidth(figureWidth * deepZoomScale);
+            exporter.setHeight(figureHeight * deepZoomScale);
+            exporter.setNumThreads(deepZoomThreads);
+            synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+                gephiState.openWorkspace();
+                exporter.export(deepZoomOutputFile);
+            }
+            metrics.count("tiles_written", exporter.getTilesWritten());
+            metrics.count("tiles_skipped", exporter.getTilesSkipped());
+        }
+
+        if (cache != null) {
+            metrics.start("write_cached_figure");
+            cache.writeFigure(figureKey, outfile, positionsOutputFile);
+        }
+        metrics.stop();
+
+        if (metricsOutputFile != null) {
+            metrics.writeJson(metricsOutputFile);
+        }
+    }
+
+    /**
+     * Load graph from file into workspace
+     * <p>
+     * The file is read either by Gephi's importer or by {@link GmlReader},
+     * unless it is a {@link GraphSnapshot}, or by {@link CsvGraphReader} for
+     * CSV input.
+     * If the snapshot cache is enabled, a GML graph is loaded from the
+     * snapshot of the file's current contents when one exists; otherwise
+     * the file is imported and a snapshot is written for later runs.
+     *
+     * @param infile     GML-format input File (or CSV table of edges)
+     * @param workspace  empty workspace in which to load graph
+     */
+    protected void importGraph(final File infile, final Workspace workspace)
+        throws FileNotFoundException, IOException {
+        if (infile.isFile() && GraphSnapshot.isSnapshot(infile)) {
+            // Input is itself a snapshot (e.g. from GraphGenerator)
+            GraphSnapshot.read(infile, gephiState.graphController.getGraphModel(workspace));
+            return;
+        }
+
+        if (inputFormat.equals("csv")) {
+            // Read tables directly into GraphAPI, typing the attributes used
+            //   for sizing and ranking as floats (unless they are also labels)
+            List<String> numericColumns = new ArrayList<String>();
+            List<String> textColumns = new ArrayList<String>();
+            textColumns.add(nodeLabelColumn);
+            numericColumns.add(nodeSizeColumn);
+            if (nodeColorType.toLowerCase().equals("ranking")) {
+                numericColumns.add(nodeColorColumn);
+            } else {
+                textColumns.add(nodeColorColumn);
+            }
+            for (Iterator<String> it = numericColumns.iterator(); it.hasNext();) {
+                if (it.next().equalsIgnoreCase(nodeLabelColumn)) {
+                    it.remove();
+                }
+            }
+            CsvGraphReader reader
+                = new CsvGraphReader(gephiState.graphController.getGraphModel(workspace),
+                                     numericColumns, textColumns);
+            reader.read(nodesCsvFile, infile);
+            return;
+        }
+
+        File snapshot = null;
+        if (snapshotCache) {
+            snapshot = GraphSnapshot.getSnapshotFile(infile, snapshotDir);
+            if (snapshot.isFile()) {
+                System.err.println("Loading snapshot " + snapshot);
+                GraphSnapshot.read(snapshot, gephiState.graphController.getGraphModel(workspace));
+                return;
+            }
+        }
+
+        if (streamingImport) {
+            // Read file directly into GraphAPI
+            GmlReader reader = new GmlReader(gephiState.graphController.getGraphModel(workspace),
+                                             Arrays.asList(nodeSizeColumn, nodeColorColumn,
+                                                           nodeLabelColumn));
+            reader.read(infile);
+        } else {
+            // Import file
+            Container container = gephiState.importController.importFile(infile);
+            if (container == null) {
+                throw new FileNotFoundException("Could not open file " + infile);
+            }
+            container.getLoader().setEdgeDefault(EdgeDirectionDefault.DIRECTED);
+
+            // Append imported data to GraphAPI
+            synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+                gephiState.importController.process(container, new DefaultProcessor(),
+                                                    workspace);
+            }
+        }
+
+        // Streaming import keeps only this run's columns, so a snapshot of it
+        //   would be incomplete for runs with other columns or importers
+        if (snapshot != null && !streamingImport) {
+            GraphModel graphModel = gephiState.graphController.getGraphModel(workspace);
+            System.err.println("Writing snapshot " + snapshot);
+            GraphSnapshot.write(graphModel.getGraph(), graphModel.getNodeTable(), snapshot);
+        }
     }
 
     /**
@@ -301,24 +799,364 @@ public class GephiForceDiagram {
      */
     protected void executeLayout()
         throws GephiForceDiagramException {
+        applyAppearance();
+        runLayout(layoutAlgorithm, layoutTime, layoutIterations, convergenceTolerance);
+    }
 
-        // Layout for N seconds
-        AutoLayout autoLayout = new AutoLayout(layoutTime, TimeUnit.SECONDS);
+    /**
+     * Apply force-directed layout algorithm to the visible graph
+     *
+     * @param algorithm   layout algorithm, as for {@code layoutAlgorithm}
+     * @param time        layout time in seconds, as for {@code layoutTime}
+     * @param iterations  iterations of layout, as for {@code layoutIterations}
+     * @param tolerance   convergence tolerance, as for {@code convergenceTolerance}
+     */
+    private void runLayout(final String algorithm, final int time, final int iterations,
+                           final double tolerance)
+        throws GephiForceDiagramException {
+
+        // Layout for N seconds, or N iterations (or until convergence, if enabled)
+        AutoLayout autoLayout = iterations > 0
+            ? new AutoLayout(ITERATION_TIME_LIMIT_DAYS, TimeUnit.DAYS)
+            : new AutoLayout(time, TimeUnit.SECONDS);
         autoLayout.setGraphModel(gephiState.graphModel);
 
         // Initialize ForceAtlas layout
-        initializeLayout(autoLayout);
+        initializeLayout(autoLayout, algorithm, time, iterations, tolerance);
 
-        // Set node sizes
-        resizeNodes();
+        metrics.start("layout");
+        autoLayout.execute();
 
-        // Assign node colors
-        colorNodes();
+        // Release resources (e.g. worker threads) held by layout, once it has run
+        if (time > 0 || iterations > 0) {
+            currentLayout.endAlgo();
+        }
+        Layout layout = currentLayout;
+        if (layout instanceof ConvergenceLayout) {
+            metrics.count("iterations", ((ConvergenceLayout) layout).getIterations());
+            metrics.count("converged", ((ConvergenceLayout) layout).isConverged());
+            layout = ((ConvergenceLayout) layout).getLayout();
+        }
+        if (layout instanceof MultilevelLayout) {
+            metrics.count("layout_levels", ((MultilevelLayout) layout).getLevelCount());
+        }
+        metrics.stop();
+    }
+
+    /**
+     * Sparsify the edges of the graph for layout, as set by
+     * {@code edgeSparsification}
+     *
+     * @return sparsifier, whose {@code restore} method is to be called
+     *         after layout (or null, if edges are not sparsified)
+     */
+    protected EdgeSparsifier sparsifyEdges() {
+        if (edgeSparsification.equals("none")) {
+            return null;
+        }
+        metrics.start("sparsify");
+        EdgeSparsifier sparsifier = new EdgeSparsifier(edgeSparsification);
+        sparsifier.setThreshold(sparsifyThreshold);
+        sparsifier.setTopK(sparsifyTopK);
+        sparsifier.setFraction(sparsifyFraction);
+        sparsifier.setRandom(seed != null ? new Random(seed) : new Random());
+        int numEdges = gephiState.graphModel.getGraphVisible().getEdgeCount();
+        int numKept = sparsifier.apply(gephiState.graphModel, renderAllEdges);
+        double keptFraction = numEdges > 0 ? (double) numKept / numEdges : 1.0;
+        System.err.println(String.format("Kept %d of %d edges (%.1f%%) for layout",
+                                         numKept, numEdges, 100.0 * keptFraction));
+        metrics.count("edges_kept", numKept);
+        metrics.count("kept_fraction", keptFraction);
+        metrics.stop();
+        return sparsifier;
+    }
 
-        // Insert node labels
-        labelNodes();
+    /**
+     * Apply changes in delta file to the graph, placing added nodes at
+     * the centroid of their neighbors
+     *
+     * @param infile  delta file
+     * @return applied delta, giving the nodes affected by it
+     */
+    public GraphDelta applyDelta(final File infile) throws IOException {
+        GraphDelta delta = new GraphDelta(gephiState.graphModel);
+        delta.apply(infile, seed != null ? new Random(seed) : new Random());
+        System.err.println("Applied delta: " + delta.getNodesAdded() + " nodes added, "
+                           + delta.getNodesRemoved() + " removed; " + delta.getEdgesAdded()
+                           + " edges added, " + delta.getEdgesRemoved() + " removed");
+        metrics.count("nodes_added", delta.getNodesAdded());
+        metrics.count("nodes_removed", delta.getNodesRemoved());
+        metrics.count("edges_added", delta.getEdgesAdded());
+        metrics.count("edges_removed", delta.getEdgesRemoved());
+        return delta;
+    }
 
-        autoLayout.execute();
+    /**
+     * Transform node attributes as {@code executeLayout} does, then refine
+     * the existing layout around changed nodes
+     * <p>
+     * Nodes within {@code refinementHops} hops of a changed node are laid
+     * out on a view of the graph holding just them and their other
+     * neighbors, which are held fixed, so that the time taken depends on
+     * the size of the change rather than that of the graph: the layout time
+     * (or iterations, with at least {@code MIN_REFINEMENT_ITERATIONS}) is
+     * scaled by the fraction of the graph's nodes in the view, and layout
+     * stops once it converges, with {@code REFINEMENT_CONVERGENCE_TOLERANCE}
+     * if {@code convergenceTolerance} is not set.  If the mean
+     * displacement of the moved nodes exceeds {@code globalPassThreshold}
+     * times the RMS distance of nodes from their centroid, the change has
+     * reshaped the layout, and the whole graph is laid out again from its
+     * refined positions.  Multilevel layout, which would discard existing
+     * positions by coarsening, is replaced by {@code force_atlas2_fast}.
+     *
+     * @param changed  nodes affected by changes to the graph
+     */
+    protected void executeIncrementalLayout(final Collection<Node> changed)
+        throws GephiForceDiagramException {
+        applyAppearance();
+
+        Graph graph = gephiState.graph;
+        metrics.start("select_neighborhood");
+        int maxStoreId = 0;
+        for (Node n : graph.getNodes()) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
+        }
+
+        // Find nodes to move by breadth-first search from changed nodes, then
+        //   the boundary of nodes adjacent to them
+        int[] hops = new int[maxStoreId + 1];
+        Arrays.fill(hops, -1);
+        List<Node> moved = new ArrayList<Node>();
+        for (Node n : changed) {
+            if (graph.contains(n) && hops[n.getStoreId()] < 0) {
+                hops[n.getStoreId()] = 0;
+                moved.add(n);
+            }
+        }
+        for (int head = 0; head < moved.size(); head++) {
+            Node n = moved.get(head);
+            if (hops[n.getStoreId()] >= refinementHops) {
+                continue;
+            }
+            for (Node m : graph.getNeighbors(n)) {
+                if (hops[m.getStoreId()] < 0) {
+                    hops[m.getStoreId()] = hops[n.getStoreId()] + 1;
+                    moved.add(m);
+                }
+            }
+        }
+        List<Node> boundary = new ArrayList<Node>();
+        for (Node n : moved) {
+            for (Node m : graph.getNeighbors(n)) {
+                if (hops[m.getStoreId()] < 0) {
+                    hops[m.getStoreId()] = refinementHops + 1;
+                    boundary.add(m);
+                }
+            }
+        }
+        metrics.count("moved_nodes", moved.size());
+        metrics.count("boundary_nodes", boundary.size());
+        if (moved.isEmpty()) {
+            metrics.stop();
+            return;
+        }
+
+        float[] startX = new float[moved.size()];
+        float[] startY = new float[moved.size()];
+        for (int i = 0; i < moved.size(); i++) {
+            startX[i] = moved.get(i).x();
+            startY[i] = moved.get(i).y();
+        }
+
+        String algorithm = layoutAlgorithm.equals("force_atlas2_multilevel")
+            ? "force_atlas2_fast" : layoutAlgorithm;
+
+        // Lay out moved nodes, with the boundary fixed
+        GraphModel graphModel = gephiState.graphModel;
+        GraphView oldView = graphModel.getVisibleView();
+        GraphView localView = graphModel.createView();
+        List<Node> pinned = new ArrayList<Node>();
+        try {
+            Subgraph local = graphModel.getGraph(localView);
+            local.addAllNodes(moved);
+            local.addAllNodes(boundary);
+            Graph visible = graphModel.getGraph(oldView);
+            for (Node n : moved) {
+                for (Edge e : visible.getEdges(n).toArray()) {
+                    local.addEdge(e);
+                }
+            }
+            for (Node n : boundary) {
+                if (!n.isFixed()) {
+                    n.setFixed(true);
+                    pinned.add(n);
+                }
+            }
+            graphModel.setVisibleView(localView);
+
+            // Scale layout budget by the share of the graph in the view
+            double fraction = Math.min(1.0, (double) (moved.size() + boundary.size())
+                                            / graph.getNodeCount());
+            int localIterations = layoutIterations > 0
+                ? Math.min(layoutIterations,
+                           Math.max(MIN_REFINEMENT_ITERATIONS,
+                                    (int) Math.ceil(layoutIterations * fraction)))
+                : 0;
+            runLayout(algorithm, (int) Math.ceil(layoutTime * fraction), localIterations,
+                      convergenceTolerance > 0
+                      ? convergenceTolerance : REFINEMENT_CONVERGENCE_TOLERANCE);
+        } finally {
+            for (Node n : pinned) {
+                n.setFixed(false);
+            }
+            graphModel.setVisibleView(oldView);
+            graphModel.destroyView(localView);
+        }
+
+        // Lay out whole graph if moved nodes have moved far, relative to its extent
+        metrics.start("measure_displacement");
+        double displacement = 0.0;
+        for (int i = 0; i < moved.size(); i++) {
+            displacement += Math.hypot(moved.get(i).x() - startX[i],
+                                       moved.get(i).y() - startY[i]);
+        }
+        displacement /= moved.size();
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumSq = 0.0;
+        Node[] nodes = graph.getNodes().toArray();
+        for (Node n : nodes) {
+            sumX += n.x();
+            sumY += n.y();
+            sumSq += (double) n.x() * n.x() + (double) n.y() * n.y();
+        }
+        double meanX = sumX / nodes.length;
+        double meanY = sumY / nodes.length;
+        double radius = Math.sqrt(Math.max(0.0, sumSq / nodes.length
+                                           - meanX * meanX - meanY * meanY));
+        double relativeDisplacement = radius > 0 ? displacement / radius : 0.0;
+        boolean globalPass = relativeDisplacement > globalPassThreshold;
+        metrics.count("relative_displacement", relativeDisplacement);
+        metrics.count("global_pass", globalPass);
+        metrics.stop();
+        if (globalPass) {
+            System.err.println("Incremental layout moved nodes by " + relativeDisplacement
+                               + " of layout radius; laying out whole graph");
+            runLayout(algorithm, layoutTime, layoutIterations, convergenceTolerance);
+        }
+    }
+
+    /**
+     * Transform node attributes to set sizes, colors, and labels
+     */
+    protected void applyAppearance()
+        throws GephiForceDiagramException {
+        synchronized (GephiState.CURRENT_WORKSPACE_LOCK) {
+            gephiState.openWorkspace();
+
+            // Set node sizes
+            metrics.start("resize_nodes");
+            resizeNodes();
+
+            // Assign node colors
+            metrics.start("color_nodes");
+            colorNodes();
+
+            // Insert node labels
+            metrics.start("label_nodes");
+            labelNodes();
+        }
+    }
+
+    /**
+     * Transform node attributes as {@code executeLayout} does, then set
+     * node positions from a cached layout instead of running layout
+     *
+     * @param cache  render cache
+     * @param key    key of layout entry
+     * @return whether cache held the layout (if not, only node attributes
+     *         have been transformed)
+     */
+    private boolean readCachedLayout(final RenderCache cache, final String key)
+        throws GephiForceDiagramException, IOException {
+        metrics.start("read_cached_layout");
+        boolean cached = cache.readLayout(key, gephiState.graph);
+        metrics.count("layout_cached", cached);
+        if (cached) {
+            applyAppearance();
+        }
+        metrics.stop();
+        return cached;
+    }
+
+    /**
+     * Options that affect the layout of the graph, by name, from which
+     * (along with the input files) layout entries of the render cache are
+     * keyed
+     */
+    protected Map<String, Object> getLayoutOptions() throws IOException {
+        Map<String, Object> options = new TreeMap<String, Object>();
+        options.put("input_format", inputFormat);
+        options.put("streaming_import", streamingImport);
+        options.put("degree_filter", degreeFilter);
+        options.put("positions_input_file", positionsInputFile == null ? null
+                    : GraphSnapshot.contentHash(positionsInputFile));
+        options.put("seed", seed);
+        options.put("restyle", restyle);
+        options.put("delta_file", deltaFile == null ? null : GraphSnapshot.contentHash(deltaFile));
+        options.put("refinement_hops", deltaFile == null ? null : refinementHops);
+        options.put("global_pass_threshold", deltaFile == null ? null : globalPassThreshold);
+        options.put("edge_sparsification", edgeSparsification);
+        options.put("sparsify_threshold", edgeSparsification.equals("threshold")
+                    ? sparsifyThreshold : null);
+        options.put("sparsify_top_k", edgeSparsification.equals("top_k") ? sparsifyTopK : null);
+        options.put("sparsify_fraction", edgeSparsification.equals("sample")
+                    ? sparsifyFraction : null);
+        options.put("layout_algorithm", layoutAlgorithm);
+        options.put("layout_time", layoutTime);
+        options.put("layout_iterations", layoutIterations);
+        options.put("convergence_tolerance", convergenceTolerance);
+        options.put("convergence_iterations", convergenceIterations);
+        options.put("gravity", gravity);
+        options.put("scaling_ratio", scalingRatio);
+        options.put("jitter_tolerance", jitterTolerance);
+        options.put("speed", speed);
+        options.put("inertia", inertia);
+        options.put("node_size_column", nodeSizeColumn);
+        options.put("min_node_size", minNodeSize);
+        options.put("max_node_size", maxNodeSize);
+        return options;
+    }
+
+    /**
+     * Options that affect only the rendering of a laid-out graph, by name,
+     * from which (along with layout options and the input files) figure
+     * entries of the render cache are keyed
+     */
+    protected Map<String, Object> getRenderOptions() {
+        Map<String, Object> options = new TreeMap<String, Object>();
+        options.put("node_color_column", nodeColorColumn);
+        options.put("node_color_type", nodeColorType);
+        options.put("node_label_column", nodeLabelColumn);
+        options.put("color_palette_source", colorPaletteSource);
+        options.put("color_palette_type", colorPaletteType);
+        options.put("color_palette_number", colorPaletteNumber);
+        options.put("num_colors", numColors);
+        options.put("label_percentile", labelPercentile);
+        options.put("min_label_size", minLabelSize);
+        options.put("max_label_size", maxLabelSize);
+        options.put("edge_opacity", edgeOpacity);
+        options.put("render_all_edges", edgeSparsification.equals("none") ? null
+                    : renderAllEdges);
+        options.put("label_adjust", labelAdjust);
+        options.put("label_adjust_algorithm", labelAdjustAlgorithm);
+        options.put("label_adjust_time", labelAdjustTime);
+        options.put("figure_width", figureWidth);
+        options.put("figure_height", figureHeight);
+        options.put("tile_size", tileSize);
+        options.put("positions_output_format", positionsOutputFile == null ? null
+                    : positionsOutputFormat);
+        return options;
     }
 
     /**
@@ -329,8 +1167,27 @@ public class GephiForceDiagram {
      */
     protected void initializeLayout(final AutoLayout autoLayout)
         throws GephiForceDiagramException {
+        initializeLayout(autoLayout, layoutAlgorithm, layoutTime, layoutIterations,
+                         convergenceTolerance);
+    }
 
-        if (layoutAlgorithm.equals("force_atlas2")) {
+    /**
+     * Set parameters of given layout algorithm to be applied to graph,
+     * with the given budget
+     *
+     * @param autoLayout  Gephi {@code AutoLayout} to be applied in
+     *                    laying out graph
+     * @param algorithm   layout algorithm, as for {@code layoutAlgorithm}
+     * @param time        layout time in seconds, as for {@code layoutTime}
+     * @param iterations  iterations of layout, as for {@code layoutIterations}
+     * @param tolerance   convergence tolerance, as for {@code convergenceTolerance}
+     */
+    protected void initializeLayout(final AutoLayout autoLayout, final String algorithm,
+                                    final int time, final int iterations,
+                                    final double tolerance)
+        throws GephiForceDiagramException {
+
+        if (algorithm.equals("force_atlas2")) {
             Layout faLayout = new ForceAtlas2Builder().buildLayout();
 
             // AdjustSizes always enabled
@@ -348,11 +1205,41 @@ public class GephiForceDiagram {
                     properties.add(getDynamicProperty(paramNames[i], params[i]));
                 }
             }
-            autoLayout.addLayout(faLayout, 1.0f,
-                                 properties.toArray(new AutoLayout
-                                                    .DynamicProperty[properties.size()]));
 
-        } else if (layoutAlgorithm.equals("force_atlas")) {
+            // Gephi's ForceAtlas2 splits repulsion between threads that race on
+            //   shared nodes, so a fixed number of iterations is only reproducible
+            //   on one thread
+            if (iterations > 0) {
+                properties.add(getDynamicProperty("ForceAtlas2.threads.name", 1));
+            }
+            addLayout(autoLayout, faLayout, properties, iterations, tolerance);
+
+        } else if (algorithm.equals("force_atlas2_fast")
+                   || algorithm.equals("force_atlas2_multilevel")) {
+            // Multithreaded ForceAtlas2 on primitive arrays (sizes always adjusted),
+            //   optionally on successively finer coarsenings of the graph
+            FastForceAtlas2Layout faLayout;
+            if (algorithm.equals("force_atlas2_multilevel")) {
+                MultilevelLayout mlLayout = new MultilevelLayout();
+                mlLayout.setLayoutTime(time);
+                mlLayout.setLayoutIterations(iterations);
+                faLayout = mlLayout;
+            } else {
+                faLayout = new FastForceAtlas2Layout();
+            }
+            if (gravity > 0) {
+                faLayout.setGravity(gravity);
+            }
+            if (scalingRatio > 0) {
+                faLayout.setScalingRatio(scalingRatio);
+            }
+            if (jitterTolerance > 0) {
+                faLayout.setJitterTolerance(jitterTolerance);
+            }
+            addLayout(autoLayout, faLayout, new ArrayList<AutoLayout.DynamicProperty>(),
+                      iterations, tolerance);
+
+        } else if (algorithm.equals("force_atlas")) {
             Layout faLayout = new ForceAtlasLayout(null);
 
             // AdjustSizes always enabled
@@ -379,15 +1266,42 @@ public class GephiForceDiagram {
                     properties.add(getDynamicProperty(paramNames[i], params[i]));
                 }
             }
-            autoLayout.addLayout(faLayout, 1.0f,
-                                 properties.toArray(new AutoLayout
-                                                    .DynamicProperty[properties.size()]));
+            addLayout(autoLayout, faLayout, properties, iterations, tolerance);
 
         } else {
-            throw new GephiForceDiagramException("Unknown layout algorithm: " + layoutAlgorithm);
+            throw new GephiForceDiagramException("Unknown layout algorithm: " + algorithm);
         }
     }
 
+    /**
+     * Add layout algorithm to {@code AutoLayout}, wrapping it to stop
+     * early on convergence if {@code tolerance} is set, and after
+     * {@code iterations} iterations if that is set
+     *
+     * @param autoLayout  Gephi {@code AutoLayout} to be applied in
+     *                    laying out graph
+     * @param layout      layout algorithm
+     * @param properties  parameters of layout algorithm
+     * @param iterations  maximum iterations of layout, or 0 for no limit
+     * @param tolerance   convergence tolerance, or 0 to not stop on convergence
+     */
+    private void addLayout(final AutoLayout autoLayout, final Layout layout,
+                           final List<AutoLayout.DynamicProperty> properties,
+                           final int iterations, final double tolerance) {
+        Layout effectiveLayout = layout;
+        if (tolerance > 0 || iterations > 0) {
+            ConvergenceLayout convergenceLayout
+                = new ConvergenceLayout(layout, autoLayout, tolerance,
+                                        convergenceIterations);
+            convergenceLayout.setMaxIterations(iterations);
+            effectiveLayout = convergenceLayout;
+        }
+        currentLayout = effectiveLayout;
+        autoLayout.addLayout(effectiveLayout, 1.0f,
+                             properties.toArray(new AutoLayout
+                                                .DynamicProperty[properties.size()]));
+    }
+
     /**
      * Assign node attributes for labeling
      */
@@ -395,27 +1309,31 @@ public class GephiForceDiagram {
         throws GephiForceDiagramException {
         // Find top N nodes to label, and assign labels
         Column sizeColumn = gephiState.attrTable.getColumn(nodeSizeColumn);
-        String nodeSizeColumnAttr = getNumericColumn(gephiState,
-                                                     sizeColumn,
-                                                     Float.class).getTitle();
+        Column rankColumn = getNumericColumn(gephiState, sizeColumn, Float.class);
+        Column labelColumn = gephiState.attrTable.getColumn(nodeLabelColumn);
+
+        // Read sizes and labels of all nodes in a single pass; nodes without a
+        //   size (e.g. added by edges alone) are NaN, so they are never labeled
+        //   and are left out of the percentile
+        Node[] nodes = gephiState.graph.getNodes().toArray();
+        double[] rankvals = new double[nodes.length];
+        String[] labels = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            rankvals[i] = nodes[i].getAttribute(rankColumn) == null ? Double.NaN
+                : getFloatAttributeValue(nodes[i], rankColumn);
+            labels[i] = getStringAttributeValue(nodes[i], labelColumn);
+        }
+
         double cutoff = Double.NEGATIVE_INFINITY;
         if (labelPercentile > 0) {
-            double[] rankvals = new double[gephiState.graph.getNodeCount()];
-            int k = 0;
-            for (Node n : gephiState.graph.getNodes()) {
-                rankvals[k] = getFloatAttributeValue(n, nodeSizeColumnAttr);
-                k++;
-            }
-            cutoff = new Percentile().evaluate(rankvals, labelPercentile);
+            cutoff = percentile(Arrays.copyOf(rankvals, nodes.length), labelPercentile);
         }
 
-        for (Node n : gephiState.graph.getNodes()) {
-            String label = getStringAttributeValue(n, getNodeLabelColumn());
-                if (getFloatAttributeValue(n, nodeSizeColumnAttr) > cutoff
-                && label != null) {
-                n.setLabel(label);
+        for (int i = 0; i < nodes.length; i++) {
+            if (rankvals[i] > cutoff && labels[i] != null) {
+                nodes[i].setLabel(labels[i]);
             } else {
-                n.setLabel("");
+                nodes[i].setLabel("");
             }
         }
 
@@ -428,7 +1346,7 @@ public class GephiForceDiagram {
         }
 
         // Rank label size
-        Function labelSizeRanking = getNodeRankingFunction(gephiState, sizeColumn,
+        Function labelSizeRanking = getNodeRankingFunction(gephiState, rankColumn,
                                                            RankingLabelSizeTransformer.class);
         RankingLabelSizeTransformer labelSizeTransformer
             = (RankingLabelSizeTransformer) labelSizeRanking.getTransformer();
@@ -441,7 +1359,7 @@ public class GephiForceDiagram {
         hackLabels(gephiState.graph);
 
         // Set 'show labels' option in Preview - and disable node size influence on text size
-        PreviewModel previewModel = gephiState.previewController.getModel();
+        PreviewModel previewModel = gephiState.previewController.getModel(gephiState.workspace);
         previewModel.getProperties().putValue(PreviewProperty.SHOW_NODE_LABELS, Boolean.TRUE);
         previewModel.getProperties().putValue(PreviewProperty.EDGE_OPACITY, edgeOpacity);
         previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_PROPORTIONAL_SIZE,
@@ -514,8 +1432,14 @@ public class GephiForceDiagram {
     }
 
     /**
-     * Filter graph to remove nodes with degree <
-     * {@code degreeFilter}
+     * Filter graph to its {@code degreeFilter}-core, i.e. the largest
+     * subgraph in which every node has degree &gt;= {@code degreeFilter}
+     * <p>
+     * Nodes are peeled in waves: the first wave holds all nodes with degree
+     * below the cutoff, and each later wave holds the nodes whose degree fell
+     * below the cutoff through removal of the previous wave.  Each node and
+     * edge is visited a constant number of times, and all peeled nodes are
+     * removed from the graph in a single batch.
      */
     protected void degreeFilterNodes() {
         if (degreeFilter < 1) {
@@ -523,39 +1447,143 @@ public class GephiForceDiagram {
             return;
         }
 
+        Graph graph = gephiState.graph;
         System.err.println("Before filtering based on degree:");
-        System.err.println("  Nodes: " + gephiState.graph.getNodeCount()
-                           + " Edges: " + gephiState.graph.getEdgeCount());
-
-        for (int k = 0; k < NUM_DEGREE_FILTER_ITERATIONS; k++) {
-            List<Node> toRemove = new ArrayList<Node>();
-            for (Node n : gephiState.graph.getNodes()) {
-                if (gephiState.graph.getDegree(n) < degreeFilter) {
-                    toRemove.add(n);
-                }
-            }
-            if (toRemove.size() == 0) {
-                break;
+        System.err.println("  Nodes: " + graph.getNodeCount()
+                           + " Edges: " + graph.getEdgeCount());
+
+        // Index nodes by store id, and find initial degrees
+        Node[] nodes = graph.getNodes().toArray();
+        int maxStoreId = 0;
+        for (Node n : nodes) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
+        }
+        int[] degree = new int[maxStoreId + 1];
+        boolean[] peeled = new boolean[maxStoreId + 1];
+
+        // Queue of peeled nodes; the current wave is queue[head, waveEnd)
+        Node[] queue = new Node[nodes.length];
+        int tail = 0;
+        for (Node n : nodes) {
+            degree[n.getStoreId()] = graph.getDegree(n);
+            if (degree[n.getStoreId()] < degreeFilter) {
+                peeled[n.getStoreId()] = true;
+                queue[tail++] = n;
             }
-            for (Node n : toRemove) {
-                gephiState.graph.removeNode(n);
+        }
+
+        int head = 0;
+        int level = 0;
+        while (head < tail) {
+            int waveEnd = tail;
+            System.err.println("  Peeling level " + level + ": " + (waveEnd - head) + " nodes");
+            for (; head < waveEnd; head++) {
+                Node n = queue[head];
+                for (Edge e : graph.getEdges(n)) {
+                    Node m = graph.getOpposite(n, e);
+                    int id = m.getStoreId();
+                    if (m == n || peeled[id]) {
+                        continue;
+                    }
+                    degree[id]--;
+                    if (degree[id] < degreeFilter) {
+                        peeled[id] = true;
+                        queue[tail++] = m;
+                    }
+                }
             }
+            level++;
+        }
+
+        graph.writeLock();
+        try {
+            graph.removeAllNodes(Arrays.asList(queue).subList(0, tail));
+        } finally {
+            graph.writeUnlock();
         }
 
         System.err.println("After filtering:");
-        System.err.println("  Nodes: " + gephiState.graph.getNodeCount()
-                           + " Edges: " + gephiState.graph.getEdgeCount());
+        System.err.println("  Nodes: " + graph.getNodeCount()
+                           + " Edges: " + graph.getEdgeCount());
     }
 
     /**
      * Adjust layout to make labels more readable
+     * <p>
+     * Only labeled nodes take part: the label adjust algorithm runs on a
+     * view of the graph holding just those nodes, so its time depends on
+     * the number of labels rather than the size of the graph.  Unlabeled
+     * nodes are neither moved nor avoided.  Adjustment stops once the
+     * algorithm converges (no labels overlap), or after
+     * {@code labelAdjustTime} seconds.
      */
-    protected void adjustLabels() {
-        AutoLayout autoLayout = new AutoLayout(labelAdjustTime, TimeUnit.SECONDS);
-        autoLayout.setGraphModel(gephiState.graphModel);
-        LabelAdjust laLayout = new LabelAdjust(null);
-        autoLayout.addLayout(laLayout, 1.0f);
-        autoLayout.execute();
+    protected void adjustLabels()
+        throws GephiForceDiagramException {
+
+        Layout laLayout;
+        if (labelAdjustAlgorithm.equals("label_adjust")) {
+            laLayout = new LabelAdjust(null);
+        } else if (labelAdjustAlgorithm.equals("grid")) {
+            laLayout = new GridLabelAdjust();
+        } else {
+            throw new GephiForceDiagramException("Unknown label adjust algorithm: "
+                                                 + labelAdjustAlgorithm);
+        }
+
+        GraphModel graphModel = gephiState.graphModel;
+        GraphView oldView = graphModel.getVisibleView();
+        GraphView labelView = graphModel.createView();
+        try {
+            Subgraph labeled = graphModel.getGraph(labelView);
+            for (Node n : gephiState.graph.getNodes().toArray()) {
+                if (!n.getLabel().isEmpty()) {
+                    labeled.addNode(n);
+                }
+            }
+            metrics.count("labeled_nodes", labeled.getNodeCount());
+            graphModel.setVisibleView(labelView);
+
+            // Unlike AutoLayout, stop as soon as the layout has converged
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(labelAdjustTime);
+            int iterations = 0;
+            laLayout.setGraphModel(graphModel);
+            laLayout.initAlgo();
+            while (laLayout.canAlgo() && System.nanoTime() < deadline) {
+                laLayout.goAlgo();
+                iterations++;
+            }
+            metrics.count("label_adjust_iterations", iterations);
+            metrics.count("label_adjust_converged", !laLayout.canAlgo());
+            if (laLayout instanceof GridLabelAdjust) {
+                metrics.count("label_overlaps", ((GridLabelAdjust) laLayout).getOverlaps());
+            }
+            laLayout.endAlgo();
+        } finally {
+            graphModel.setVisibleView(oldView);
+            graphModel.destroyView(labelView);
+        }
+    }
+
+    /**
+     * Convert the columns to be ranked (for sizes, and for colors when
+     * ranking) to floats in place, once after import, rather than keeping
+     * a numeric copy of each alongside the original.  A column that also
+     * labels nodes is copied instead, so that labels keep their text.
+     */
+    protected void convertNumericColumns() {
+        convertNumericColumn(nodeSizeColumn);
+        if (nodeColorType.toLowerCase().equals("ranking")) {
+            convertNumericColumn(nodeColorColumn);
+        }
+    }
+
+    private void convertNumericColumn(final String name) {
+        Column col = gephiState.attrTable.getColumn(name);
+        if (col == gephiState.attrTable.getColumn(nodeLabelColumn)) {
+            getNumericCopy(gephiState, col, Float.class);
+        } else {
+            getNumericColumn(gephiState, col, Float.class);
+        }
     }
 
     /**
@@ -0,0 +1,228 @@
+package com.civisanalytics.gephi;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.openide.util.Lookup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-running process for rendering many force-directed diagrams
+ * without paying JVM and Gephi startup costs for each one
+ * <p>
+ * The daemon listens on a local TCP port.  Each line received is one
+ * render job, consisting of the same options as
+ * {@link CreateGephiForceDiagram}, separated by whitespace and quoted as
+ * in a shell (see {@link #splitArgs}), so that file names may contain
+ * spaces.  Jobs read GML or CSV input; a batch manifest is rejected.
+ * For each job, one line is written back:
+ * {@code OK <milliseconds>} on success, or {@code ERROR <message>} on
+ * failure.  The line {@code shutdown} stops the daemon.
+ * <p>
+ * Gephi controllers are resolved once, and each job is run in a fresh
+ * project and workspace, which is closed when the job completes.  Since
+ * Gephi controllers act on the current workspace, jobs are run one at a
+ * time, in the order they are received.
+ */
+public class GephiRenderDaemon {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Request which stops the daemon
+     */
+    public static final String SHUTDOWN = "shutdown";
+
+    private final GephiState gephiState;
+    private boolean running = true;
+
+    public GephiRenderDaemon() {
+        gephiState = new GephiState(Lookup.getDefault());
+    }
+
+    public GephiRenderDaemon(final GephiState gs) {
+        gephiState = gs;
+    }
+
+    public boolean isRunning() { return running; }
+
+    /**
+     * Accept connections and process their jobs until a shutdown request
+     * is received
+     *
+     * @param serverSocket  socket on which to accept connections
+     */
+    public void serve(final ServerSocket serverSocket) throws IOException {
+        while (running) {
+            Socket socket = serverSocket.accept();
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket
+                                                                             .getInputStream(),
+                                                                             UTF8));
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                                                         UTF8), true);
+                String line;
+                while (running && (line = in.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    out.println(handleRequest(line));
+                }
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Run a single render job
+     *
+     * @param request  command-line options for job, separated by whitespace
+     *                 (and quoted as by {@link #splitArgs})
+     * @return response line reporting success or failure of job
+     */
+    public String handleRequest(final String request) {
+        String trimmed = request.trim();
+        if (trimmed.equals(SHUTDOWN)) {
+            running = false;
+            return "OK shutdown";
+        }
+
+        long start = System.currentTimeMillis();
+        ArgumentParser parser = CreateGephiForceDiagram.createParser();
+        try {
+            List<String> argList = splitArgs(trimmed);
+            String[] args = argList.toArray(new String[argList.size()]);
+            Namespace ns = parser.parseArgs(args);
+            CreateGephiForceDiagram.validateArgs(parser, ns, args);
+            if (ns.get("batch_manifest") != null) {
+                return "ERROR Parameter --batch_manifest is not supported by the daemon; "
+                    + "send one request per job";
+            }
+            GephiForceDiagram fd = CreateGephiForceDiagram.initDiagram(ns, gephiState);
+            fd.run(CreateGephiForceDiagram.getInputFile(ns),
+                   (File) ns.get("png_output_file"));
+        } catch (ArgumentParserException e) {
+            return "ERROR " + e.getMessage();
+        } catch (IllegalArgumentException e) {
+            return "ERROR " + e.getMessage();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "ERROR " + e;
+        } finally {
+            // Discard the job's workspace
+            if (gephiState.projectController.getCurrentProject() != null) {
+                gephiState.projectController.closeCurrentProject();
+            }
+        }
+        return "OK " + (System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Split a request into arguments as a shell would: arguments are
+     * separated by whitespace, text within single quotes is taken
+     * literally, and within double quotes (or outside quotes) a backslash
+     * escapes the next character
+     *
+     * @param line  request line
+     * @return arguments
+     */
+    static List<String> splitArgs(final String line) {
+        List<String> args = new ArrayList<String>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\\') {
+                if (++i == line.length()) {
+                    throw new IllegalArgumentException("Request ends with an escape character");
+                }
+                arg.append(line.charAt(i));
+                inArg = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Request has an unterminated " + quote + " quote");
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+
+    public static void main(final String[] args) {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("GephiRenderDaemon")
+            .defaultHelp(true)
+            .description("Render Gephi Force Diagrams for jobs received on a local port");
+        parser.addArgument("-p", "--port")
+            .type(new CreateGephiForceDiagram
+                  .BoundedNumericArgument<Integer>(0, 65535, false, true)).setDefault(9470)
+            .help("Local port on which to accept render jobs");
+
+        Namespace ns = null;
+        try {
+            ns = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+        }
+
+        try {
+            GephiRenderDaemon daemon = new GephiRenderDaemon();
+            ServerSocket serverSocket = new ServerSocket(ns.getInt("port"), 50,
+                                                         InetAddress.getLoopbackAddress());
+            System.err.println("Listening on port " + serverSocket.getLocalPort());
+            try {
+                daemon.serve(serverSocket);
+            } finally {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        // Force exit to work around FA2 destructor hang
+        System.err.println("Exiting...");
+        System.exit(0);
+    }
+}
@@ -12,11 +12,18 @@ import org.gephi.appearance.api.AppearanceModel;
 import org.gephi.graph.api.Table;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
+import org.gephi.project.api.Workspace;
 
 /**
  * Data structure for all state associated with Gephi project
  */
 public class GephiState {
+    /**
+     * Lock to be held while using Gephi controllers that act on the
+     * current workspace (which is shared by all {@code GephiState} objects)
+     */
+    protected static final Object CURRENT_WORKSPACE_LOCK = new Object();
+
     protected ProjectController projectController;
     protected ImportController importController;
     protected ExportController exportController;
@@ -28,6 +35,7 @@ public class GephiState {
     protected GraphModel graphModel;
     protected Graph graph;
     protected Table attrTable;
+    protected Workspace workspace;
 
     /**
      * Initialize Gephi controllers, given a Lookup object
@@ -49,10 +57,33 @@ public class GephiState {
      * (and may be called repeatedly)
      */
     protected void initializeGraphModel() {
-        graphModel = graphController.getGraphModel();
+        initializeGraphModel(projectController.getCurrentWorkspace());
+    }
+
+    /**
+     * Initialize state variables for graph and node attributes in
+     * a given workspace
+     *
+     * @param ws  workspace containing graph
+     */
+    protected void initializeGraphModel(final Workspace ws) {
+        workspace = ws;
+        graphModel = graphController.getGraphModel(ws);
         graph = graphModel.getGraph();
-        appearanceModel = appearanceController.getModel();
+        appearanceModel = appearanceController.getModel(ws);
         attrTable = graphModel.getNodeTable();
     }
 
+    /**
+     * Make this state's workspace the current workspace, so that
+     * controllers acting on the current workspace may be used.
+     * <p>
+     * Callers should hold {@code CURRENT_WORKSPACE_LOCK}
+     */
+    protected void openWorkspace() {
+        if (workspace != null && projectController.getCurrentWorkspace() != workspace) {
+            projectController.openWorkspace(workspace);
+        }
+    }
+
 }
@@ -4,18 +4,25 @@ import java.io.File;
 import java.io.IOException;
 import org.gephi.project.api.Workspace;
 import org.gephi.graph.api.Node;
+import org.gephi.graph.api.AttributeUtils;
 import org.gephi.graph.api.Column;
 import org.gephi.layout.plugin.AutoLayout;
 import org.gephi.appearance.api.Function;
 import org.gephi.graph.api.TextProperties;
 import org.gephi.io.exporter.preview.PNGExporter;
 import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Table;
 
 /**
  * Static methods for interfacing with Gephi resources
  */
 public abstract class GephiUtils {
 
+    /**
+     * Suffix of numeric copies of columns made by {@link #getNumericCopy}
+     */
+    protected static final String NUMERIC_SUFFIX = "_numeric";
+
     /**
      * Utility function to get value of float attribute in node table
      *
@@ -50,13 +57,52 @@ public abstract class GephiUtils {
         }
     }
 
+    /**
+     * Utility function to get value of float attribute in node table
+     *
+     * @param n    node with attribute
+     * @param col  attribute column
+     * @return value of attribute for node
+     */
+    protected static float getFloatAttributeValue(final Node n, final Column col)
+        throws GephiForceDiagramException {
+        try {
+            return (float) n.getAttribute(col);
+        } catch (RuntimeException e) {
+            throw new GephiForceDiagramException("Could not extract column "
+                                                 + col.getTitle() + " as float");
+        }
+    }
+
+    /**
+     * Utility function to get value of String attribute in node table
+     *
+     * @param n    node with attribute
+     * @param col  attribute column
+     * @return value of attribute for node
+     */
+    protected static String getStringAttributeValue(final Node n, final Column col)
+        throws GephiForceDiagramException {
+        try {
+            return (String) n.getAttribute(col);
+        } catch (RuntimeException e) {
+            throw new GephiForceDiagramException("Could not extract column "
+                                                 + col.getTitle() + " as string");
+        }
+    }
+
     /**
      * Get a numeric version of a column of interest
      * <p>
      * If column is already numeric and of class {@code c},
-     * original column {@code col} is returned.  Otherwise, a
-     * new column will be created, coercing the values of
-     * {@code col} to the desired type.
+     * original column {@code col} is returned, and if a numeric copy of
+     * it was made by {@link #getNumericCopy}, the copy is returned.
+     * Otherwise, the column is converted in place: it is replaced by a
+     * column of the same name and of class {@code c}, holding the values
+     * of {@code col} coerced to the desired type (or null, for values
+     * that are not numbers), so that the node table never holds a
+     * second copy of the column.  Other references to {@code col}
+     * are no longer valid after conversion.
      *
      * @param gephiState Gephi state for project
      * @param col        original column
@@ -69,19 +115,80 @@ public abstract class GephiUtils {
         if (col.getTypeClass() == c) {
             return col;
         }
+        Column copy = gephiState.attrTable.getColumn(col.getId() + NUMERIC_SUFFIX);
+        if (copy != null && copy.getTypeClass() == c) {
+            return copy;
+        }
+        return convertColumn(gephiState, col, c, true);
+    }
+
+    /**
+     * Get a numeric copy of a column whose original values are still
+     * needed (e.g. for labels), named with suffix {@code _numeric}, which
+     * {@link #getNumericColumn} then returns in place of the column
+     *
+     * @param gephiState Gephi state for project
+     * @param col        original column
+     * @param c          numeric class desired for column
+     * @return numeric copy of column (or {@code col}, if already numeric)
+     */
+    protected static Column getNumericCopy(final GephiState gephiState, final Column col,
+                                           final Class c) {
+        if (col.getTypeClass() == c) {
+            return col;
+        }
+        Column copy = gephiState.attrTable.getColumn(col.getId() + NUMERIC_SUFFIX);
+        if (copy != null && copy.getTypeClass() == c) {
+            return copy;
+        }
+        return convertColumn(gephiState, col, c, false);
+    }
 
-        // Check if column has already been converted to numeric
-        Column numColumn = gephiState.attrTable.getColumn(col.getTitle() + "_numeric");
+    private static Column convertColumn(final GephiState gephiState, final Column col,
+                                        final Class c, final boolean inPlace) {
+        Node[] nodes = gephiState.graph.getNodes().toArray();
+        Object[] values = new Object[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            values[i] = toNumber(nodes[i].getAttribute(col), c);
+        }
 
-        if (numColumn == null) {
-            numColumn = gephiState.attrColController.duplicateColumn(gephiState.attrTable,
-                                                                     col,
-                                                                     col.getTitle() + "_numeric",
-                                                                     c);
+        Table table = gephiState.attrTable;
+        Column numColumn;
+        if (inPlace) {
+            table.removeColumn(col);
+            numColumn = table.addColumn(col.getId(), col.getTitle(), c, col.getOrigin(),
+                                        null, col.isIndexed());
+        } else {
+            numColumn = table.addColumn(col.getId() + NUMERIC_SUFFIX,
+                                        col.getTitle() + NUMERIC_SUFFIX, c, col.getOrigin(),
+                                        null, col.isIndexed());
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (values[i] != null) {
+                nodes[i].setAttribute(numColumn, values[i]);
+            }
         }
         return numColumn;
     }
 
+    /**
+     * Coerce attribute value to a numeric class
+     *
+     * @return value of class {@code c}, or null if value is not a number
+     */
+    private static Object toNumber(final Object value, final Class c) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Number && c == Float.class) {
+            return ((Number) value).floatValue();
+        }
+        try {
+            return AttributeUtils.parse(value.toString().trim(), c);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Get ranking function for selected Column
      *
@@ -149,6 +256,33 @@ public abstract class GephiUtils {
         gephiState.exportController.exportFile(outfile, pngExporter);
     }
 
+    /**
+     * Export rendered graph to PNG file, rendering one tile at a time
+     * if {@code tileSize} is positive
+     *
+     * @param gephiState Gephi state for project
+     * @param tileSize   height of tiles in pixels (0 to render whole figure at once)
+     * @param workspace  reference to Gephi Workspace object
+     * @param outfile    output file
+     */
+    protected static void exportFile(final GephiState gephiState,
+                                     final int figureWidth,
+                                     final int figureHeight,
+                                     final int tileSize,
+                                     final Workspace workspace,
+                                     final File outfile) throws IOException {
+        if (tileSize <= 0) {
+            exportFile(gephiState, figureWidth, figureHeight, workspace, outfile);
+            return;
+        }
+        TiledPngExporter exporter = new TiledPngExporter(gephiState.previewController);
+        exporter.setWorkspace(workspace);
+        exporter.setWidth(figureWidth);
+        exporter.setHeight(figureHeight);
+        exporter.setTileSize(tileSize);
+        exporter.export(outfile);
+    }
+
     /**
      * Ensure that column can be accessed
      *
@@ -164,6 +298,91 @@ public abstract class GephiUtils {
         }
     }
 
+    /**
+     * Percentile of an array of values, found by selection in linear time
+     * <p>
+     * The estimate is the same as that of commons-math's default
+     * {@code Percentile}: NaN values are ignored, and the percentile lies
+     * between the two values around position {@code p (n + 1) / 100} of the
+     * sorted values.  Rather than sorting, the lower value is found by
+     * quickselect, and the upper value is the least of those the selection
+     * leaves above it.  The order of {@code values} is changed.
+     *
+     * @param values  values of which to find the percentile
+     * @param p       percentile, greater than 0 and at most 100
+     * @return estimated percentile, or NaN if there are no values
+     */
+    protected static double percentile(final double[] values, final double p) {
+        int n = 0;
+        for (double v : values) {
+            if (!Double.isNaN(v)) {
+                values[n++] = v;
+            }
+        }
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        double pos = p == 100.0 ? n : p / 100.0 * (n + 1);
+        if (pos < 1) {
+            return select(values, n, 0);
+        }
+        if (pos >= n) {
+            return select(values, n, n - 1);
+        }
+        int k = (int) Math.floor(pos) - 1;
+        double lower = select(values, n, k);
+        double upper = values[k + 1];
+        for (int i = k + 2; i < n; i++) {
+            upper = Math.min(upper, values[i]);
+        }
+        return lower + (pos - Math.floor(pos)) * (upper - lower);
+    }
+
+    /**
+     * Find the {@code k}th smallest of the first {@code n} values, leaving
+     * it at index {@code k} with no greater value before it and no smaller
+     * value after it
+     */
+    private static double select(final double[] a, final int n, final int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double pivot = Math.max(Math.min(a[lo], a[mid]),
+                                    Math.min(Math.max(a[lo], a[mid]), a[hi]));
+
+            // Partition into [lo, lt) < pivot, [lt, gt] == pivot and
+            // (gt, hi] > pivot, so that repeated values do not slow selection
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                if (a[i] < pivot) {
+                    swap(a, lt++, i++);
+                } else if (a[i] > pivot) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return pivot;
+            }
+        }
+        return a[k];
+    }
+
+    private static void swap(final double[] a, final int i, final int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
     /**
      * Hack to fix LabelAdjust.  See:
      * https://github.com/gephi/gephi/issues/564
@@ -0,0 +1,456 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Random;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+/**
+ * Single-pass GML reader that adds nodes and edges directly to a graph
+ * model, as an alternative to Gephi's import container
+ * <p>
+ * Only node ids, labels, positions and sizes (from {@code graphics}),
+ * the requested node attributes, and edge endpoints and weights are
+ * read; all other keys are skipped without being stored.  The results
+ * otherwise follow Gephi's GML importer: attribute keys are lower-cased,
+ * an attribute column is typed from its first value (integers as
+ * {@code Long}, other numbers as {@code Double}, and strings as
+ * {@code String}), all edges are directed, parallel edges are merged by
+ * summing their weights, and node positions are randomized (if none are
+ * given) and centered on the origin.
+ */
+public class GmlReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final float DEFAULT_SIZE = 10f;
+
+    // Token types
+    private static final int EOF = 0;
+    private static final int WORD = 1;
+    private static final int STRING = 2;
+    private static final int OPEN = 3;
+    private static final int CLOSE = 4;
+
+    private final GraphModel graphModel;
+    private final String[] attributes;
+    private final Column[] columns;
+    private final Random random = new Random();
+
+    private Graph graph;
+    private GraphFactory factory;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private int pushback = -1;
+    private int line;
+    private byte[] token = new byte[256];
+    private int tokenLength;
+    private int tokenType;
+
+    private boolean hasPosition;
+
+    /**
+     * @param gm     graph model into which graph is read
+     * @param attrs  names of node attributes to be read
+     */
+    public GmlReader(final GraphModel gm, final Collection<String> attrs) {
+        graphModel = gm;
+        attributes = new String[attrs.size()];
+        int i = 0;
+        for (String attr : attrs) {
+            attributes[i++] = attr.toLowerCase(Locale.ENGLISH);
+        }
+        columns = new Column[attributes.length];
+    }
+
+    /**
+     * Read GML file into graph model
+     *
+     * @param infile  GML-format input file
+     */
+    public void read(final File infile) throws FileNotFoundException, IOException {
+        graph = graphModel.getGraph();
+        factory = graphModel.factory();
+        hasPosition = false;
+        line = 1;
+        pushback = -1;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+
+        FileInputStream in = new FileInputStream(infile);
+        try {
+            channel = in.getChannel();
+            while (nextToken() != EOF) {
+                String key = wordToken();
+                int t = nextToken();
+                if (key.equals("graph") && t == OPEN) {
+                    readGraph();
+                } else {
+                    skipValue(t);
+                }
+            }
+        } finally {
+            in.close();
+            channel = null;
+        }
+
+        placeNodes(graph, !hasPosition, random);
+    }
+
+    private void readGraph() throws IOException {
+        int t;
+        while ((t = nextToken()) != CLOSE) {
+            if (t == EOF) {
+                throw error("Unexpected end of file");
+            }
+            String key = wordToken();
+            t = nextToken();
+            if (key.equals("node") && t == OPEN) {
+                readNode();
+            } else if (key.equals("edge") && t == OPEN) {
+                readEdge();
+            } else {
+                skipValue(t);
+            }
+        }
+    }
+
+    private void readNode() throws IOException {
+        String id = null;
+        String label = null;
+        float x = 0f;
+        float y = 0f;
+        float size = DEFAULT_SIZE;
+        boolean positioned = false;
+        Object[] values = new Object[attributes.length];
+
+        int t;
+        while ((t = nextToken()) != CLOSE) {
+            if (t == EOF) {
+                throw error("Unexpected end of file");
+            }
+            String key = wordToken().toLowerCase(Locale.ENGLISH);
+            t = nextToken();
+            if (key.equals("graphics") && t == OPEN) {
+                // Position and size
+                while ((t = nextToken()) != CLOSE) {
+                    if (t == EOF) {
+                        throw error("Unexpected end of file");
+                    }
+                    String gKey = wordToken();
+                    t = nextToken();
+                    if (gKey.equals("x")) {
+                        x = (float) numericToken(t);
+                        positioned = true;
+                    } else if (gKey.equals("y")) {
+                        y = (float) numericToken(t);
+                        positioned = true;
+                    } else if (gKey.equals("w")) {
+                        size = (float) numericToken(t);
+                    } else {
+                        skipValue(t);
+                    }
+                }
+            } else if (t == OPEN) {
+                skipValue(t);
+            } else if (key.equals("id")) {
+                id = textToken(t);
+            } else if (key.equals("label")) {
+                label = textToken(t);
+            } else {
+                int a = Arrays.asList(attributes).indexOf(key);
+                if (a >= 0) {
+                    values[a] = attributeValue(a, t);
+                } else {
+                    skipValue(t);
+                }
+            }
+        }
+
+        if (id == null) {
+            throw error("Node without id");
+        }
+        Node node = getOrAddNode(id);
+        if (label != null) {
+            node.setLabel(label);
+        }
+        node.setX(x);
+        node.setY(y);
+        node.setSize(size);
+        hasPosition |= positioned;
+        for (int a = 0; a < attributes.length; a++) {
+            if (values[a] != null) {
+                node.setAttribute(columns[a], values[a]);
+            }
+        }
+    }
+
+    private void readEdge() throws IOException {
+        String source = null;
+        String target = null;
+        double weight = 1.0;
+
+        int t;
+        while ((t = nextToken()) != CLOSE) {
+            if (t == EOF) {
+                throw error("Unexpected end of file");
+            }
+            String key = wordToken().toLowerCase(Locale.ENGLISH);
+            t = nextToken();
+            if (t == OPEN) {
+                skipValue(t);
+            } else if (key.equals("source")) {
+                source = textToken(t);
+            } else if (key.equals("target")) {
+                target = textToken(t);
+            } else if (key.equals("value") || key.equals("weight")) {
+                weight = numericToken(t);
+            }
+        }
+
+        if (source == null || target == null) {
+            throw error("Edge without source or target");
+        }
+        Node s = getOrAddNode(source);
+        Node d = getOrAddNode(target);
+        Edge existing = graph.getEdge(s, d);
+        if (existing != null) {
+            existing.setWeight(existing.getWeight() + weight);
+        } else {
+            graph.addEdge(factory.newEdge(s, d, 0, weight, true));
+        }
+    }
+
+    /**
+     * Find node with id, adding it if it has not yet been seen
+     * (edges may precede the nodes they connect)
+     */
+    private Node getOrAddNode(final String id) {
+        Node node = graph.getNode(id);
+        if (node == null) {
+            node = factory.newNode(id);
+            node.setSize(DEFAULT_SIZE);
+            graph.addNode(node);
+        }
+        return node;
+    }
+
+    /**
+     * Convert value of attribute to the type of its column, creating the
+     * column from the first value seen
+     */
+    private Object attributeValue(final int a, final int t) throws IOException {
+        if (columns[a] == null) {
+            Table table = graphModel.getNodeTable();
+            columns[a] = table.getColumn(attributes[a]);
+            if (columns[a] == null) {
+                Class type = String.class;
+                if (t == WORD) {
+                    type = isInteger() ? Long.class : Double.class;
+                }
+                columns[a] = table.addColumn(attributes[a], type);
+            }
+        }
+
+        String text = textToken(t);
+        Class type = columns[a].getTypeClass();
+        try {
+            if (type == Long.class) {
+                return Long.parseLong(text);
+            } else if (type == Double.class) {
+                return Double.parseDouble(text);
+            } else if (type == Float.class) {
+                return Float.parseFloat(text);
+            } else if (type == Integer.class) {
+                return Integer.parseInt(text);
+            } else if (type == String.class) {
+                return text;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring value \"" + text + "\" of attribute " + attributes[a]
+                               + " on line " + line);
+        }
+        return null;
+    }
+
+    /**
+     * Randomize positions if none were given, and center nodes on origin
+     *
+     * @param graph      graph whose nodes are placed
+     * @param randomize  whether to give nodes random positions
+     * @param random     source of random positions
+     */
+    static void placeNodes(final Graph graph, final boolean randomize, final Random random) {
+        int n = graph.getNodeCount();
+        if (n == 0) {
+            return;
+        }
+        double sumX = 0.0;
+        double sumY = 0.0;
+        for (Node node : graph.getNodes()) {
+            if (randomize) {
+                node.setX((float) ((0.01 + random.nextDouble()) * 1000) - 500);
+                node.setY((float) ((0.01 + random.nextDouble()) * 1000) - 500);
+            }
+            sumX += node.x();
+            sumY += node.y();
+        }
+        float meanX = (float) (sumX / n);
+        float meanY = (float) (sumY / n);
+        for (Node node : graph.getNodes()) {
+            node.setX(node.x() - meanX);
+            node.setY(node.y() - meanY);
+        }
+    }
+
+    /**
+     * Skip value whose first token has been read, including any nested list
+     */
+    private void skipValue(final int t) throws IOException {
+        if (t == EOF) {
+            throw error("Unexpected end of file");
+        } else if (t == CLOSE) {
+            throw error("Unexpected ]");
+        } else if (t == OPEN) {
+            int depth = 1;
+            while (depth > 0) {
+                int u = nextToken();
+                if (u == OPEN) {
+                    depth++;
+                } else if (u == CLOSE) {
+                    depth--;
+                } else if (u == EOF) {
+                    throw error("Unexpected end of file");
+                }
+            }
+        }
+    }
+
+    private String wordToken() throws IOException {
+        if (tokenType != WORD) {
+            throw error("Expected key");
+        }
+        return new String(token, 0, tokenLength, UTF8);
+    }
+
+    private String textToken(final int t) throws IOException {
+        if (t != WORD && t != STRING) {
+            throw error("Expected value");
+        }
+        return new String(token, 0, tokenLength, UTF8);
+    }
+
+    private double numericToken(final int t) throws IOException {
+        String text = textToken(t);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("Expected number, found \"" + text + "\"");
+        }
+    }
+
+    private boolean isInteger() {
+        for (int i = 0; i < tokenLength; i++) {
+            byte b = token[i];
+            if (!(b >= '0' && b <= '9' || i == 0 && (b == '-' || b == '+'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private IOException error(final String message) {
+        return new IOException(message + " on line " + line + " of GML input");
+    }
+
+    /**
+     * Read next token into {@code token}, returning its type
+     */
+    private int nextToken() throws IOException {
+        int c = read();
+        while (true) {
+            while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                c = read();
+            }
+            if (c != '#') {
+                break;
+            }
+            // Comment to end of line
+            while (c != '\n' && c != -1) {
+                c = read();
+            }
+        }
+
+        tokenLength = 0;
+        if (c == -1) {
+            tokenType = EOF;
+        } else if (c == '[') {
+            tokenType = OPEN;
+        } else if (c == ']') {
+            tokenType = CLOSE;
+        } else if (c == '"') {
+            tokenType = STRING;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw error("Unterminated string");
+                }
+                append(c);
+            }
+        } else {
+            tokenType = WORD;
+            while (c != -1 && c != ' ' && c != '\t' && c != '\n' && c != '\r'
+                   && c != '[' && c != ']' && c != '"') {
+                append(c);
+                c = read();
+            }
+            pushback = c;
+        }
+        return tokenType;
+    }
+
+    private void append(final int c) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, 2 * token.length);
+        }
+        token[tokenLength++] = (byte) c;
+    }
+
+    private int read() throws IOException {
+        if (pushback != -1) {
+            int c = pushback;
+            pushback = -1;
+            return c;
+        }
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n < 0) {
+                return -1;
+            }
+        }
+        int c = buffer.get() & 0xff;
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,237 @@
+package com.civisanalytics.gephi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+
+/**
+ * Changes to a graph (nodes and edges added or removed), such as the
+ * difference between successive snapshots of a graph, applied from a file
+ * <p>
+ * A delta file starts with a header row naming the columns {@code action},
+ * {@code source}, and optionally {@code target} and {@code weight} (in any
+ * order, ignoring case; values are tab-separated if the header contains a
+ * tab), followed by one change per row, applied in order.  The action is
+ * {@code add} or {@code remove}.  A row with an empty target adds or
+ * removes the node named by {@code source} (removing a node removes its
+ * edges); any other row adds or removes the directed edge from
+ * {@code source} to {@code target}.  As for CSV input, adding an edge adds
+ * any missing endpoints, and adding an edge that already exists increases
+ * its weight.
+ * <p>
+ * Nodes added by a delta are placed at the centroid of their neighbors
+ * that were in the graph before (with a small random offset), or near the
+ * origin if they have none, so that layout can start from the existing
+ * positions.  The nodes affected by the delta (those added, the endpoints
+ * of edges added or removed, and the neighbors of nodes removed) are
+ * recorded, so that layout may be refined around them alone.
+ */
+public class GraphDelta {
+
+    private static final float DEFAULT_SIZE = 10f;
+
+    private final GraphModel graphModel;
+
+    private final Set<Node> changedNodes = new LinkedHashSet<Node>();
+    private int nodesAdded;
+    private int nodesRemoved;
+    private int edgesAdded;
+    private int edgesRemoved;
+
+    public GraphDelta(final GraphModel gm) {
+        graphModel = gm;
+    }
+
+    /**
+     * Nodes affected by changes applied so far, that are still in the graph
+     */
+    public Set<Node> getChangedNodes() {
+        Graph graph = graphModel.getGraph();
+        Set<Node> nodes = new LinkedHashSet<Node>();
+        for (Node n : changedNodes) {
+            if (graph.contains(n)) {
+                nodes.add(n);
+            }
+        }
+        return nodes;
+    }
+
+    public int getNodesAdded() { return nodesAdded; }
+    public int getNodesRemoved() { return nodesRemoved; }
+    public int getEdgesAdded() { return edgesAdded; }
+    public int getEdgesRemoved() { return edgesRemoved; }
+
+    /**
+     * Apply changes in delta file to graph
+     *
+     * @param infile  delta file
+     * @param random  source of offsets of added nodes
+     */
+    public void apply(final File infile, final Random random) throws IOException {
+        Graph graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+        List<Node> added = new ArrayList<Node>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(infile), LayoutIO.UTF8));
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Delta file " + infile + " is empty");
+            }
+            char delimiter = line.indexOf('\t') >= 0 ? '\t' : ',';
+            List<String> header = new ArrayList<String>();
+            for (String name : LayoutIO.parseCsvLine(line, delimiter)) {
+                header.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+            int actionCol = header.indexOf("action");
+            int sourceCol = header.indexOf("source");
+            int targetCol = header.indexOf("target");
+            int weightCol = header.indexOf("weight");
+            if (actionCol < 0 || sourceCol < 0) {
+                throw new IOException("Delta file " + infile
+                                      + " must have columns action and source");
+            }
+
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> fields = LayoutIO.parseCsvLine(line, delimiter);
+                String action = field(fields, actionCol).toLowerCase(Locale.ROOT);
+                String source = field(fields, sourceCol);
+                String target = field(fields, targetCol);
+                if (source.isEmpty() || !(action.equals("add") || action.equals("remove"))) {
+                    throw new IOException("Line " + lineNumber + " of " + infile
+                                          + " must have action add or remove, and a source");
+                }
+                double weight = 1.0;
+                if (!field(fields, weightCol).isEmpty()) {
+                    try {
+                        weight = Double.parseDouble(field(fields, weightCol));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Line " + lineNumber + " of " + infile
+                                              + " has invalid weight");
+                    }
+                }
+
+                if (target.isEmpty() && action.equals("add")) {
+                    getOrAddNode(graph, factory, source, added);
+                } else if (target.isEmpty()) {
+                    removeNode(graph, source);
+                } else if (action.equals("add")) {
+                    Node s = getOrAddNode(graph, factory, source, added);
+                    Node t = getOrAddNode(graph, factory, target, added);
+                    Edge existing = graph.getEdge(s, t);
+                    if (existing != null) {
+                        existing.setWeight(existing.getWeight() + weight);
+                    } else {
+                        graph.addEdge(factory.newEdge(s, t, 0, weight, true));
+                        edgesAdded++;
+                    }
+                    changedNodes.add(s);
+                    changedNodes.add(t);
+                } else {
+                    removeEdge(graph, source, target);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        placeAddedNodes(graph, added, random);
+    }
+
+    private static String field(final List<String> fields, final int col) {
+        return col < 0 || col >= fields.size() ? "" : fields.get(col).trim();
+    }
+
+    private Node getOrAddNode(final Graph graph, final GraphFactory factory, final String id,
+                              final List<Node> added) {
+        Node node = graph.getNode(id);
+        if (node == null) {
+            node = factory.newNode(id);
+            node.setSize(DEFAULT_SIZE);
+            graph.addNode(node);
+            added.add(node);
+            changedNodes.add(node);
+            nodesAdded++;
+        }
+        return node;
+    }
+
+    private void removeNode(final Graph graph, final String id) {
+        Node node = graph.getNode(id);
+        if (node == null) {
+            return;
+        }
+        for (Node neighbor : graph.getNeighbors(node).toArray()) {
+            changedNodes.add(neighbor);
+        }
+        graph.removeNode(node);
+        nodesRemoved++;
+    }
+
+    private void removeEdge(final Graph graph, final String source, final String target) {
+        Node s = graph.getNode(source);
+        Node t = graph.getNode(target);
+        Edge edge = s == null || t == null ? null : graph.getEdge(s, t);
+        if (edge == null) {
+            return;
+        }
+        graph.removeEdge(edge);
+        changedNodes.add(s);
+        changedNodes.add(t);
+        edgesRemoved++;
+    }
+
+    /**
+     * Place added nodes at the centroid of their neighbors that were in
+     * the graph before, or near the origin if they have none
+     */
+    private static void placeAddedNodes(final Graph graph, final List<Node> added,
+                                        final Random random) {
+        Set<Node> isAdded = new LinkedHashSet<Node>(added);
+        for (Iterator<Node> it = isAdded.iterator(); it.hasNext();) {
+            if (!graph.contains(it.next())) {
+                it.remove();
+            }
+        }
+        for (Node node : isAdded) {
+            double sumX = 0.0;
+            double sumY = 0.0;
+            int count = 0;
+            for (Node neighbor : graph.getNeighbors(node)) {
+                if (!isAdded.contains(neighbor)) {
+                    sumX += neighbor.x();
+                    sumY += neighbor.y();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                sumX /= count;
+                sumY /= count;
+            }
+            double radius = Math.max(node.size(), 1f);
+            node.setX((float) (sumX + radius * (random.nextDouble() - 0.5)));
+            node.setY((float) (sumY + radius * (random.nextDouble() - 0.5)));
+        }
+    }
+}
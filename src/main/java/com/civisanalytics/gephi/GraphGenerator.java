@@ -0,0 +1,404 @@
+package com.civisanalytics.gephi;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Seeded generator of random graphs, for benchmarks and load tests
+ * <p>
+ * Three models are supported:
+ * <ul>
+ *   <li>{@code er}: Erdos-Renyi graph, in which each pair of nodes is
+ *       linked with equal probability</li>
+ *   <li>{@code ba}: Barabasi-Albert graph, in which each node links to
+ *       earlier nodes chosen with probability proportional to their
+ *       degree</li>
+ *   <li>{@code sbm}: stochastic block model, in which nodes in the same
+ *       community are linked with higher probability than nodes in
+ *       different communities</li>
+ * </ul>
+ * Nodes are divided into {@code numCommunities} contiguous communities
+ * (in all models), and have the attributes used by default for a
+ * diagram: {@code centrality} (degree), {@code community} and
+ * {@code name}.
+ * <p>
+ * Graphs are written as GML or as a {@link GraphSnapshot}, without being
+ * held in memory: edges are generated twice from the same seed, first to
+ * compute node degrees (which must be written before any edge), and then
+ * to write the edges.  Only per-node arrays are kept (and, for the
+ * {@code ba} model, the list of edge endpoints from which preferential
+ * attachment samples).
+ */
+public class GraphGenerator {
+
+    /**
+     * Receives generated edges, in order of source node
+     */
+    interface EdgeVisitor {
+        void visit(int source, int target) throws IOException;
+    }
+
+    /**
+     * Random graph model ("er" | "ba" | "sbm")
+     */
+    private String model = "sbm";
+    public String getModel() { return model; }
+    public void setModel(final String m) { model = m; }
+
+    /**
+     * Number of nodes
+     */
+    private int numNodes = 1000;
+    public int getNumNodes() { return numNodes; }
+    public void setNumNodes(final int n) { numNodes = n; }
+
+    /**
+     * Expected mean degree of nodes
+     */
+    private double averageDegree = 10.0;
+    public double getAverageDegree() { return averageDegree; }
+    public void setAverageDegree(final double d) { averageDegree = d; }
+
+    /**
+     * Number of communities
+     */
+    private int numCommunities = 10;
+    public int getNumCommunities() { return numCommunities; }
+    public void setNumCommunities(final int k) { numCommunities = k; }
+
+    /**
+     * Expected fraction of edges linking different communities (sbm model)
+     */
+    private double mixing = 0.1;
+    public double getMixing() { return mixing; }
+    public void setMixing(final double m) { mixing = m; }
+
+    /**
+     * Seed of random number generator
+     */
+    private long seed = 0L;
+    public long getSeed() { return seed; }
+    public void setSeed(final long s) { seed = s; }
+
+    /**
+     * Number of non-empty communities
+     */
+    private int countCommunities() {
+        return Math.max(1, Math.min(numCommunities, numNodes));
+    }
+
+    /**
+     * Community of a node
+     */
+    public int getCommunity(final int node) {
+        return (int) ((long) node * countCommunities() / numNodes);
+    }
+
+    /**
+     * First node of a community
+     */
+    private int communityStart(final int community) {
+        int k = countCommunities();
+        return (int) (((long) community * numNodes + k - 1) / k);
+    }
+
+    /**
+     * Generate all edges, in order of source node
+     * <p>
+     * The same edges are generated, in the same order, on every call.
+     *
+     * @param visitor  receives each edge
+     */
+    void generateEdges(final EdgeVisitor visitor) throws IOException {
+        Random random = new Random(seed);
+        if (model.equals("ba")) {
+            generatePreferentialEdges(random, visitor);
+        } else if (model.equals("er")) {
+            double p = numNodes > 1 ? averageDegree / (numNodes - 1) : 0.0;
+            double[][] probability = new double[][] {{p}};
+            generateBlockEdges(random, 1, probability, visitor);
+        } else if (model.equals("sbm")) {
+            int k = countCommunities();
+            double blockSize = (double) numNodes / k;
+            double pIn = blockSize > 1 ? averageDegree * (1 - mixing) / (blockSize - 1) : 0.0;
+            double pOut = k > 1 ? averageDegree * mixing / (numNodes - blockSize) : 0.0;
+            double[][] probability = new double[k][k];
+            for (int a = 0; a < k; a++) {
+                for (int b = 0; b < k; b++) {
+                    probability[a][b] = a == b ? pIn : pOut;
+                }
+            }
+            generateBlockEdges(random, k, probability, visitor);
+        } else {
+            throw new IllegalArgumentException("Unknown model " + model);
+        }
+    }
+
+    /**
+     * Link each pair of nodes i &lt; j with a probability depending on
+     * their communities (of which there are either one or
+     * {@code countCommunities()}), skipping over unlinked pairs with
+     * geometrically distributed jumps (so that time is proportional to the
+     * number of edges, rather than of pairs)
+     */
+    private void generateBlockEdges(final Random random, final int k,
+                                    final double[][] probability,
+                                    final EdgeVisitor visitor) throws IOException {
+        for (int i = 0; i < numNodes; i++) {
+            int a = k == 1 ? 0 : getCommunity(i);
+            for (int b = a; b < k; b++) {
+                double p = Math.min(1.0, probability[a][b]);
+                if (p <= 0) {
+                    continue;
+                }
+                int end = b + 1 < k ? communityStart(b + 1) : numNodes;
+                long j = Math.max(i + 1, k == 1 ? 0 : communityStart(b)) - 1;
+                double logQ = Math.log(1 - p);
+                while (true) {
+                    if (p < 1.0) {
+                        j += 1 + (long) Math.floor(Math.log(1 - random.nextDouble()) / logQ);
+                    } else {
+                        j++;
+                    }
+                    if (j >= end) {
+                        break;
+                    }
+                    visitor.visit(i, (int) j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Link each node to {@code averageDegree / 2} distinct earlier nodes,
+     * each chosen with probability proportional to its degree (by sampling
+     * from the list of endpoints of all earlier edges)
+     */
+    private void generatePreferentialEdges(final Random random, final EdgeVisitor visitor)
+        throws IOException {
+        int m = Math.max(1, (int) Math.round(averageDegree / 2));
+        long maxEndpoints = 2L * m * numNodes;
+        if (maxEndpoints > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many edges for ba model");
+        }
+        int[] endpoints = new int[(int) maxEndpoints];
+        int numEndpoints = 0;
+        int[] chosen = new int[m];
+        for (int v = 1; v < numNodes; v++) {
+            int numChosen = Math.min(m, v);
+            int c = 0;
+            while (c < numChosen) {
+                int t = numEndpoints == 0 ? 0 : endpoints[random.nextInt(numEndpoints)];
+                boolean duplicate = false;
+                for (int d = 0; d < c; d++) {
+                    duplicate |= chosen[d] == t;
+                }
+                if (!duplicate) {
+                    chosen[c++] = t;
+                }
+            }
+            Arrays.sort(chosen, 0, numChosen);
+            for (int d = 0; d < numChosen; d++) {
+                visitor.visit(v, chosen[d]);
+                endpoints[numEndpoints++] = v;
+                endpoints[numEndpoints++] = chosen[d];
+            }
+        }
+    }
+
+    /**
+     * Degree (first row) and number of edges with each node as source
+     * (second row) of all nodes
+     */
+    private int[][] countDegrees() throws IOException {
+        final int[][] counts = new int[2][numNodes];
+        generateEdges(new EdgeVisitor() {
+                @Override
+                public void visit(final int source, final int target) {
+                    counts[0][source]++;
+                    counts[0][target]++;
+                    counts[1][source]++;
+                }
+            });
+        return counts;
+    }
+
+    private static String nodeName(final int node) {
+        return "node " + node;
+    }
+
+    /**
+     * Write graph in GML format
+     *
+     * @param outfile  output file
+     * @return number of edges written
+     */
+    public long writeGml(final File outfile) throws IOException {
+        int[] degrees = countDegrees()[0];
+        final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outfile),
+                                                                   "UTF-8"), 1 << 16);
+        final long[] numEdges = new long[1];
+        try {
+            w.write("graph [\n  directed 1\n");
+            for (int i = 0; i < numNodes; i++) {
+                w.write("  node [\n    id " + i + "\n    label \"" + nodeName(i) + "\"\n"
+                        + "    centrality " + degrees[i] + ".0\n    community " + getCommunity(i)
+                        + "\n    name \"" + nodeName(i) + "\"\n  ]\n");
+            }
+            generateEdges(new EdgeVisitor() {
+                    @Override
+                    public void visit(final int source, final int target) throws IOException {
+                        w.write("  edge [\n    source " + source + "\n    target " + target
+                                + "\n  ]\n");
+                        numEdges[0]++;
+                    }
+                });
+            w.write("]\n");
+        } finally {
+            w.close();
+        }
+        return numEdges[0];
+    }
+
+    /**
+     * Write graph as a {@link GraphSnapshot}, with nodes at random positions
+     * (as they would be after import of the equivalent GML file)
+     *
+     * @param outfile  output file
+     * @return number of edges written
+     */
+    public long writeSnapshot(final File outfile) throws IOException {
+        int[][] counts = countDegrees();
+        int[] degrees = counts[0];
+        int[] offsets = new int[numNodes + 1];
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] = offsets[i] + counts[1][i];
+        }
+        counts = null;
+        final int numEdges = offsets[numNodes];
+
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(outfile), 1 << 16));
+        try {
+            String[] ids = new String[] {"centrality", "community", "name"};
+            GraphSnapshot.writeHeader(dos, numNodes, ids, ids,
+                                      new Class[] {Double.class, Long.class, String.class},
+                                      new boolean[] {true, true, true});
+            Random random = new Random(seed + 1);
+            for (int i = 0; i < numNodes; i++) {
+                GraphSnapshot.writeNode(dos, String.valueOf(i), nodeName(i),
+                                        (float) (1000 * random.nextDouble() - 500),
+                                        (float) (1000 * random.nextDouble() - 500), 10f);
+            }
+            for (int i = 0; i < numNodes; i++) {
+                GraphSnapshot.writeValue(dos, Double.class, (double) degrees[i]);
+            }
+            for (int i = 0; i < numNodes; i++) {
+                GraphSnapshot.writeValue(dos, Long.class, (long) getCommunity(i));
+            }
+            for (int i = 0; i < numNodes; i++) {
+                GraphSnapshot.writeValue(dos, String.class, nodeName(i));
+            }
+
+            GraphSnapshot.writeOffsets(dos, offsets);
+            generateEdges(new EdgeVisitor() {
+                    @Override
+                    public void visit(final int source, final int target) throws IOException {
+                        dos.writeInt(target);
+                    }
+                });
+            for (int e = 0; e < numEdges; e++) {
+                dos.writeDouble(1.0);
+            }
+            for (int e = 0; e < numEdges; e++) {
+                dos.writeBoolean(true);
+            }
+        } finally {
+            dos.close();
+        }
+        return numEdges;
+    }
+
+    /**
+     * Create parser for command-line options of the {@code generate} command
+     */
+    protected static ArgumentParser createParser() {
+        ArgumentParser parser = ArgumentParsers
+            .newArgumentParser("CreateGephiForceDiagram generate")
+            .defaultHelp(true)
+            .description("Generate a seeded random graph");
+        parser.addArgument("-o", "--output_file")
+            .type(Arguments.fileType()).required(true)
+            .help("Output file");
+        parser.addArgument("-f", "--format")
+            .choices("gml", "snapshot").setDefault("gml")
+            .help("Output format (snapshot files may be given as --gml_input_file)");
+        parser.addArgument("-m", "--model")
+            .choices("er", "ba", "sbm").setDefault("sbm")
+            .help("Random graph model: Erdos-Renyi, Barabasi-Albert or stochastic block model");
+        parser.addArgument("-n", "--num_nodes")
+            .type(new CreateGephiForceDiagram
+                  .BoundedNumericArgument<Integer>(0, null, false, true)).setDefault(1000)
+            .help("Number of nodes");
+        parser.addArgument("-d", "--average_degree")
+            .type(new CreateGephiForceDiagram
+                  .BoundedNumericArgument<Double>(0.0, null, false, true)).setDefault(10.0)
+            .help("Expected mean degree of nodes");
+        parser.addArgument("-k", "--num_communities")
+            .type(new CreateGephiForceDiagram
+                  .BoundedNumericArgument<Integer>(0, null, false, true)).setDefault(10)
+            .help("Number of communities");
+        parser.addArgument("-mx", "--mixing")
+            .type(new CreateGephiForceDiagram
+                  .BoundedNumericArgument<Double>(0.0, 1.0, true, true)).setDefault(0.1)
+            .help("Expected fraction of edges between communities (sbm model)");
+        parser.addArgument("-s", "--seed")
+            .type(Long.class).setDefault(0L)
+            .help("Seed of random number generator");
+        return parser;
+    }
+
+    public static void main(final String[] args) {
+        ArgumentParser parser = createParser();
+        Namespace ns = null;
+        try {
+            ns = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+        }
+
+        GraphGenerator generator = new GraphGenerator();
+        generator.setModel(ns.getString("model"));
+        generator.setNumNodes(ns.getInt("num_nodes"));
+        generator.setAverageDegree(ns.getDouble("average_degree"));
+        generator.setNumCommunities(ns.getInt("num_communities"));
+        generator.setMixing(ns.getDouble("mixing"));
+        generator.setSeed(ns.getLong("seed"));
+
+        File outfile = (File) ns.get("output_file");
+        try {
+            long numEdges = ns.getString("format").equals("snapshot")
+                ? generator.writeSnapshot(outfile) : generator.writeGml(outfile);
+            System.err.println("Wrote " + generator.getNumNodes() + " nodes and " + numEdges
+                               + " edges to " + outfile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
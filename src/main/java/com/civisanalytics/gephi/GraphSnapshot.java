@@ -0,0 +1,478 @@
+package com.civisanalytics.gephi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Origin;
+import org.gephi.graph.api.Table;
+
+/**
+ * Compact binary snapshot of an imported graph, which can be loaded
+ * much faster than the original GML file
+ * <p>
+ * Snapshots are named after the SHA-256 hash of the contents of the
+ * input file, so that a snapshot is only reused while its input is
+ * unchanged.  All values are big-endian; strings are written as a byte
+ * count followed by UTF-8 bytes.  The layout of a snapshot is:
+ * <ul>
+ *   <li>magic number {@code "GSNP"}, format version, node count and
+ *       attribute column count (four {@code int}s)</li>
+ *   <li>for each column: id, title, type tag and whether column is
+ *       indexed</li>
+ *   <li>for each node: id, label (preceded by a presence byte), and
+ *       x, y and size as {@code float}s</li>
+ *   <li>for each column, for each node: presence byte and value</li>
+ *   <li>edge count, then edges in compressed sparse row form, grouped by
+ *       source node: row offsets ({@code int[numNodes + 1]}), targets
+ *       ({@code int[numEdges]}), weights ({@code double[numEdges]}) and
+ *       directedness ({@code byte[numEdges]})</li>
+ * </ul>
+ */
+public abstract class GraphSnapshot {
+
+    private static final int MAGIC = 0x47534E50;
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Supported attribute types, indexed by type tag
+     */
+    private static final List<Class> TYPES = Arrays.<Class>asList(String.class, Float.class,
+                                                                  Double.class, Integer.class,
+                                                                  Long.class, Boolean.class);
+
+    /**
+     * Compute hex-encoded SHA-256 hash of contents of file
+     *
+     * @param f  file to be hashed
+     * @return hash of file contents
+     */
+    public static String contentHash(final File f) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Location of snapshot for an input file
+     *
+     * @param infile    input file
+     * @param cacheDir  directory in which snapshots are stored
+     *                  (if {@code null}, the directory of {@code infile})
+     * @return snapshot file, which may not yet exist
+     */
+    public static File getSnapshotFile(final File infile, final File cacheDir)
+        throws IOException {
+        String hash = contentHash(infile);
+        if (cacheDir == null) {
+            return new File(infile.getAbsoluteFile().getParentFile(),
+                            infile.getName() + "." + hash.substring(0, 16) + ".gsnap");
+        }
+        return new File(cacheDir, hash + ".gsnap");
+    }
+
+    /**
+     * Write snapshot of graph
+     * <p>
+     * The snapshot is written to a temporary file, which is then renamed,
+     * so that concurrent readers never see a partial snapshot.
+     *
+     * @param graph      graph to be written
+     * @param nodeTable  node attribute table of graph
+     * @param out        snapshot file
+     */
+    public static void write(final Graph graph, final Table nodeTable, final File out)
+        throws IOException {
+        File dir = out.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        File tmp = File.createTempFile(out.getName(), ".tmp", dir);
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 1 << 16));
+            try {
+                write(graph, nodeTable, dos);
+            } finally {
+                dos.close();
+            }
+            try {
+                Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private static void write(final Graph graph, final Table nodeTable,
+                              final DataOutputStream dos) throws IOException {
+        graph.readLock();
+        try {
+            Node[] nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+
+            // Attribute columns of supported types
+            List<Column> columns = new ArrayList<Column>();
+            for (int i = 0; i < nodeTable.countColumns(); i++) {
+                Column col = nodeTable.getColumn(i);
+                if (!col.isProperty() && TYPES.contains(col.getTypeClass())) {
+                    columns.add(col);
+                }
+            }
+
+            String[] ids = new String[columns.size()];
+            String[] titles = new String[columns.size()];
+            Class[] types = new Class[columns.size()];
+            boolean[] indexed = new boolean[columns.size()];
+            for (int c = 0; c < columns.size(); c++) {
+                ids[c] = columns.get(c).getId();
+                titles[c] = columns.get(c).getTitle();
+                types[c] = columns.get(c).getTypeClass();
+                indexed[c] = columns.get(c).isIndexed();
+            }
+            writeHeader(dos, n, ids, titles, types, indexed);
+
+            int maxStoreId = 0;
+            for (Node node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] index = new int[maxStoreId + 1];
+            for (int i = 0; i < n; i++) {
+                index[nodes[i].getStoreId()] = i;
+                writeNode(dos, nodes[i].getId().toString(), nodes[i].getLabel(),
+                          nodes[i].x(), nodes[i].y(), nodes[i].size());
+            }
+
+            for (Column col : columns) {
+                for (Node node : nodes) {
+                    writeValue(dos, col.getTypeClass(), node.getAttribute(col));
+                }
+            }
+
+            // Edges grouped by source
+            Edge[] edges = graph.getEdges().toArray();
+            int[] offsets = new int[n + 1];
+            for (Edge e : edges) {
+                offsets[index[e.getSource().getStoreId()] + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] fill = Arrays.copyOf(offsets, n);
+            Edge[] sorted = new Edge[edges.length];
+            for (Edge e : edges) {
+                sorted[fill[index[e.getSource().getStoreId()]]++] = e;
+            }
+
+            writeOffsets(dos, offsets);
+            for (Edge e : sorted) {
+                dos.writeInt(index[e.getTarget().getStoreId()]);
+            }
+            for (Edge e : sorted) {
+                dos.writeDouble(e.getWeight());
+            }
+            for (Edge e : sorted) {
+                dos.writeBoolean(e.isDirected());
+            }
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Write magic number, version, node count and attribute columns
+     * <p>
+     * The remainder of a snapshot is written by calling {@code writeNode}
+     * for each node, {@code writeValue} for each column and node, and
+     * {@code writeOffsets}, followed by the edge targets, weights and
+     * directedness, in the order given above.  This allows snapshots of
+     * graphs that are not held in a graph model to be streamed to file.
+     *
+     * @param dos       stream to which snapshot is written
+     * @param numNodes  number of nodes
+     * @param ids       column ids
+     * @param titles    column titles
+     * @param types     column types
+     * @param indexed   whether each column is indexed
+     */
+    protected static void writeHeader(final DataOutputStream dos, final int numNodes,
+                                      final String[] ids, final String[] titles,
+                                      final Class[] types, final boolean[] indexed)
+        throws IOException {
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(numNodes);
+        dos.writeInt(ids.length);
+        for (int c = 0; c < ids.length; c++) {
+            if (!TYPES.contains(types[c])) {
+                throw new IOException("Unsupported type " + types[c] + " of column " + ids[c]);
+            }
+            writeString(dos, ids[c]);
+            writeString(dos, titles[c]);
+            dos.writeByte(TYPES.indexOf(types[c]));
+            dos.writeBoolean(indexed[c]);
+        }
+    }
+
+    /**
+     * Write id, label, position and size of a node
+     */
+    protected static void writeNode(final DataOutputStream dos, final String id,
+                                    final String label, final float x, final float y,
+                                    final float size) throws IOException {
+        writeString(dos, id);
+        writeOptionalString(dos, label);
+        dos.writeFloat(x);
+        dos.writeFloat(y);
+        dos.writeFloat(size);
+    }
+
+    /**
+     * Write edge count and row offsets of edges grouped by source node
+     *
+     * @param dos      stream to which snapshot is written
+     * @param offsets  index of first edge of each node, followed by edge count
+     */
+    protected static void writeOffsets(final DataOutputStream dos, final int[] offsets)
+        throws IOException {
+        dos.writeInt(offsets[offsets.length - 1]);
+        for (int offset : offsets) {
+            dos.writeInt(offset);
+        }
+    }
+
+    /**
+     * Whether file begins with the magic number of a snapshot
+     */
+    public static boolean isSnapshot(final File f) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Load snapshot into graph model, which should contain no nodes
+     *
+     * @param in          snapshot file
+     * @param graphModel  graph model into which graph is loaded
+     */
+    public static void read(final File in, final GraphModel graphModel) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(in, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + in + " is too large to be mapped");
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            read(buf, graphModel, in);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void read(final ByteBuffer buf, final GraphModel graphModel, final File in)
+        throws IOException {
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IOException("Unrecognized snapshot format in " + in);
+        }
+        int n = buf.getInt();
+        int numColumns = buf.getInt();
+
+        Table nodeTable = graphModel.getNodeTable();
+        Column[] columns = new Column[numColumns];
+        int[] tags = new int[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            String id = readString(buf);
+            String title = readString(buf);
+            tags[c] = buf.get();
+            boolean indexed = buf.get() != 0;
+            columns[c] = nodeTable.getColumn(id);
+            if (columns[c] == null) {
+                columns[c] = nodeTable.addColumn(id, title, TYPES.get(tags[c]), Origin.DATA,
+                                                 null, indexed);
+            }
+        }
+
+        GraphFactory factory = graphModel.factory();
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = factory.newNode(readString(buf));
+            String label = readOptionalString(buf);
+            if (label != null) {
+                nodes[i].setLabel(label);
+            }
+            nodes[i].setX(buf.getFloat());
+            nodes[i].setY(buf.getFloat());
+            nodes[i].setSize(buf.getFloat());
+        }
+
+        for (int c = 0; c < numColumns; c++) {
+            for (int i = 0; i < n; i++) {
+                Object value = readValue(buf, tags[c]);
+                if (value != null) {
+                    nodes[i].setAttribute(columns[c], value);
+                }
+            }
+        }
+
+        int numEdges = buf.getInt();
+        int[] offsets = new int[n + 1];
+        buf.asIntBuffer().get(offsets);
+        buf.position(buf.position() + 4 * (n + 1));
+        int[] targets = new int[numEdges];
+        buf.asIntBuffer().get(targets);
+        buf.position(buf.position() + 4 * numEdges);
+        double[] weights = new double[numEdges];
+        buf.asDoubleBuffer().get(weights);
+        buf.position(buf.position() + 8 * numEdges);
+
+        List<Edge> edges = new ArrayList<Edge>(numEdges);
+        for (int i = 0; i < n; i++) {
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                boolean directed = buf.get() != 0;
+                edges.add(factory.newEdge(nodes[i], nodes[targets[k]], 0, weights[k], directed));
+            }
+        }
+
+        Graph graph = graphModel.getGraph();
+        graph.writeLock();
+        try {
+            graph.addAllNodes(Arrays.asList(nodes));
+            graph.addAllEdges(edges);
+        } finally {
+            graph.writeUnlock();
+        }
+    }
+
+    /**
+     * Write string as byte count followed by UTF-8 bytes
+     */
+    protected static void writeString(final DataOutputStream dos, final String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static void writeOptionalString(final DataOutputStream dos, final String s)
+        throws IOException {
+        dos.writeBoolean(s != null);
+        if (s != null) {
+            writeString(dos, s);
+        }
+    }
+
+    private static String readString(final ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static String readOptionalString(final ByteBuffer buf) {
+        return buf.get() != 0 ? readString(buf) : null;
+    }
+
+    /**
+     * Write attribute value (which may be null) of a given column type
+     */
+    protected static void writeValue(final DataOutputStream dos, final Class type,
+                                     final Object value) throws IOException {
+        dos.writeBoolean(value != null);
+        if (value == null) {
+            return;
+        }
+        switch (TYPES.indexOf(type)) {
+        case 0:
+            writeString(dos, (String) value);
+            break;
+        case 1:
+            dos.writeFloat((Float) value);
+            break;
+        case 2:
+            dos.writeDouble((Double) value);
+            break;
+        case 3:
+            dos.writeInt((Integer) value);
+            break;
+        case 4:
+            dos.writeLong((Long) value);
+            break;
+        default:
+            dos.writeBoolean((Boolean) value);
+            break;
+        }
+    }
+
+    private static Object readValue(final ByteBuffer buf, final int tag) {
+        if (buf.get() == 0) {
+            return null;
+        }
+        switch (tag) {
+        case 0:
+            return readString(buf);
+        case 1:
+            return buf.getFloat();
+        case 2:
+            return buf.getDouble();
+        case 3:
+            return buf.getInt();
+        case 4:
+            return buf.getLong();
+        default:
+            return buf.get() != 0;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.civisanalytics.gephi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.TextProperties;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+
+/**
+ * Label overlap removal on a uniform grid, running on all cores
+ * <p>
+ * Each labeled node occupies a box centered on the node, covering both its
+ * label (with the dimensions set by {@link GephiUtils#hackLabels}) and the
+ * node itself.  Every iteration indexes the boxes in a grid whose cells are
+ * the size of an average box, with each box entered in every cell it
+ * covers.  Only pairs of boxes that actually overlap are pushed apart,
+ * along whichever axis separates them with the shorter move.  Each node of
+ * a pair moves by the whole overlap, rather than half of it: the room this
+ * leaves between them keeps crowded groups of labels from jamming, where
+ * nodes pushed from both sides would otherwise barely move.  Iterations
+ * stop once no boxes overlap.
+ * <p>
+ * Each node accumulates its own displacement from the grid cells its box
+ * covers, so the parallel pass writes no shared state and results do not
+ * depend on the number of threads.  Nodes without labels, like those in
+ * Gephi's {@code LabelAdjust}, are neither moved nor avoided.
+ */
+public class GridLabelAdjust implements Layout {
+
+    /**
+     * Number of nodes processed sequentially by a single fork-join task
+     */
+    private static final int CHUNK_SIZE = 512;
+
+    /**
+     * Maximum number of grid cells per labeled node
+     */
+    private static final int MAX_CELLS_PER_NODE = 4;
+
+    /**
+     * Fraction of the size of a pair of boxes added to each move, so that
+     * rounding does not leave separated boxes touching
+     */
+    private static final double GAP = 1e-4;
+
+    private GraphModel graphModel;
+    private Node[] nodes;
+    private ForkJoinPool pool;
+
+    private double[] x;
+    private double[] y;
+    private double[] halfWidth;
+    private double[] halfHeight;
+    private boolean[] fixed;
+    private double[] dx;
+    private double[] dy;
+
+    // Grid of boxes, in compressed sparse row form: the boxes covering
+    // cell c are cellNodes[cellOffsets[c] ... cellOffsets[c + 1] - 1]
+    private double gridX;
+    private double gridY;
+    private double cellWidth;
+    private double cellHeight;
+    private int numCols;
+    private int numRows;
+    private int[] cellOffsets;
+    private int[] cellNodes;
+
+    private int iterations;
+    private int overlaps;
+    private boolean converged;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    public int getThreadCount() { return threadCount; }
+    public void setThreadCount(final int t) { threadCount = t; }
+
+    /**
+     * Number of iterations run since the layout was initialized
+     */
+    public int getIterations() { return iterations; }
+
+    /**
+     * Number of overlapping pairs of labels found by the latest iteration
+     */
+    public int getOverlaps() { return overlaps; }
+
+    /**
+     * Whether the latest iteration found no overlapping labels
+     */
+    public boolean isConverged() { return converged; }
+
+    @Override
+    public void initAlgo() {
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            int numLabeled = 0;
+            for (Node node : graph.getNodes()) {
+                if (hasLabel(node)) {
+                    numLabeled++;
+                }
+            }
+            nodes = new Node[numLabeled];
+            x = new double[numLabeled];
+            y = new double[numLabeled];
+            halfWidth = new double[numLabeled];
+            halfHeight = new double[numLabeled];
+            fixed = new boolean[numLabeled];
+            int i = 0;
+            for (Node node : graph.getNodes()) {
+                if (hasLabel(node)) {
+                    TextProperties tp = node.getTextProperties();
+                    double radius = node.size() / 2.0;
+                    nodes[i] = node;
+                    x[i] = node.x();
+                    y[i] = node.y();
+                    halfWidth[i] = Math.max(tp.getWidth() / 2.0, radius);
+                    halfHeight[i] = Math.max(tp.getHeight() / 2.0, radius);
+                    fixed[i] = node.isFixed();
+                    i++;
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+        dx = new double[nodes.length];
+        dy = new double[nodes.length];
+        iterations = 0;
+        overlaps = 0;
+        converged = nodes.length < 2;
+        pool = new ForkJoinPool(Math.max(1, threadCount));
+    }
+
+    private static boolean hasLabel(final Node node) {
+        TextProperties tp = node.getTextProperties();
+        return tp.getWidth() > 0 && tp.getHeight() > 0;
+    }
+
+    @Override
+    public void setGraphModel(final GraphModel gm) {
+        graphModel = gm;
+    }
+
+    @Override
+    public void goAlgo() {
+        if (converged) {
+            return;
+        }
+        buildGrid();
+        overlaps = pool.invoke(new SeparateTask(0, nodes.length));
+        iterations++;
+        if (overlaps == 0) {
+            converged = true;
+            return;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            x[i] += dx[i];
+            y[i] += dy[i];
+            nodes[i].setX((float) x[i]);
+            nodes[i].setY((float) y[i]);
+        }
+    }
+
+    /**
+     * Size the grid to the boxes' bounds and average dimensions, and enter
+     * each box in every cell it covers
+     */
+    private void buildGrid() {
+        int n = nodes.length;
+        double xmin = Double.POSITIVE_INFINITY;
+        double ymin = Double.POSITIVE_INFINITY;
+        double xmax = Double.NEGATIVE_INFINITY;
+        double ymax = Double.NEGATIVE_INFINITY;
+        double sumWidth = 0.0;
+        double sumHeight = 0.0;
+        for (int i = 0; i < n; i++) {
+            xmin = Math.min(xmin, x[i] - halfWidth[i]);
+            xmax = Math.max(xmax, x[i] + halfWidth[i]);
+            ymin = Math.min(ymin, y[i] - halfHeight[i]);
+            ymax = Math.max(ymax, y[i] + halfHeight[i]);
+            sumWidth += 2 * halfWidth[i];
+            sumHeight += 2 * halfHeight[i];
+        }
+        gridX = xmin;
+        gridY = ymin;
+        cellWidth = sumWidth / n;
+        cellHeight = sumHeight / n;
+
+        // Spread out boxes need larger cells, to bound memory
+        double cols = Math.max(1.0, (xmax - xmin) / cellWidth);
+        double rows = Math.max(1.0, (ymax - ymin) / cellHeight);
+        double excess = cols * rows / ((double) MAX_CELLS_PER_NODE * n);
+        if (excess > 1.0) {
+            cellWidth *= Math.sqrt(excess);
+            cellHeight *= Math.sqrt(excess);
+        }
+        numCols = Math.max(1, (int) Math.ceil((xmax - xmin) / cellWidth));
+        numRows = Math.max(1, (int) Math.ceil((ymax - ymin) / cellHeight));
+
+        cellOffsets = new int[numCols * numRows + 1];
+        for (int i = 0; i < n; i++) {
+            int col0 = col(x[i] - halfWidth[i]);
+            int col1 = col(x[i] + halfWidth[i]);
+            int row0 = row(y[i] - halfHeight[i]);
+            int row1 = row(y[i] + halfHeight[i]);
+            for (int r = row0; r <= row1; r++) {
+                for (int c = col0; c <= col1; c++) {
+                    cellOffsets[r * numCols + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < numCols * numRows; c++) {
+            cellOffsets[c + 1] += cellOffsets[c];
+        }
+        int[] fill = new int[numCols * numRows];
+        cellNodes = new int[cellOffsets[numCols * numRows]];
+        for (int i = 0; i < n; i++) {
+            int col0 = col(x[i] - halfWidth[i]);
+            int col1 = col(x[i] + halfWidth[i]);
+            int row0 = row(y[i] - halfHeight[i]);
+            int row1 = row(y[i] + halfHeight[i]);
+            for (int r = row0; r <= row1; r++) {
+                for (int c = col0; c <= col1; c++) {
+                    int cell = r * numCols + c;
+                    cellNodes[cellOffsets[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    private int col(final double px) {
+        return Math.max(0, Math.min(numCols - 1, (int) ((px - gridX) / cellWidth)));
+    }
+
+    private int row(final double py) {
+        return Math.max(0, Math.min(numRows - 1, (int) ((py - gridY) / cellHeight)));
+    }
+
+    /**
+     * Accumulate the displacement of a range of nodes away from the boxes
+     * they overlap, returning the number of overlapping pairs found
+     * (counting each pair once for every node of the pair that may move)
+     */
+    private class SeparateTask extends RecursiveTask<Integer> {
+        private final int start;
+        private final int end;
+
+        SeparateTask(final int s, final int e) {
+            start = s;
+            end = e;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (end - start > CHUNK_SIZE) {
+                int mid = (start + end) >>> 1;
+                SeparateTask left = new SeparateTask(start, mid);
+                left.fork();
+                int right = new SeparateTask(mid, end).compute();
+                return left.join() + right;
+            }
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                dx[i] = 0.0;
+                dy[i] = 0.0;
+                if (!fixed[i]) {
+                    count += separate(i);
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Push node {@code i} away from every box overlapping its own
+     *
+     * @return number of boxes overlapping that of node {@code i}
+     */
+    private int separate(final int i) {
+        int count = 0;
+        int col0 = col(x[i] - halfWidth[i]);
+        int col1 = col(x[i] + halfWidth[i]);
+        int row0 = row(y[i] - halfHeight[i]);
+        int row1 = row(y[i] + halfHeight[i]);
+        for (int r = row0; r <= row1; r++) {
+            for (int c = col0; c <= col1; c++) {
+                int cell = r * numCols + c;
+                for (int k = cellOffsets[cell]; k < cellOffsets[cell + 1]; k++) {
+                    int j = cellNodes[k];
+                    double overlapX = halfWidth[i] + halfWidth[j] - Math.abs(x[j] - x[i]);
+                    double overlapY = halfHeight[i] + halfHeight[j] - Math.abs(y[j] - y[i]);
+                    if (j == i || overlapX <= 0 || overlapY <= 0) {
+                        continue;
+                    }
+
+                    // A pair sharing several cells is only handled in the
+                    // cell holding the lower corner of its intersection
+                    double cornerX = Math.max(x[i] - halfWidth[i], x[j] - halfWidth[j]);
+                    double cornerY = Math.max(y[i] - halfHeight[i], y[j] - halfHeight[j]);
+                    if (col(cornerX) != c || row(cornerY) != r) {
+                        continue;
+                    }
+                    count++;
+                    if (overlapX < overlapY) {
+                        double move = overlapX + GAP * (halfWidth[i] + halfWidth[j]);
+                        dx[i] += awayFrom(x[i], x[j], i, j) * move;
+                    } else {
+                        double move = overlapY + GAP * (halfHeight[i] + halfHeight[j]);
+                        dy[i] += awayFrom(y[i], y[j], i, j) * move;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Direction in which node {@code i} moves away from node {@code j}
+     * along one axis, breaking ties between coincident nodes by index
+     */
+    private static double awayFrom(final double pi, final double pj, final int i, final int j) {
+        if (pi != pj) {
+            return pi < pj ? -1.0 : 1.0;
+        }
+        return i < j ? -1.0 : 1.0;
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return nodes != null && !converged;
+    }
+
+    @Override
+    public void endAlgo() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = null;
+        nodes = null;
+        cellOffsets = null;
+        cellNodes = null;
+    }
+
+    /**
+     * Parameters are set directly (rather than through Gephi layout properties)
+     */
+    @Override
+    public LayoutProperty[] getProperties() {
+        return new LayoutProperty[0];
+    }
+
+    @Override
+    public void resetPropertiesValues() {
+    }
+
+    @Override
+    public LayoutBuilder getBuilder() {
+        return null;
+    }
+}
@@ -0,0 +1,463 @@
+package com.civisanalytics.gephi;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * Reading and writing of node positions, so that a layout computed in
+ * one run may be reused in later runs
+ * <p>
+ * Positions files are either comma-separated, with a header row naming
+ * the columns {@code id}, {@code x} and {@code y} (in any order; other
+ * columns are ignored), or in the binary format written by
+ * {@code writeBinaryPositions}.  Comma-separated values containing commas
+ * or quotes may be quoted, with embedded quotes doubled.
+ */
+public abstract class LayoutIO {
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Magic number ({@code "GPOS"} in little-endian byte order) and version
+     * of binary positions files
+     */
+    private static final int BINARY_MAGIC = 0x534F5047;
+    private static final int BINARY_VERSION = 1;
+
+    /**
+     * Set coordinates of nodes from positions file
+     * <p>
+     * Nodes missing from the file are placed at the centroid of their
+     * neighbors that are in the file (with a small random offset, so that
+     * they do not coincide), or are left where they are if they have no
+     * such neighbors.  Entries for nodes not in the graph are ignored.
+     *
+     * @param infile  positions file
+     * @param graph   graph whose nodes are positioned
+     * @return number of nodes whose positions were read from file
+     */
+    public static int readPositions(final File infile, final Graph graph) throws IOException {
+        return readPositions(infile, graph, new Random());
+    }
+
+    /**
+     * Set coordinates of nodes from positions file, offsetting nodes
+     * missing from the file by values from a given random source
+     *
+     * @param infile  positions file
+     * @param graph   graph whose nodes are positioned
+     * @param random  source of offsets of nodes missing from file
+     * @return number of nodes whose positions were read from file
+     */
+    public static int readPositions(final File infile, final Graph graph, final Random random)
+        throws IOException {
+        boolean[] positioned = new boolean[maxStoreId(graph) + 1];
+        int numPositioned;
+        if (isBinary(infile)) {
+            numPositioned = readBinaryPositions(infile, graph, positioned);
+        } else {
+            numPositioned = readCsvPositions(infile, graph, positioned);
+        }
+        placeNewNodes(graph, positioned, random);
+        return numPositioned;
+    }
+
+    private static int readCsvPositions(final File infile, final Graph graph,
+                                        final boolean[] positioned) throws IOException {
+        int numPositioned = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(infile), UTF8));
+        try {
+            String line = readCsvRecord(reader);
+            if (line == null) {
+                throw new IOException("Positions file " + infile + " is empty");
+            }
+            List<String> header = parseCsvLine(line);
+            int idCol = header.indexOf("id");
+            int xCol = header.indexOf("x");
+            int yCol = header.indexOf("y");
+            if (idCol < 0 || xCol < 0 || yCol < 0) {
+                throw new IOException("Positions file " + infile
+                                      + " must have columns id, x and y");
+            }
+
+            // Records are reported by their first line, even if a quoted
+            //   value spans several lines
+            int lineNumber = 1;
+            int nextLineNumber = 2;
+            while ((line = readCsvRecord(reader)) != null) {
+                lineNumber = nextLineNumber++;
+                for (int i = line.indexOf('\n'); i >= 0; i = line.indexOf('\n', i + 1)) {
+                    nextLineNumber++;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() < header.size()) {
+                    throw new IOException("Line " + lineNumber + " of " + infile
+                                          + " has too few fields");
+                }
+                Node node = graph.getNode(fields.get(idCol));
+                if (node == null) {
+                    continue;
+                }
+                try {
+                    node.setX(Float.parseFloat(fields.get(xCol)));
+                    node.setY(Float.parseFloat(fields.get(yCol)));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + " of " + infile
+                                          + " has invalid coordinates");
+                }
+                if (!positioned[node.getStoreId()]) {
+                    positioned[node.getStoreId()] = true;
+                    numPositioned++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return numPositioned;
+    }
+
+    private static int readBinaryPositions(final File infile, final Graph graph,
+                                           final boolean[] positioned) throws IOException {
+        int numPositioned = 0;
+        RandomAccessFile raf = new RandomAccessFile(infile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            buf.getInt();
+            if (buf.getInt() != BINARY_VERSION) {
+                throw new IOException("Unsupported version of positions file " + infile);
+            }
+            int n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                String id = readString(buf);
+                float x = buf.getFloat();
+                float y = buf.getFloat();
+                buf.getFloat();
+                buf.getInt();
+                readString(buf);
+
+                Node node = graph.getNode(id);
+                if (node != null) {
+                    node.setX(x);
+                    node.setY(y);
+                    if (!positioned[node.getStoreId()]) {
+                        positioned[node.getStoreId()] = true;
+                        numPositioned++;
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Positions file " + infile + " is truncated");
+        } finally {
+            raf.close();
+        }
+        return numPositioned;
+    }
+
+    /**
+     * Whether file begins with the magic number of the binary format
+     */
+    private static boolean isBinary(final File infile) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(infile));
+        try {
+            return in.readInt() == Integer.reverseBytes(BINARY_MAGIC);
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readString(final ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Write id, position, size, color and label of every node
+     *
+     * @param graph    graph whose nodes are written
+     * @param outfile  output file
+     * @param format   "csv" or "binary"
+     */
+    public static void writePositions(final Graph graph, final File outfile,
+                                      final String format) throws IOException {
+        if (format.equals("binary")) {
+            writeBinaryPositions(graph, outfile);
+        } else {
+            writeCsvPositions(graph, outfile);
+        }
+    }
+
+    /**
+     * Write nodes as comma-separated values, with columns id, x, y, size,
+     * color (as {@code #rrggbb}) and label
+     */
+    public static void writeCsvPositions(final Graph graph, final File outfile)
+        throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(outfile), UTF8), 1 << 16);
+        try {
+            writer.write("id,x,y,size,color,label\n");
+            graph.readLock();
+            try {
+                for (Node node : graph.getNodes()) {
+                    writer.write(quoteCsv(node.getId().toString()));
+                    writer.write(',');
+                    writer.write(Float.toString(node.x()));
+                    writer.write(',');
+                    writer.write(Float.toString(node.y()));
+                    writer.write(',');
+                    writer.write(Float.toString(node.size()));
+                    writer.write(',');
+                    writer.write(String.format("#%06x", node.getColor().getRGB() & 0xffffff));
+                    writer.write(',');
+                    writer.write(node.getLabel() == null ? "" : quoteCsv(node.getLabel()));
+                    writer.write('\n');
+                }
+            } finally {
+                graph.readUnlock();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write nodes in little-endian binary form: magic number {@code "GPOS"},
+     * format version and node count (as {@code int}s), then for each node
+     * its id, x, y and size (as {@code float}s), color (as an ARGB
+     * {@code int}) and label.  Strings are written as a byte count
+     * ({@code -1} for null) followed by UTF-8 bytes.
+     */
+    public static void writeBinaryPositions(final Graph graph, final File outfile)
+        throws IOException {
+        FileOutputStream out = new FileOutputStream(outfile);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            graph.readLock();
+            try {
+                buf.putInt(BINARY_MAGIC);
+                buf.putInt(BINARY_VERSION);
+                buf.putInt(graph.getNodeCount());
+                for (Node node : graph.getNodes()) {
+                    buf = writeString(channel, buf, node.getId().toString());
+                    buf = ensureRemaining(channel, buf, 16);
+                    buf.putFloat(node.x());
+                    buf.putFloat(node.y());
+                    buf.putFloat(node.size());
+                    buf.putInt(node.getColor().getRGB());
+                    buf = writeString(channel, buf, node.getLabel());
+                }
+            } finally {
+                graph.readUnlock();
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static ByteBuffer writeString(final FileChannel channel, final ByteBuffer buf,
+                                          final String s) throws IOException {
+        if (s == null) {
+            ByteBuffer b = ensureRemaining(channel, buf, 4);
+            b.putInt(-1);
+            return b;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        ByteBuffer b = ensureRemaining(channel, buf, 4 + bytes.length);
+        b.putInt(bytes.length);
+        b.put(bytes);
+        return b;
+    }
+
+    /**
+     * Flush buffer to channel if fewer than {@code n} bytes remain,
+     * returning a larger buffer if {@code n} exceeds its capacity
+     */
+    private static ByteBuffer ensureRemaining(final FileChannel channel, final ByteBuffer buf,
+                                              final int n) throws IOException {
+        if (buf.remaining() >= n) {
+            return buf;
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+        if (buf.capacity() >= n) {
+            return buf;
+        }
+        return ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Place nodes without positions at the centroid of their positioned
+     * neighbors
+     */
+    private static void placeNewNodes(final Graph graph, final boolean[] positioned,
+                                      final Random random) {
+        graph.readLock();
+        try {
+            for (Node node : graph.getNodes()) {
+                if (positioned[node.getStoreId()]) {
+                    continue;
+                }
+                double sumX = 0.0;
+                double sumY = 0.0;
+                int count = 0;
+                for (Node neighbor : graph.getNeighbors(node)) {
+                    if (positioned[neighbor.getStoreId()]) {
+                        sumX += neighbor.x();
+                        sumY += neighbor.y();
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    double radius = Math.max(node.size(), 1f);
+                    node.setX((float) (sumX / count + radius * (random.nextDouble() - 0.5)));
+                    node.setY((float) (sumY / count + radius * (random.nextDouble() - 0.5)));
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    protected static int maxStoreId(final Graph graph) {
+        int maxStoreId = 0;
+        for (Node node : graph.getNodes()) {
+            maxStoreId = Math.max(maxStoreId, node.getStoreId());
+        }
+        return maxStoreId;
+    }
+
+    /**
+     * Read record of comma-separated values, which continues onto following
+     * lines while a quoted value is open (line breaks within quoted values
+     * are read as {@code \n})
+     *
+     * @param reader  reader of comma-separated values
+     * @return record, or null at end of input
+     */
+    protected static String readCsvRecord(final BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        boolean quoted = line != null && endsQuoted(line, false);
+        if (!quoted) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (quoted) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Quoted value is not closed before end of file");
+            }
+            record.append('\n').append(line);
+            quoted = endsQuoted(line, quoted);
+        }
+        return record.toString();
+    }
+
+    /**
+     * Whether a quoted value is open at the end of a line (each quote,
+     * including each of an escaped pair, opens or closes a quoted value)
+     */
+    private static boolean endsQuoted(final String line, final boolean quoted) {
+        boolean open = quoted;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Split line of comma-separated values, removing quotes
+     */
+    protected static List<String> parseCsvLine(final String line) {
+        return parseCsvLine(line, ',');
+    }
+
+    /**
+     * Split line of delimited values into fields, removing quotes
+     *
+     * @param line       line of values
+     * @param delimiter  character separating values
+     * @return values in line
+     */
+    protected static List<String> parseCsvLine(final String line, final char delimiter) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Quote value for comma-separated output, if necessary
+     */
+    protected static String quoteCsv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+            && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
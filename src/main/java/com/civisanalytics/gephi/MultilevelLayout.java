@@ -0,0 +1,355 @@
+package com.civisanalytics.gephi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multilevel ForceAtlas2: coarsen the graph, lay out the coarsest level,
+ * then interpolate positions back to the graph, refining at each level
+ * <p>
+ * The graph is coarsened repeatedly by heavy-edge matching.  Visiting
+ * nodes in order of increasing degree, each unmatched node is merged with
+ * the unmatched neighbor to which it has the heaviest edge.  A node left
+ * unmatched because all of its neighbors were matched first (as the leaves
+ * of a star are) joins the merged node of its heaviest neighbor, so that
+ * each level has at most about half as many nodes as the one below it.
+ * Merged nodes are placed at the centroid of their members, with an area
+ * equal to the sum of theirs, and edges between the same merged nodes are
+ * combined by summing their weights.  Coarsening stops once a level has
+ * at most {@code minLevelNodes} nodes, or stops shrinking.
+ * <p>
+ * {@link ForceAtlas2Engine} first lays out the coarsest level.  The
+ * layout time is shared between levels in proportion to their numbers of
+ * nodes and edges, so that every level runs a similar number of
+ * iterations.  Once a level's share has been used, the members of each of
+ * its nodes are spread around the node's position, and layout continues
+ * on the next finer level.  The finest level (the graph itself) runs until
+ * the layout is stopped, and its positions are copied into the graph's
+ * nodes after every iteration.  Initial positions of the graph's nodes
+ * only matter through the centroids of the coarsest level.
+ * <p>
+ * If {@code layoutIterations} is set, each level except the finest runs
+ * an equal share of that many iterations instead, so that the result does
+ * not depend on the speed of the machine.
+ */
+public class MultilevelLayout extends FastForceAtlas2Layout {
+
+    /**
+     * Largest ratio of the numbers of nodes of successive levels: coarsening
+     * stops once it shrinks a level by less than this
+     */
+    private static final double MAX_COARSENING_RATIO = 0.9;
+
+    private int minLevelNodes = 100;
+    public int getMinLevelNodes() { return minLevelNodes; }
+    public void setMinLevelNodes(final int t) { minLevelNodes = t; }
+
+    /**
+     * Number of seconds for which the layout will run, to be shared between levels
+     */
+    private double layoutTime = 60.0;
+    public double getLayoutTime() { return layoutTime; }
+    public void setLayoutTime(final double t) { layoutTime = t; }
+
+    /**
+     * Number of iterations for which the layout will run, to be shared
+     * equally between levels (zero to share {@code layoutTime} instead)
+     */
+    private int layoutIterations = 0;
+    public int getLayoutIterations() { return layoutIterations; }
+    public void setLayoutIterations(final int t) { layoutIterations = t; }
+
+    private List<Level> levels;
+    private long[] levelTimes;
+    private int currentLevel;
+    private long levelEnd;
+    private int levelSteps;
+    private int numLevels;
+
+    /**
+     * Number of levels (including the graph itself) built by the latest
+     * initialization of the layout
+     */
+    public int getLevelCount() { return numLevels; }
+
+    /**
+     * Whether layout has reached the graph itself, so that its nodes are
+     * being moved
+     */
+    public boolean isFinestLevel() { return currentLevel == 0; }
+
+    @Override
+    protected void initEngine(final double[] xs, final double[] ys, final double[] sizes,
+                              final int[] offsets, final int[] neighbors,
+                              final double[] weights) {
+        levels = new ArrayList<Level>();
+        Level level = new Level(offsets, neighbors, weights, xs, ys, sizes);
+        levels.add(level);
+        while (level.numNodes > minLevelNodes) {
+            level = coarsen(level);
+            if (level == null) {
+                break;
+            }
+            levels.add(level);
+        }
+        numLevels = levels.size();
+        System.err.println("Multilevel layout with " + numLevels + " levels, coarsest has "
+                           + levels.get(numLevels - 1).numNodes + " nodes");
+
+        // Share layout time between levels in proportion to their sizes
+        double totalSize = 0.0;
+        for (Level l : levels) {
+            totalSize += l.getSize();
+        }
+        levelTimes = new long[numLevels];
+        for (int l = 0; l < numLevels; l++) {
+            levelTimes[l] = (long) (layoutTime * 1e9 * levels.get(l).getSize() / totalSize);
+        }
+        startLevel(numLevels - 1);
+    }
+
+    /**
+     * Begin laying out a level, from the current positions of its nodes
+     */
+    private void startLevel(final int l) {
+        Level level = levels.get(l);
+        currentLevel = l;
+        engine = createEngine(level.x, level.y, level.size,
+                              level.offsets, level.neighbors, level.weights);
+        levelEnd = System.nanoTime() + levelTimes[l];
+        levelSteps = 0;
+    }
+
+    /**
+     * Whether the current level has used its share of the layout
+     */
+    private boolean isLevelDone() {
+        if (layoutIterations > 0) {
+            return levelSteps >= Math.max(1, layoutIterations / numLevels);
+        }
+        return System.nanoTime() >= levelEnd;
+    }
+
+    @Override
+    public void goAlgo() {
+        if (currentLevel > 0 && isLevelDone()) {
+            interpolate(levels.get(currentLevel), levels.get(currentLevel - 1));
+            startLevel(currentLevel - 1);
+        }
+        engine.step();
+        levelSteps++;
+        if (currentLevel == 0) {
+            writePositions(engine.getX(), engine.getY());
+        }
+    }
+
+    @Override
+    public void endAlgo() {
+        // If stopped before reaching the graph itself, carry the layout down to it
+        if (levels != null && currentLevel > 0) {
+            for (int l = currentLevel; l > 0; l--) {
+                interpolate(levels.get(l), levels.get(l - 1));
+            }
+            Level finest = levels.get(0);
+            writePositions(finest.x, finest.y);
+            currentLevel = 0;
+        }
+        levels = null;
+        super.endAlgo();
+    }
+
+    /**
+     * One level of the hierarchy: a graph in compressed sparse row form
+     * (as used by {@link ForceAtlas2Engine}), with node positions and radii,
+     * and the index of each node's merged node in the next coarser level
+     */
+    static class Level {
+        final int numNodes;
+        final int[] offsets;
+        final int[] neighbors;
+        final double[] weights;
+        final double[] x;
+        final double[] y;
+        final double[] size;
+        int[] parent;
+
+        Level(final int[] rowOffsets, final int[] cols, final double[] vals,
+              final double[] xs, final double[] ys, final double[] sizes) {
+            numNodes = xs.length;
+            offsets = rowOffsets;
+            neighbors = cols;
+            weights = vals;
+            x = xs;
+            y = ys;
+            size = sizes;
+        }
+
+        int getDegree(final int i) { return offsets[i + 1] - offsets[i]; }
+
+        long getSize() { return numNodes + (long) offsets[numNodes]; }
+    }
+
+    /**
+     * Build the next coarser level by heavy-edge matching, setting
+     * {@code parent} of the finer level
+     *
+     * @param fine  level to coarsen
+     * @return coarser level, or null if the level would not shrink enough
+     */
+    static Level coarsen(final Level fine) {
+        int n = fine.numNodes;
+
+        // Visit nodes in order of increasing degree (by counting sort)
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            maxDegree = Math.max(maxDegree, fine.getDegree(i));
+        }
+        int[] start = new int[maxDegree + 2];
+        for (int i = 0; i < n; i++) {
+            start[fine.getDegree(i) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            start[d + 1] += start[d];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[start[fine.getDegree(i)]++] = i;
+        }
+
+        // Match each node with its heaviest unmatched neighbor
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        int numCoarse = 0;
+        for (int u : order) {
+            if (parent[u] < 0) {
+                int v = heaviestNeighbor(fine, u, parent, true);
+                if (v >= 0) {
+                    parent[u] = numCoarse;
+                    parent[v] = numCoarse++;
+                }
+            }
+        }
+
+        // Nodes left unmatched have only matched neighbors: join the
+        // heaviest of them, or stay alone if isolated
+        for (int u : order) {
+            if (parent[u] < 0) {
+                int v = heaviestNeighbor(fine, u, parent, false);
+                parent[u] = v >= 0 ? parent[v] : numCoarse++;
+            }
+        }
+        if (numCoarse > MAX_COARSENING_RATIO * n) {
+            return null;
+        }
+
+        // Place merged nodes at the centroids of their members, with the same total area
+        double[] xs = new double[numCoarse];
+        double[] ys = new double[numCoarse];
+        double[] sizes = new double[numCoarse];
+        int[] memberOffsets = new int[numCoarse + 1];
+        for (int i = 0; i < n; i++) {
+            int c = parent[i];
+            xs[c] += fine.x[i];
+            ys[c] += fine.y[i];
+            sizes[c] += fine.size[i] * fine.size[i];
+            memberOffsets[c + 1]++;
+        }
+        for (int c = 0; c < numCoarse; c++) {
+            int count = memberOffsets[c + 1];
+            xs[c] /= count;
+            ys[c] /= count;
+            sizes[c] = Math.sqrt(sizes[c]);
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        int[] fill = new int[numCoarse];
+        int[] members = new int[n];
+        for (int i = 0; i < n; i++) {
+            int c = parent[i];
+            members[memberOffsets[c] + fill[c]++] = i;
+        }
+
+        // Combine edges between members of different merged nodes; slot[d]
+        // is the position of merged node d in the row being built, if it
+        // is at least the start of that row
+        int[] offsets = new int[numCoarse + 1];
+        int[] neighbors = new int[fine.offsets[n]];
+        double[] weights = new double[fine.offsets[n]];
+        int[] slot = new int[numCoarse];
+        Arrays.fill(slot, -1);
+        int p = 0;
+        for (int c = 0; c < numCoarse; c++) {
+            offsets[c] = p;
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                int u = members[m];
+                for (int k = fine.offsets[u]; k < fine.offsets[u + 1]; k++) {
+                    int d = parent[fine.neighbors[k]];
+                    if (d == c) {
+                        continue;
+                    }
+                    if (slot[d] < offsets[c]) {
+                        slot[d] = p;
+                        neighbors[p] = d;
+                        weights[p++] = fine.weights[k];
+                    } else {
+                        weights[slot[d]] += fine.weights[k];
+                    }
+                }
+            }
+        }
+        offsets[numCoarse] = p;
+
+        fine.parent = parent;
+        return new Level(offsets, Arrays.copyOf(neighbors, p), Arrays.copyOf(weights, p),
+                         xs, ys, sizes);
+    }
+
+    /**
+     * Neighbor of {@code u} joined to it by the heaviest edge (preferring
+     * neighbors of lower degree, then those found first)
+     *
+     * @param unmatched  whether to consider only neighbors not yet merged
+     * @return index of neighbor, or -1 if there is none
+     */
+    private static int heaviestNeighbor(final Level level, final int u, final int[] parent,
+                                        final boolean unmatched) {
+        int best = -1;
+        double bestWeight = 0.0;
+        for (int k = level.offsets[u]; k < level.offsets[u + 1]; k++) {
+            int v = level.neighbors[k];
+            if (v == u || (unmatched && parent[v] >= 0)) {
+                continue;
+            }
+            double w = level.weights[k];
+            if (best < 0 || w > bestWeight
+                || (w == bestWeight && level.getDegree(v) < level.getDegree(best))) {
+                best = v;
+                bestWeight = w;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Place the members of each node of a coarser level evenly around a
+     * circle of half its radius, centered on the node (or on the node
+     * itself, for a single member)
+     */
+    static void interpolate(final Level coarse, final Level fine) {
+        int[] count = new int[coarse.numNodes];
+        for (int i = 0; i < fine.numNodes; i++) {
+            count[fine.parent[i]]++;
+        }
+        int[] placed = new int[coarse.numNodes];
+        for (int i = 0; i < fine.numNodes; i++) {
+            int c = fine.parent[i];
+            fine.x[i] = coarse.x[c];
+            fine.y[i] = coarse.y[c];
+            if (count[c] > 1) {
+                double angle = 2 * Math.PI * placed[c]++ / count[c];
+                fine.x[i] += 0.5 * coarse.size[c] * Math.cos(angle);
+                fine.y[i] += 0.5 * coarse.size[c] * Math.sin(angle);
+            }
+        }
+    }
+}
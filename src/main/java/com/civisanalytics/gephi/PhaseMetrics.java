@@ -0,0 +1,292 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wall time, CPU time, allocation and heap usage of each phase of a run
+ * <p>
+ * CPU time is measured both for the thread running the phase and (where
+ * the JVM supports it) for the whole process, since some phases (e.g.
+ * {@code force_atlas2_fast} layout) run on worker threads.  Allocated
+ * bytes are those allocated by the thread running the phase.  Heap usage
+ * (the sum of the usage of all heap memory pools) is recorded at the start
+ * of the phase, and sampled every {@code SAMPLE_INTERVAL_MILLIS} during it
+ * for its peak.  Heap usage is measured for the whole JVM, so it includes
+ * any other diagrams being created concurrently, and the peak may miss
+ * spikes shorter than the sampling interval.  The JVM's own peak usage of
+ * memory pools is not used, since resetting it for one phase would reset
+ * it for every other phase being measured at the same time.
+ */
+public class PhaseMetrics {
+
+    /**
+     * Interval between samples of heap usage
+     */
+    private static final long SAMPLE_INTERVAL_MILLIS = 10L;
+
+    /**
+     * Single daemon thread sampling heap usage for all phases
+     */
+    private static final ScheduledExecutorService SAMPLER
+        = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "phase-metrics-sampler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * Measurements of a single phase
+     */
+    public static class Phase {
+        private final String name;
+        private double wallSeconds;
+        private double threadCpuSeconds;
+        private double processCpuSeconds = -1;
+        private long allocatedBytes = -1;
+        private long startHeapBytes;
+        private long peakHeapBytes;
+        private final Map<String, Object> counts = new LinkedHashMap<String, Object>();
+
+        Phase(final String n) {
+            name = n;
+        }
+
+        public String getName() { return name; }
+        public double getWallSeconds() { return wallSeconds; }
+        public double getThreadCpuSeconds() { return threadCpuSeconds; }
+        public double getProcessCpuSeconds() { return processCpuSeconds; }
+        public long getAllocatedBytes() { return allocatedBytes; }
+        public long getStartHeapBytes() { return startHeapBytes; }
+        public long getPeakHeapBytes() { return peakHeapBytes; }
+        public Map<String, Object> getCounts() { return counts; }
+    }
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+    private final Map<String, Object> summary = new LinkedHashMap<String, Object>();
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private Phase current;
+    private long startWall;
+    private long startThreadCpu;
+    private long startProcessCpu;
+    private long startAllocated;
+    private AtomicLong peakHeap;
+    private ScheduledFuture<?> sampling;
+
+    public PhaseMetrics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    public List<Phase> getPhases() { return phases; }
+
+    /**
+     * Record a value describing the whole run (e.g. input file name)
+     */
+    public void put(final String key, final Object value) {
+        summary.put(key, value);
+    }
+
+    /**
+     * Record a count for the current phase (e.g. number of iterations)
+     */
+    public void count(final String key, final Object value) {
+        if (current != null) {
+            current.counts.put(key, value);
+        }
+    }
+
+    /**
+     * Begin measuring a phase, ending the current phase if any
+     *
+     * @param name  name of phase
+     */
+    public void start(final String name) {
+        if (current != null) {
+            stop();
+        }
+        current = new Phase(name);
+        current.startHeapBytes = heapUsed();
+        final AtomicLong peak = new AtomicLong(current.startHeapBytes);
+        peakHeap = peak;
+        sampling = SAMPLER.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    updatePeak(peak, heapUsed());
+                }
+            }, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        startThreadCpu = threadCpuTime();
+        startProcessCpu = processCpuTime();
+        startAllocated = threadAllocatedBytes();
+        startWall = System.nanoTime();
+    }
+
+    /**
+     * Finish measuring the current phase
+     */
+    public void stop() {
+        if (current == null) {
+            return;
+        }
+        current.wallSeconds = (System.nanoTime() - startWall) / 1e9;
+        current.threadCpuSeconds = (threadCpuTime() - startThreadCpu) / 1e9;
+        long processCpu = processCpuTime();
+        if (processCpu >= 0 && startProcessCpu >= 0) {
+            current.processCpuSeconds = (processCpu - startProcessCpu) / 1e9;
+        }
+        long allocated = threadAllocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) {
+            current.allocatedBytes = allocated - startAllocated;
+        }
+        sampling.cancel(false);
+        updatePeak(peakHeap, heapUsed());
+        current.peakHeapBytes = peakHeap.get();
+        sampling = null;
+        peakHeap = null;
+        phases.add(current);
+        current = null;
+    }
+
+    private long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private static void updatePeak(final AtomicLong peak, final long used) {
+        long previous = peak.get();
+        while (used > previous && !peak.compareAndSet(previous, used)) {
+            previous = peak.get();
+        }
+    }
+
+    private long threadCpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported()
+            ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long processCpuTime() {
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private long threadAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write metrics as JSON
+     *
+     * @param outfile  file to which metrics are written
+     */
+    public void writeJson(final File outfile) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outfile),
+                                                                 "UTF-8"));
+        try {
+            writeJson(out);
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Could not write metrics to " + outfile);
+        }
+    }
+
+    /**
+     * Write metrics as JSON
+     *
+     * @param out  writer to which metrics are written
+     */
+    public void writeJson(final PrintWriter out) {
+        out.println("{");
+        for (Map.Entry<String, Object> e : summary.entrySet()) {
+            out.println("  " + jsonString(e.getKey()) + ": " + jsonValue(e.getValue()) + ",");
+        }
+        out.println("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase p = phases.get(i);
+            out.print("    {\"name\": " + jsonString(p.name)
+                      + ", \"wall_seconds\": " + jsonValue(p.wallSeconds)
+                      + ", \"thread_cpu_seconds\": " + jsonValue(p.threadCpuSeconds)
+                      + ", \"process_cpu_seconds\": "
+                      + (p.processCpuSeconds >= 0 ? jsonValue(p.processCpuSeconds) : "null")
+                      + ", \"allocated_bytes\": "
+                      + (p.allocatedBytes >= 0 ? String.valueOf(p.allocatedBytes) : "null")
+                      + ", \"start_heap_bytes\": " + p.startHeapBytes
+                      + ", \"peak_heap_bytes\": " + p.peakHeapBytes);
+            for (Map.Entry<String, Object> e : p.counts.entrySet()) {
+                out.print(", " + jsonString(e.getKey()) + ": " + jsonValue(e.getValue()));
+            }
+            out.println(i < phases.size() - 1 ? "}," : "}");
+        }
+        out.println("  ]");
+        out.println("}");
+        out.flush();
+    }
+
+    private static String jsonValue(final Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d)
+                ? "null" : String.format(Locale.ROOT, "%.6f", d);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        return jsonString(value.toString());
+    }
+
+    private static String jsonString(final String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.civisanalytics.gephi;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that accepts an image a few rows at a time, so that images
+ * too large to be held in memory may be written
+ * <p>
+ * Pixels are written as 8-bit RGB (or RGBA, if the image has an alpha
+ * channel), with every row using the {@code Sub} filter.  Compressed data
+ * is written in fixed-size {@code IDAT} chunks as it is produced.
+ */
+public class PngStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+    };
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final byte FILTER_SUB = 1;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final int[] pixels;
+    private final byte[] row;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int rowsWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Write PNG header
+     *
+     * @param out     stream to which image is written (closed by {@code close})
+     * @param width   width of image in pixels
+     * @param height  height of image in pixels
+     * @param alpha   whether to write an alpha channel
+     */
+    public PngStreamWriter(final OutputStream out, final int width, final int height,
+                           final boolean alpha) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid PNG dimensions " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        bytesPerPixel = alpha ? 4 : 3;
+        pixels = new int[width];
+        row = new byte[1 + width * bytesPerPixel];
+        row[0] = FILTER_SUB;
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Append the first rows of an image
+     *
+     * @param image    image whose width matches that of the PNG
+     * @param numRows  number of rows (from the top of {@code image}) to append
+     */
+    public void writeRows(final BufferedImage image, final int numRows) throws IOException {
+        if (image.getWidth() != width) {
+            throw new IllegalArgumentException("Image width " + image.getWidth()
+                                               + " does not match PNG width " + width);
+        }
+        if (numRows > image.getHeight() || rowsWritten + numRows > height) {
+            throw new IllegalArgumentException("Too many rows for PNG of height " + height);
+        }
+        for (int y = 0; y < numRows; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            int previous = 0;
+            int j = 1;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[x];
+                int delta = subtractBytes(argb, previous);
+                row[j++] = (byte) (delta >>> 16);
+                row[j++] = (byte) (delta >>> 8);
+                row[j++] = (byte) delta;
+                if (bytesPerPixel == 4) {
+                    row[j++] = (byte) (delta >>> 24);
+                }
+                previous = argb;
+            }
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        rowsWritten += numRows;
+    }
+
+    /**
+     * Finish compressed data, write trailer and close the output stream
+     *
+     * @throws IOException if fewer rows than the image height were written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("PNG has " + rowsWritten + " of " + height + " rows");
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            writeChunk("IEND", chunk, 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Compress pending input, writing an {@code IDAT} chunk if any output
+     * was produced
+     */
+    private void deflate() throws IOException {
+        int n = deflater.deflate(chunk);
+        if (n > 0) {
+            writeChunk("IDAT", chunk, n);
+        }
+    }
+
+    private void writeChunk(final String type, final byte[] data, final int length)
+        throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Subtract each byte of {@code b} from the corresponding byte of
+     * {@code a}, modulo 256
+     */
+    private static int subtractBytes(final int a, final int b) {
+        return ((a | 0x00ff00ff) - (b & 0xff00ff00)) & 0xff00ff00
+            | ((a | 0xff00ff00) - (b & 0x00ff00ff)) & 0x00ff00ff;
+    }
+
+    private static void putInt(final byte[] b, final int offset, final int v) {
+        b[offset] = (byte) (v >>> 24);
+        b[offset + 1] = (byte) (v >>> 16);
+        b[offset + 2] = (byte) (v >>> 8);
+        b[offset + 3] = (byte) v;
+    }
+}
@@ -0,0 +1,260 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gephi.graph.api.Graph;
+
+/**
+ * On-disk cache of finished figures, and of layouts, keyed by the
+ * contents of a job's input files and the options that affect each
+ * <p>
+ * A key is the SHA-256 digest of the hashes of the input files' contents,
+ * followed by a canonical listing of options: one {@code name=value} line
+ * per option, sorted by name.  A layout entry holds node positions after
+ * force-directed layout (before label adjust), keyed by the options that
+ * affect layout, so that jobs differing only in colors, labels or figure
+ * size skip layout.  A figure entry holds the PNG image (and the node
+ * positions file, if one was written) of a finished job, keyed by all of
+ * its options, so that an identical job skips import, layout and
+ * rendering altogether.
+ * <p>
+ * Files are written to a temporary file and then renamed, so that
+ * concurrent jobs never see a partial file.  Using an entry updates the
+ * modification times of its files, and once the files in the cache take
+ * more than {@code maxBytes}, entries are deleted in order of least recent
+ * use.
+ */
+public class RenderCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String LAYOUT_SUFFIX = ".layout";
+    private static final String FIGURE_SUFFIX = ".png";
+    private static final String POSITIONS_SUFFIX = ".positions";
+
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * @param d    directory holding cache entries
+     * @param max  maximum total size of cache entries, in bytes
+     */
+    public RenderCache(final File d, final long max) {
+        dir = d;
+        maxBytes = max;
+    }
+
+    public File getDirectory() { return dir; }
+    public long getMaxBytes() { return maxBytes; }
+
+    /**
+     * Compute key of cache entry
+     *
+     * @param inputs   input files of job (null entries are skipped)
+     * @param options  values of options, by name (in any order)
+     * @return hex-encoded key
+     */
+    public static String key(final List<File> inputs, final Map<String, Object> options)
+        throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (File f : inputs) {
+            if (f != null) {
+                sb.append(GraphSnapshot.contentHash(f)).append('\n');
+            }
+        }
+        for (Map.Entry<String, Object> e : new TreeMap<String, Object>(options).entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(sb.toString().getBytes(UTF8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Set node positions from layout entry, if there is one
+     *
+     * @param key    key of layout entry
+     * @param graph  graph whose nodes are positioned
+     * @return whether entry was found
+     */
+    public boolean readLayout(final String key, final Graph graph) throws IOException {
+        File f = new File(dir, key + LAYOUT_SUFFIX);
+        if (!touch(f)) {
+            return false;
+        }
+        LayoutIO.readPositions(f, graph);
+        return true;
+    }
+
+    /**
+     * Store node positions as layout entry
+     *
+     * @param key    key of layout entry
+     * @param graph  graph whose node positions are stored
+     */
+    public void writeLayout(final String key, final Graph graph) throws IOException {
+        File tmp = createTempFile(key);
+        try {
+            LayoutIO.writePositions(graph, tmp, "binary");
+            commit(tmp, new File(dir, key + LAYOUT_SUFFIX));
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        evict();
+    }
+
+    /**
+     * Copy figure (and positions file) from figure entry, if there is one
+     *
+     * @param key        key of figure entry
+     * @param png        file to which figure is copied
+     * @param positions  file to which positions are copied (if null,
+     *                   positions are not needed)
+     * @return whether entry was found (with positions, if needed)
+     */
+    public boolean readFigure(final String key, final File png, final File positions)
+        throws IOException {
+        File cachedPng = new File(dir, key + FIGURE_SUFFIX);
+        File cachedPositions = new File(dir, key + POSITIONS_SUFFIX);
+        if (!touch(cachedPng) || (positions != null && !touch(cachedPositions))) {
+            return false;
+        }
+        try {
+            Files.copy(cachedPng.toPath(), png.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (positions != null) {
+                Files.copy(cachedPositions.toPath(), positions.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (NoSuchFileException e) {
+            // Evicted by a concurrent job
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Store copy of figure (and positions file) as figure entry
+     *
+     * @param key        key of figure entry
+     * @param png        figure file
+     * @param positions  positions file (or null, if none was written)
+     */
+    public void writeFigure(final String key, final File png, final File positions)
+        throws IOException {
+        if (positions != null) {
+            copyIn(positions, new File(dir, key + POSITIONS_SUFFIX));
+        }
+        copyIn(png, new File(dir, key + FIGURE_SUFFIX));
+        evict();
+    }
+
+    private void copyIn(final File src, final File dest) throws IOException {
+        File tmp = createTempFile(dest.getName());
+        try {
+            Files.copy(src.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            commit(tmp, dest);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private File createTempFile(final String prefix) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        return File.createTempFile("." + prefix + ".", ".tmp", dir);
+    }
+
+    private static void commit(final File tmp, final File dest) throws IOException {
+        try {
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Mark file as recently used
+     *
+     * @return whether file exists
+     */
+    private static boolean touch(final File f) {
+        return f.isFile() && f.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Delete least recently used entries (all files sharing a key) until
+     * the cache is no larger than {@code maxBytes}
+     */
+    void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final Map<String, Long> lastUsed = new HashMap<String, Long>();
+        Map<String, List<File>> entries = new HashMap<String, List<File>>();
+        long total = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (!f.isFile() || name.endsWith(".tmp")) {
+                continue;
+            }
+            String key = name.substring(0, name.indexOf('.') < 0 ? name.length()
+                                        : name.indexOf('.'));
+            if (!entries.containsKey(key)) {
+                entries.put(key, new ArrayList<File>());
+                lastUsed.put(key, 0L);
+            }
+            entries.get(key).add(f);
+            lastUsed.put(key, Math.max(lastUsed.get(key), f.lastModified()));
+            total += f.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        String[] keys = entries.keySet().toArray(new String[entries.size()]);
+        Arrays.sort(keys, new Comparator<String>() {
+                @Override
+                public int compare(final String a, final String b) {
+                    return Long.compare(lastUsed.get(a), lastUsed.get(b));
+                }
+            });
+        for (String key : keys) {
+            if (total <= maxBytes) {
+                break;
+            }
+            for (File f : entries.get(key)) {
+                long length = f.length();
+                if (f.delete()) {
+                    total -= length;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.civisanalytics.gephi;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.gephi.preview.api.CanvasSize;
+import org.gephi.preview.api.G2DTarget;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.preview.api.PreviewModel;
+import org.gephi.preview.api.PreviewProperties;
+import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.api.Vector;
+import org.gephi.project.api.Workspace;
+
+/**
+ * PNG export that renders the preview one horizontal tile at a time
+ * <p>
+ * Gephi's {@code PNGExporter} renders the whole figure into a single
+ * in-memory image.  Here each tile spans the width of the figure and is
+ * {@code tileSize} rows high; it is rendered with the same scaling and
+ * margins as {@code PNGExporter} would use for the full figure, and its
+ * rows are passed to a {@link PngStreamWriter} before the next tile is
+ * rendered.  Memory use therefore depends on the width of the figure and
+ * the tile size, but not on the height of the figure.
+ * <p>
+ * Every tile draws the whole preview (with drawing outside the tile
+ * clipped), so smaller tiles trade time for memory.
+ */
+public class TiledPngExporter {
+
+    protected final PreviewController previewController;
+
+    /**
+     * Workspace to export
+     */
+    private Workspace workspace;
+    public Workspace getWorkspace() { return workspace; }
+    public void setWorkspace(final Workspace w) { workspace = w; }
+
+    /**
+     * Width of figure in pixels
+     */
+    private int width = 1024;
+    public int getWidth() { return width; }
+    public void setWidth(final int w) { width = w; }
+
+    /**
+     * Height of figure in pixels
+     */
+    private int height = 1024;
+    public int getHeight() { return height; }
+    public void setHeight(final int h) { height = h; }
+
+    /**
+     * Height of each tile in pixels
+     */
+    private int tileSize = 512;
+    public int getTileSize() { return tileSize; }
+    public void setTileSize(final int t) { tileSize = t; }
+
+    /**
+     * Margin around graph, as a percentage of its width and height
+     */
+    private float margin = 4f;
+    public float getMargin() { return margin; }
+    public void setMargin(final float m) { margin = m; }
+
+    /**
+     * Whether to leave the background transparent
+     */
+    private boolean transparentBackground = false;
+    public boolean getTransparentBackground() { return transparentBackground; }
+    public void setTransparentBackground(final boolean t) { transparentBackground = t; }
+
+    /**
+     * Scaling and center of graph coordinates, and background color of
+     * figure, set by {@code prepare}
+     */
+    protected float scaling;
+    protected float centerX;
+    protected float centerY;
+    protected Color background;
+
+    public TiledPngExporter(final PreviewController previewController) {
+        this.previewController = previewController;
+    }
+
+    /**
+     * Render the preview of the workspace into a PNG file
+     *
+     * @param outfile  output file
+     */
+    public void export(final File outfile) throws IOException {
+        PreviewModel model = previewController.getModel(workspace);
+        Color oldBackground = prepare(model);
+        try {
+            int type = transparentBackground
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            BufferedImage tile = new BufferedImage(width, Math.min(tileSize, height), type);
+            PngStreamWriter writer = new PngStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(outfile)),
+                width, height, transparentBackground);
+            try {
+                for (int y = 0; y < height; y += tile.getHeight()) {
+                    renderTile(tile, 0, y);
+                    writer.writeRows(tile, Math.min(tile.getHeight(), height - y));
+                }
+            } finally {
+                writer.close();
+            }
+        } finally {
+            restore(model, oldBackground);
+        }
+    }
+
+    /**
+     * Set export properties of preview, refresh it, and compute the
+     * transformation from graph to figure coordinates
+     *
+     * @param model  preview model of workspace
+     * @return previous background color, to be restored after export
+     */
+    protected Color prepare(final PreviewModel model) {
+        PreviewProperties props = model.getProperties();
+        props.putValue(PreviewProperty.VISIBILITY_RATIO, 1f);
+        props.putValue("width", width);
+        props.putValue("height", height);
+        props.putValue(PreviewProperty.MARGIN, margin);
+        Color oldBackground = props.getColorValue(PreviewProperty.BACKGROUND_COLOR);
+        if (transparentBackground) {
+            props.putValue(PreviewProperty.BACKGROUND_COLOR, null);
+        }
+        previewController.refreshPreview(workspace);
+        background = props.getColorValue(PreviewProperty.BACKGROUND_COLOR);
+
+        // Same fit as Gephi's G2D render target: graph bounds plus margins
+        // on every side, scaled to fit the figure and centered in it
+        CanvasSize canvas = model.getGraphicsCanvasSize();
+        float marginX = canvas.getWidth() * margin / 100f;
+        float marginY = canvas.getHeight() * margin / 100f;
+        float sheetWidth = canvas.getWidth() + 2 * marginX;
+        float sheetHeight = canvas.getHeight() + 2 * marginY;
+        scaling = Math.min(width / sheetWidth, height / sheetHeight);
+        centerX = canvas.getX() + canvas.getWidth() / 2f;
+        centerY = canvas.getY() + canvas.getHeight() / 2f;
+        return oldBackground;
+    }
+
+    /**
+     * Remove export properties from preview
+     *
+     * @param model          preview model of workspace
+     * @param oldBackground  background color to restore
+     */
+    protected void restore(final PreviewModel model, final Color oldBackground) {
+        PreviewProperties props = model.getProperties();
+        props.removeSimpleValue("width");
+        props.removeSimpleValue("height");
+        props.removeSimpleValue(PreviewProperty.MARGIN);
+        props.putValue(PreviewProperty.BACKGROUND_COLOR, oldBackground);
+    }
+
+    /**
+     * Render the part of the figure whose top left corner is at
+     * {@code (x, y)} into an image the size of the part
+     *
+     * @param image  image into which part is rendered
+     * @param x      horizontal offset of part in figure, in pixels
+     * @param y      vertical offset of part in figure, in pixels
+     */
+    protected void renderTile(final BufferedImage image, final int x, final int y) {
+        Graphics2D g2 = createGraphics(image, x, y, 1f);
+        try {
+            previewController.render(new TileTarget(image, g2, scaling), workspace);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Create graphics that draw the part of the figure whose top left
+     * corner is at {@code (x, y)} into an image, after filling the image
+     * with the background color
+     *
+     * @param image  image into which part is rendered
+     * @param x      horizontal offset of part in figure, in pixels
+     * @param y      vertical offset of part in figure, in pixels
+     * @param zoom   scale of figure relative to its full size
+     * @return graphics transformed from graph coordinates to image pixels
+     */
+    protected Graphics2D createGraphics(final BufferedImage image, final int x, final int y,
+                                        final float zoom) {
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                            RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                            RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        if (background != null) {
+            g2.setColor(background);
+            g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+        } else {
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g2.setComposite(AlphaComposite.SrcOver);
+        }
+        g2.translate(width * zoom / 2.0 - x, height * zoom / 2.0 - y);
+        g2.scale(scaling * zoom, scaling * zoom);
+        g2.translate(-centerX, -centerY);
+        return g2;
+    }
+
+    /**
+     * Render target whose graphics draw into one tile of the figure
+     */
+    protected class TileTarget implements G2DTarget {
+
+        private final BufferedImage image;
+        private final Graphics2D graphics;
+        private final float tileScaling;
+
+        /**
+         * @param image        image into which tile is rendered
+         * @param graphics     graphics drawing into image
+         * @param tileScaling  pixels per unit of graph coordinates
+         */
+        TileTarget(final BufferedImage image, final Graphics2D graphics,
+                   final float tileScaling) {
+            this.image = image;
+            this.graphics = graphics;
+            this.tileScaling = tileScaling;
+        }
+
+        @Override
+        public Graphics2D getGraphics() { return graphics; }
+
+        @Override
+        public Image getImage() { return image; }
+
+        @Override
+        public int getWidth() { return image.getWidth(); }
+
+        @Override
+        public int getHeight() { return image.getHeight(); }
+
+        @Override
+        public void resize(final int w, final int h) {
+            throw new UnsupportedOperationException("Tiles cannot be resized");
+        }
+
+        @Override
+        public void setMoving(final boolean moving) { }
+
+        @Override
+        public Vector getTranslate() { return new Vector(-centerX, -centerY); }
+
+        @Override
+        public float getScaling() { return tileScaling; }
+
+        @Override
+        public void setScaling(final float s) {
+            throw new UnsupportedOperationException("Tile scaling is fixed");
+        }
+
+        @Override
+        public void reset() { }
+
+        @Override
+        public void refresh() { }
+    }
+}
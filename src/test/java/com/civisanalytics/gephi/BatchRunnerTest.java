@@ -0,0 +1,168 @@
+package com.civisanalytics.gephi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.writeGml;
+
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test parsing of jobs from manifest, skipping comments and blank lines
+     */
+    @Test
+    public void testReadManifest() throws IOException {
+        File manifest = writeFile(folder, "manifest.txt",
+                                  "# input output options\n"
+                                  + "a.gml a.png\n"
+                                  + "\n"
+                                  + "  b.gml\tb.png --gravity 2.0  \n");
+        List<String[]> jobs = BatchRunner.readManifest(manifest);
+        assertEquals("Incorrect number of jobs", 2, jobs.size());
+        assertArrayEquals(new String[] {"a.gml", "a.png"}, jobs.get(0));
+        assertArrayEquals(new String[] {"b.gml", "b.png", "--gravity", "2.0"}, jobs.get(1));
+    }
+
+    /**
+     * Test that paths and option values in a manifest may be quoted
+     */
+    @Test
+    public void testReadQuotedManifest() throws IOException {
+        File manifest = writeFile(folder, "manifest.txt",
+                                  "\"my graphs/a.gml\" 'my figures/a.png' "
+                                  + "--node_label_column \"full name\"\n"
+                                  + "b\\ c.gml b.png\n");
+        List<String[]> jobs = BatchRunner.readManifest(manifest);
+        assertArrayEquals(new String[] {"my graphs/a.gml", "my figures/a.png",
+                                        "--node_label_column", "full name"}, jobs.get(0));
+        assertArrayEquals(new String[] {"b c.gml", "b.png"}, jobs.get(1));
+    }
+
+    /**
+     * Test that manifest lines without an output file are rejected
+     */
+    @Test(expected = IOException.class)
+    public void testReadBadManifest() throws IOException {
+        BatchRunner.readManifest(writeFile(folder, "manifest.txt", "a.gml\n"));
+    }
+
+    /**
+     * Test that manifest lines with an unterminated quote are rejected
+     */
+    @Test(expected = IOException.class)
+    public void testReadUnterminatedQuote() throws IOException {
+        BatchRunner.readManifest(writeFile(folder, "manifest.txt", "\"a.gml a.png\n"));
+    }
+
+    /**
+     * Test that failed jobs are reported individually, in manifest order
+     */
+    @Test
+    public void testRunFailedJobs() throws IOException, InterruptedException {
+        File manifest = writeFile(folder, "manifest.txt",
+                                  "missing1.gml out1.png\n"
+                                  + "missing2.gml out2.png --no_such_option 1\n");
+        BatchRunner runner = new BatchRunner(new String[] {"--layout_time_seconds", "1"}, 2);
+        List<BatchRunner.JobResult> results = runner.run(BatchRunner.readManifest(manifest));
+
+        assertEquals("Incorrect number of results", 2, results.size());
+        assertEquals("missing1.gml", results.get(0).getInput());
+        assertEquals("missing2.gml", results.get(1).getInput());
+        for (BatchRunner.JobResult r : results) {
+            assertFalse("Job with missing input succeeded", r.isSuccess());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchRunner.writeReport(results, new PrintStream(bytes, true, "UTF-8"));
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        assertEquals("Incorrect number of report lines", 3, lines.length);
+        assertTrue("Incorrect report line", lines[1].startsWith("missing1.gml\tout1.png\tERROR\t"));
+    }
+
+    /**
+     * Test that jobs with CSV input are rejected with a clear message
+     */
+    @Test
+    public void testRunCsvJob() throws IOException, InterruptedException {
+        String edges = writeFile(folder, "edges.csv", "source,target\na,b\n").getPath();
+        String nodes = writeFile(folder, "nodes.csv", "Id\na\nb\n").getPath();
+        File manifest = writeFile(folder, "manifest.txt",
+                                  edges + " out.png --nodes_csv " + nodes + "\n"
+                                  + writeGml(folder, "a.gml", 10, 0).getPath()
+                                  + " out.png --edges_csv " + edges + "\n");
+        BatchRunner runner = new BatchRunner(new String[] {"--layout_time_seconds", "1"}, 1);
+        for (BatchRunner.JobResult r : runner.run(BatchRunner.readManifest(manifest))) {
+            assertFalse("CSV job succeeded", r.isSuccess());
+            assertTrue(r.getMessage(), r.getMessage().startsWith("CSV input is not supported"));
+        }
+    }
+
+    /**
+     * Test that two jobs run concurrently, in separate workspaces, each
+     * write a figure of their own graph
+     */
+    @Test
+    public void testRunConcurrentJobs() throws IOException, InterruptedException {
+        File[] pngs = new File[2];
+        StringBuilder sb = new StringBuilder();
+        for (int job = 0; job < 2; job++) {
+            File gml = writeGml(folder, "graph" + job + ".gml", 100 + 50 * job, job);
+            pngs[job] = new File(folder.getRoot(), "graph" + job + ".png");
+            sb.append(gml.getPath()).append(' ').append(pngs[job].getPath()).append('\n');
+        }
+        File manifest = writeFile(folder, "manifest.txt", sb.toString());
+        BatchRunner runner = new BatchRunner(new String[] {"--layout_iterations", "10",
+                                                           "--tile_size", "128",
+                                                           "--figure_width", "256",
+                                                           "--figure_height", "256"}, 2);
+        List<BatchRunner.JobResult> results = runner.run(BatchRunner.readManifest(manifest));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BatchRunner.writeReport(results, new PrintStream(bytes, true, "UTF-8"));
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        assertEquals("Incorrect number of report lines", 3, lines.length);
+        for (int job = 0; job < 2; job++) {
+            assertTrue("Job " + job + " failed: " + results.get(job).getMessage(),
+                       results.get(job).isSuccess());
+            assertTrue("Incorrect report line " + lines[job + 1],
+                       lines[job + 1].startsWith(results.get(job).getInput() + "\t"
+                                                 + pngs[job].getPath() + "\tOK\t"));
+            BufferedImage image = ImageIO.read(pngs[job]);
+            assertEquals(256, image.getWidth());
+            assertEquals(256, image.getHeight());
+            assertTrue("Figure of job " + job + " is blank", !isBlank(image));
+        }
+        assertFalse("Jobs wrote the same figure",
+                    Arrays.equals(Files.readAllBytes(pngs[0].toPath()),
+                                  Files.readAllBytes(pngs[1].toPath())));
+    }
+
+    private static boolean isBlank(final BufferedImage image) {
+        int background = image.getRGB(0, 0);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) != background) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -2,6 +2,7 @@ package com.civisanalytics.gephi;
 
 import org.junit.Test;
 import static org.junit.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
 
 import static com.civisanalytics.gephi.CreateGephiForceDiagram.BoundedNumericArgument;
 
@@ -116,4 +117,31 @@ public class CreateGephiForceDiagramTest {
             }
         }
     }
+
+    /**
+     * Test that a negative render cache size is rejected
+     */
+    @Test
+    public void testRenderCacheSize() throws ArgumentParserException {
+        ArgumentParser toolParser = CreateGephiForceDiagram.createParser();
+        toolParser.parseArgs(new String[]{"--render_cache_size_mb", "0"});
+        try {
+            toolParser.parseArgs(new String[]{"--render_cache_size_mb", "-1"});
+            fail("No parsing exception for negative render cache size");
+        } catch (ArgumentParserException e) {
+            assert true;
+        }
+    }
+
+    /**
+     * Test removal of options from command-line arguments
+     */
+    @Test
+    public void testRemoveOptions() {
+        String[] args = new String[]{"-gml", "a.gml", "--batch_manifest", "m.txt",
+                                     "--batch_threads=4", "-g", "2.0", "-bt", "3"};
+        String[] kept = CreateGephiForceDiagram.removeOptions(args, "--batch_manifest",
+                                                              "--batch_threads", "-bt");
+        assertArrayEquals(new String[]{"-gml", "a.gml", "-g", "2.0"}, kept);
+    }
 }
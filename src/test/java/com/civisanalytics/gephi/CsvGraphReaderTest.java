@@ -0,0 +1,163 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class CsvGraphReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphModel readCsv(final File nodes, final File edges, final int threads)
+        throws IOException {
+        GraphModel graphModel = newGraphModel();
+        CsvGraphReader reader = new CsvGraphReader(graphModel, Arrays.asList("Centrality"),
+                                                   Arrays.asList("community", "name"));
+        reader.setNumThreads(threads);
+        reader.read(nodes, edges);
+        return graphModel;
+    }
+
+    /**
+     * Test that nodes, requested attributes and edges are read as by
+     * {@code GmlReader}, with numeric attributes as floats
+     */
+    @Test
+    public void testRead() throws IOException {
+        File nodes = writeFile(folder, "nodes.csv",
+                               "Id,Label,centrality,community,name,foo\r\n"
+                               + "1,a,0.5,3,Alpha,x\r\n"
+                               + "2,b,2,4,\"Beta, \"\"the second\"\"\",y\r\n"
+                               + "\r\n"
+                               + "3,c,,4\r\n");
+        File edges = writeFile(folder, "edges.csv",
+                               "source,target,weight\n"
+                               + "1,2,2.0\n"
+                               + "1,2,3.0\n"
+                               + "2,1,\n"
+                               + "3,3,1\n"
+                               + "3,4,1");
+        GraphModel graphModel = readCsv(nodes, edges, 2);
+        Graph graph = graphModel.getGraph();
+        Table table = graphModel.getNodeTable();
+
+        assertEquals(Float.class, table.getColumn("centrality").getTypeClass());
+        assertEquals(String.class, table.getColumn("community").getTypeClass());
+        assertEquals(String.class, table.getColumn("name").getTypeClass());
+        assertNull("Unrequested attribute was read", table.getColumn("foo"));
+
+        assertEquals("Incorrect number of nodes", 4, graph.getNodeCount());
+        Node a = graph.getNode("1");
+        Node b = graph.getNode("2");
+        Node c = graph.getNode("3");
+        Node d = graph.getNode("4");
+        assertEquals("a", a.getLabel());
+        assertEquals(0.5f, (Float) a.getAttribute("centrality"), 0f);
+        assertEquals(2f, (Float) b.getAttribute("centrality"), 0f);
+        assertNull(c.getAttribute("centrality"));
+        assertEquals("4", c.getAttribute("community"));
+        assertEquals("Beta, \"the second\"", b.getAttribute("name"));
+        assertNull(c.getAttribute("name"));
+        assertNull("Node added by edge has attributes", d.getAttribute("community"));
+        assertEquals(10f, d.size(), 0f);
+
+        // Parallel edges are merged, and all edges are directed
+        assertEquals("Incorrect number of edges", 4, graph.getEdgeCount());
+        Edge ab = graph.getEdge(a, b);
+        assertNotNull(ab);
+        assertEquals(5.0, ab.getWeight(), 0.0);
+        assertEquals(1.0, graph.getEdge(b, a).getWeight(), 0.0);
+        assertNotNull("Missing self-loop", graph.getEdge(c, c));
+        for (Edge e : graph.getEdges()) {
+            assertEquals(true, e.isDirected());
+        }
+
+        // Positions are random, and centered on origin
+        float sumX = 0f;
+        for (Node n : graph.getNodes()) {
+            sumX += n.x();
+        }
+        assertEquals(0f, sumX, 1e-3f);
+    }
+
+    /**
+     * Test that a tab-separated file large enough to be parsed in several
+     * chunks is read in order, whatever the number of threads
+     */
+    @Test
+    public void testChunks() throws IOException {
+        int n = 200000;
+        StringBuilder sb = new StringBuilder("target\tsource\n");
+        for (int i = 0; i < n; i++) {
+            sb.append("node").append(i + 1).append('\t').append("node").append(i).append('\n');
+        }
+        File edges = writeFile(folder, "edges.tsv", sb.toString());
+        assertEquals(true, edges.length() > 3 * (1 << 20));
+
+        for (int threads : new int[] {1, 4}) {
+            Graph graph = readCsv(null, edges, threads).getGraph();
+            assertEquals(n + 1, graph.getNodeCount());
+            assertEquals(n, graph.getEdgeCount());
+            Node[] nodes = graph.getNodes().toArray();
+            for (int i = 0; i <= n; i++) {
+                assertEquals("node" + i, nodes[i].getId());
+            }
+            assertNotNull(graph.getEdge(graph.getNode("node0"), graph.getNode("node1")));
+        }
+    }
+
+    /**
+     * Test that nodes named only by edges, which have no size, are left
+     * unlabeled, and do not lower the size above which nodes are labeled
+     */
+    @Test
+    public void testLabelNodesNamedOnlyByEdges() throws IOException, GephiForceDiagramException {
+        StringBuilder nodes = new StringBuilder("Id,centrality,name\n");
+        StringBuilder edges = new StringBuilder("source,target\n");
+        for (int i = 1; i <= 10; i++) {
+            nodes.append("n").append(i).append(',').append(i).append(",n").append(i).append('\n');
+        }
+        for (int i = 0; i < 4; i++) {
+            edges.append("n1,e").append(i).append('\n');
+        }
+        readCsv(writeFile(folder, "nodes.csv", nodes.toString()),
+                writeFile(folder, "edges.csv", edges.toString()), 1);
+
+        GephiForceDiagram gephiDiagram = new GephiForceDiagram();
+        gephiDiagram.setNodeSizeColumn("centrality");
+        gephiDiagram.setNodeLabelColumn("name");
+        gephiDiagram.setLabelPercentile(50.0);
+        gephiDiagram.getGephiState().initializeGraphModel();
+        gephiDiagram.labelNodes();
+        Graph graph = gephiDiagram.getGephiState().graph;
+        assertEquals(14, graph.getNodeCount());
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i > 5 ? "n" + i : "", graph.getNode("n" + i).getLabel());
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("", graph.getNode("e" + i).getLabel());
+        }
+    }
+
+    /**
+     * Test that a missing required column is reported
+     */
+    @Test(expected = IOException.class)
+    public void testMissingColumn() throws IOException {
+        readCsv(null, writeFile(folder, "edges.csv", "from,target\n1,2\n"), 1);
+    }
+}
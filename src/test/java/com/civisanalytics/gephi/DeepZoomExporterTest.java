@@ -0,0 +1,152 @@
+package com.civisanalytics.gephi;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.Node;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.preview.api.PreviewModel;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class DeepZoomExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Workspace currentWorkspace() {
+        return Lookup.getDefault().lookup(ProjectController.class).getCurrentWorkspace();
+    }
+
+    private static DeepZoomExporter exporter(final int width, final int height) {
+        DeepZoomExporter exporter = new DeepZoomExporter(
+            Lookup.getDefault().lookup(PreviewController.class));
+        exporter.setWorkspace(currentWorkspace());
+        exporter.setWidth(width);
+        exporter.setHeight(height);
+        exporter.setTileSize(64);
+        exporter.setNumThreads(3);
+        return exporter;
+    }
+
+    @Test
+    public void testLevels() {
+        assertEquals(0, DeepZoomExporter.getMaxLevel(1, 1));
+        assertEquals(8, DeepZoomExporter.getMaxLevel(256, 100));
+        assertEquals(9, DeepZoomExporter.getMaxLevel(257, 100));
+        assertEquals(new File(folder.getRoot(), "figure_files"),
+                     DeepZoomExporter.getTileDirectory(new File(folder.getRoot(), "figure.dzi")));
+    }
+
+    /**
+     * Test that tiles of the full-size level match the same parts of the
+     * figure rendered by Gephi's preview controller, with tiles along the
+     * diagonal of the graph written and those away from it skipped
+     */
+    @Test
+    public void testMatchesPreview() throws IOException {
+        Graph graph = newGraphModel().getGraph();
+        GraphFactory factory = graph.getModel().factory();
+        Random random = new Random(5L);
+        Node previous = null;
+        for (int i = 0; i < 40; i++) {
+            Node node = factory.newNode(String.valueOf(i));
+            float t = random.nextFloat() * 1000f;
+            node.setX(t);
+            node.setY(t + random.nextFloat() * 20f);
+            node.setSize(5f);
+            graph.addNode(node);
+            if (previous != null) {
+                graph.addEdge(factory.newEdge(previous, node));
+            }
+            previous = node;
+        }
+
+        File descriptor = new File(folder.getRoot(), "figure.dzi");
+        DeepZoomExporter exporter = exporter(320, 320);
+        exporter.export(descriptor);
+        String xml = new String(Files.readAllBytes(descriptor.toPath()), "UTF-8");
+        assertTrue(xml.contains("TileSize=\"64\""));
+        assertTrue(xml.contains("<Size Width=\"320\" Height=\"320\"/>"));
+        File tileDir = DeepZoomExporter.getTileDirectory(descriptor);
+        for (int level = 0; level <= 9; level++) {
+            assertTrue(new File(tileDir, String.valueOf(level)).isDirectory());
+        }
+        assertTrue(new File(tileDir, "4/0_0.png").exists());
+        assertTrue(exporter.getTilesWritten() > 0);
+        assertTrue(exporter.getTilesSkipped() > 0);
+
+        // Preview coordinates run up the page, so the diagonal is drawn
+        // from bottom left to top right
+        File lastLevel = new File(tileDir, "9");
+        assertTrue(new File(lastLevel, "0_4.png").exists());
+        assertTrue(new File(lastLevel, "4_0.png").exists());
+        assertFalse(new File(lastLevel, "0_0.png").exists());
+        assertFalse(new File(lastLevel, "4_4.png").exists());
+
+        TiledPngExporter reference = new TiledPngExporter(
+            Lookup.getDefault().lookup(PreviewController.class));
+        reference.setWorkspace(currentWorkspace());
+        reference.setWidth(320);
+        reference.setHeight(320);
+        PreviewModel model = Lookup.getDefault().lookup(PreviewController.class)
+            .getModel(currentWorkspace());
+        Color oldBackground = reference.prepare(model);
+        BufferedImage expected = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                reference.renderTile(expected, col * 64, row * 64);
+                File tile = new File(lastLevel, col + "_" + row + ".png");
+                BufferedImage actual = tile.exists() ? ImageIO.read(tile) : null;
+                for (int y = 0; y < 64; y++) {
+                    for (int x = 0; x < 64; x++) {
+                        assertEquals("Pixel " + x + "," + y + " of tile " + tile.getName(),
+                                     expected.getRGB(x, y),
+                                     actual != null ? actual.getRGB(x, y) : 0xffffffff);
+                    }
+                }
+            }
+        }
+        reference.restore(model, oldBackground);
+    }
+
+    /**
+     * Test that edges are dropped from levels with too few pixels per edge
+     */
+    @Test
+    public void testEdgeLevelOfDetail() throws IOException {
+        Graph graph = newGraphModel().getGraph();
+        GraphFactory factory = graph.getModel().factory();
+        Node a = factory.newNode("a");
+        Node b = factory.newNode("b");
+        b.setX(1000f);
+        graph.addNode(a);
+        graph.addNode(b);
+        graph.addEdge(factory.newEdge(a, b, false));
+
+        File descriptor = new File(folder.getRoot(), "edge.dzi");
+        File middle = new File(DeepZoomExporter.getTileDirectory(descriptor), "9/2_2.png");
+        DeepZoomExporter exporter = exporter(320, 320);
+        exporter.export(descriptor);
+        assertTrue("Edge not drawn", middle.exists());
+
+        // One edge needs more than the full-size figure's pixels
+        exporter.setMinEdgePixels(2 * 320 * 320);
+        exporter.export(descriptor);
+        assertFalse("Edge drawn", middle.exists());
+    }
+}
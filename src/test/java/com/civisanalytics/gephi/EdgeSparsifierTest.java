@@ -0,0 +1,191 @@
+package com.civisanalytics.gephi;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class EdgeSparsifierTest {
+
+    private GraphModel graphModel;
+    private Graph graph;
+
+    /**
+     * Build a star from hub h to leaves l1 to l6, each edge weighted by the
+     * number of its leaf, with an edge of weight 0.5 from l1 to l2
+     */
+    @Before
+    public void setUp() {
+        graphModel = newGraphModel();
+        graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+        Node hub = factory.newNode("h");
+        graph.addNode(hub);
+        for (int i = 1; i <= 6; i++) {
+            Node leaf = factory.newNode("l" + i);
+            graph.addNode(leaf);
+            graph.addEdge(factory.newEdge(hub, leaf, 0, i, true));
+        }
+        graph.addEdge(factory.newEdge(graph.getNode("l1"), graph.getNode("l2"), 0, 0.5, true));
+    }
+
+    /**
+     * Build a complete graph with random weights in place of the star
+     */
+    private void buildCompleteGraph(final int numNodes) {
+        graph.clear();
+        GraphFactory factory = graphModel.factory();
+        Random rand = new Random(1L);
+        Node[] nodes = new Node[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            nodes[i] = factory.newNode("n" + i);
+            graph.addNode(nodes[i]);
+            for (int j = 0; j < i; j++) {
+                graph.addEdge(factory.newEdge(nodes[j], nodes[i], 0,
+                                              1.0 + rand.nextDouble(), true));
+            }
+        }
+    }
+
+    private static int countKept(final double[] weights) {
+        int kept = 0;
+        for (double w : weights) {
+            if (w > 0) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Test that threshold sparsification keeps edges of at least the threshold weight
+     */
+    @Test
+    public void testThreshold() {
+        EdgeSparsifier sparsifier = new EdgeSparsifier("threshold");
+        sparsifier.setThreshold(3.0);
+        Edge[] edges = graph.getEdges().toArray();
+        double[] weights = sparsifier.select(graph, edges);
+        assertEquals(4, countKept(weights));
+        for (int e = 0; e < edges.length; e++) {
+            assertEquals(edges[e].getWeight() >= 3.0 ? edges[e].getWeight() : 0.0,
+                         weights[e], 0.0);
+        }
+    }
+
+    /**
+     * Test that top_k sparsification keeps an edge that is among the k
+     * heaviest of either endpoint
+     */
+    @Test
+    public void testTopK() {
+        EdgeSparsifier sparsifier = new EdgeSparsifier("top_k");
+        sparsifier.setTopK(1);
+        Edge[] edges = graph.getEdges().toArray();
+        double[] weights = sparsifier.select(graph, edges);
+
+        // Every hub edge is the heaviest of its leaf, but l1 - l2 is the
+        //   heaviest of neither endpoint
+        assertEquals(6, countKept(weights));
+        for (int e = 0; e < edges.length; e++) {
+            boolean hubEdge = edges[e].getSource().getId().equals("h");
+            assertEquals(hubEdge, weights[e] > 0);
+        }
+    }
+
+    /**
+     * Test that sampling keeps about the given fraction of edges, with at
+     * least one edge per node, and weights raised to make up for dropped edges
+     */
+    @Test
+    public void testSample() {
+        buildCompleteGraph(40);
+        EdgeSparsifier sparsifier = new EdgeSparsifier("sample");
+        sparsifier.setFraction(0.2);
+        sparsifier.setRandom(new Random(2L));
+        Edge[] edges = graph.getEdges().toArray();
+        double[] weights = sparsifier.select(graph, edges);
+
+        int kept = countKept(weights);
+        assertTrue("Kept " + kept + " of " + edges.length,
+                   kept > 0.15 * edges.length && kept < 0.3 * edges.length);
+        for (Node n : graph.getNodes()) {
+            boolean connected = false;
+            for (int e = 0; e < edges.length; e++) {
+                if (weights[e] > 0
+                    && (edges[e].getSource() == n || edges[e].getTarget() == n)) {
+                    connected = true;
+                }
+            }
+            assertTrue("Node " + n.getId() + " cut off", connected);
+        }
+        for (int e = 0; e < edges.length; e++) {
+            assertTrue(weights[e] == 0.0 || weights[e] >= edges[e].getWeight());
+        }
+    }
+
+    /**
+     * Test that the sampling scale gives the target sum of probabilities,
+     * with probabilities capped at 1
+     */
+    @Test
+    public void testSampleScale() {
+        assertEquals(0.5, EdgeSparsifier.sampleScale(new double[] {1, 1, 1, 1}, 2.0), 1e-9);
+        assertEquals(0.5, EdgeSparsifier.sampleScale(new double[] {10, 1, 1}, 2.0), 1e-9);
+    }
+
+    /**
+     * Test that dropped edges are removed from the graph, and that kept
+     * edges get their original weights back
+     */
+    @Test
+    public void testApplyRemove() {
+        buildCompleteGraph(20);
+        int numEdges = graph.getEdgeCount();
+        double[] original = new double[numEdges];
+        Edge[] edges = graph.getEdges().toArray();
+        for (int e = 0; e < numEdges; e++) {
+            original[e] = edges[e].getWeight();
+        }
+
+        EdgeSparsifier sparsifier = new EdgeSparsifier("sample");
+        sparsifier.setFraction(0.3);
+        sparsifier.setRandom(new Random(3L));
+        int kept = sparsifier.apply(graphModel, false);
+        assertTrue(kept < numEdges);
+        assertEquals(kept, graph.getEdgeCount());
+        assertEquals(20, graph.getNodeCount());
+
+        sparsifier.restore();
+        assertEquals(kept, graph.getEdgeCount());
+        for (int e = 0; e < numEdges; e++) {
+            if (graph.contains(edges[e])) {
+                assertEquals(original[e], edges[e].getWeight(), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test that dropped edges are hidden from the visible graph during
+     * layout, and shown again afterwards
+     */
+    @Test
+    public void testApplyKeepDropped() {
+        EdgeSparsifier sparsifier = new EdgeSparsifier("threshold");
+        sparsifier.setThreshold(3.0);
+        assertEquals(4, sparsifier.apply(graphModel, true));
+        assertEquals(4, graphModel.getGraphVisible().getEdgeCount());
+        assertEquals(7, graphModel.getGraphVisible().getNodeCount());
+        assertEquals(7, graph.getEdgeCount());
+
+        sparsifier.restore();
+        assertEquals(7, graphModel.getGraphVisible().getEdgeCount());
+    }
+}
@@ -0,0 +1,143 @@
+package com.civisanalytics.gephi;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ForceAtlas2EngineTest {
+
+    /**
+     * Build an engine for two cliques of {@code k} nodes each, joined by a
+     * single edge, with random initial positions
+     */
+    private ForceAtlas2Engine twoCliques(final int k, final long seed, final ForkJoinPool pool) {
+        int n = 2 * k;
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + (k - 1) + ((i == 0 || i == k) ? 1 : 0);
+        }
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            int p = offsets[i];
+            int base = i < k ? 0 : k;
+            for (int j = base; j < base + k; j++) {
+                if (j != i) {
+                    neighbors[p] = j;
+                    weights[p++] = 1.0;
+                }
+            }
+            if (i == 0 || i == k) {
+                neighbors[p] = i == 0 ? k : 0;
+                weights[p] = 1.0;
+            }
+        }
+        return randomEngine(offsets, neighbors, weights, seed, pool);
+    }
+
+    private ForceAtlas2Engine randomEngine(final int[] offsets, final int[] neighbors,
+                                           final double[] weights, final long seed,
+                                           final ForkJoinPool pool) {
+        int n = offsets.length - 1;
+        Random rand = new Random(seed);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double[] sizes = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 100 * rand.nextDouble() - 50;
+            ys[i] = 100 * rand.nextDouble() - 50;
+            sizes[i] = 1.0;
+        }
+        return new ForceAtlas2Engine(xs, ys, sizes, offsets, neighbors, weights, pool);
+    }
+
+    /**
+     * Build an engine for a sparse random graph, large enough to be split
+     * across many fork-join tasks
+     */
+    private ForceAtlas2Engine randomGraph(final int n, final long seed, final ForkJoinPool pool) {
+        Random rand = new Random(seed);
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + 3;
+        }
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int k = 0; k < neighbors.length; k++) {
+            neighbors[k] = rand.nextInt(n);
+            weights[k] = 1.0;
+        }
+        return randomEngine(offsets, neighbors, weights, seed, pool);
+    }
+
+    private double distance(final ForceAtlas2Engine e, final int i, final int j) {
+        double dx = e.getX()[i] - e.getX()[j];
+        double dy = e.getY()[i] - e.getY()[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Test that nodes in the same clique end up closer to one another
+     * than to nodes in the other clique
+     */
+    @Test
+    public void testCliquesSeparate() {
+        int k = 30;
+        ForceAtlas2Engine engine = twoCliques(k, 1L, new ForkJoinPool(2));
+        for (int it = 0; it < 500; it++) {
+            engine.step();
+        }
+
+        double within = 0;
+        double between = 0;
+        for (int i = 0; i < 2 * k; i++) {
+            for (int j = i + 1; j < 2 * k; j++) {
+                if ((i < k) == (j < k)) {
+                    within += distance(engine, i, j);
+                } else {
+                    between += distance(engine, i, j);
+                }
+            }
+        }
+        within /= k * (k - 1);
+        between /= k * k;
+        assertTrue("Cliques not separated by layout", 2 * within < between);
+    }
+
+    /**
+     * Test that layout results do not depend on the number of threads
+     */
+    @Test
+    public void testDeterministicAcrossThreads() {
+        ForceAtlas2Engine single = randomGraph(5000, 7L, new ForkJoinPool(1));
+        ForceAtlas2Engine multi = randomGraph(5000, 7L, new ForkJoinPool(4));
+        for (int it = 0; it < 10; it++) {
+            single.step();
+            multi.step();
+        }
+        assertArrayEquals(single.getX(), multi.getX(), 0.0);
+        assertArrayEquals(single.getY(), multi.getY(), 0.0);
+        assertEquals(single.getGlobalSwing(), multi.getGlobalSwing(), 0.0);
+    }
+
+    /**
+     * Test that fixed nodes are not moved
+     */
+    @Test
+    public void testFixedNodes() {
+        ForceAtlas2Engine engine = twoCliques(10, 3L, new ForkJoinPool(2));
+        double x0 = engine.getX()[0];
+        double y0 = engine.getY()[0];
+        double x1 = engine.getX()[1];
+        engine.setFixed(0, true);
+        for (int it = 0; it < 20; it++) {
+            engine.step();
+        }
+        assertEquals("Fixed node moved", x0, engine.getX()[0], 0.0);
+        assertEquals("Fixed node moved", y0, engine.getY()[0], 0.0);
+        assertTrue("Free node did not move", x1 != engine.getX()[1]);
+    }
+}
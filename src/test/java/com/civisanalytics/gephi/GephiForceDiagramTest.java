@@ -1,5 +1,10 @@
 package com.civisanalytics.gephi;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
@@ -9,11 +14,13 @@ import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import org.mockito.ArgumentCaptor;
 import org.gephi.graph.api.Node;
@@ -24,11 +31,13 @@ import org.gephi.graph.api.GraphFactory;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.Table;
 import org.gephi.appearance.api.Function;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import org.gephi.project.api.ProjectController;
 import org.openide.util.Lookup;
 import org.gephi.datalab.api.AttributeColumnsController;
 import org.gephi.layout.plugin.AutoLayout;
 import org.gephi.layout.spi.Layout;
+import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2Builder;
 import org.gephi.appearance.plugin.RankingNodeSizeTransformer;
 import org.gephi.appearance.plugin.PartitionElementColorTransformer;
 import static com.civisanalytics.gephi.GephiUtils.getNodeRankingFunction;
@@ -135,6 +144,9 @@ public class GephiForceDiagramTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Test that string and numeric attributes of nodes can be accessed
      */
@@ -211,18 +223,60 @@ public class GephiForceDiagramTest {
                      floatCol, floatToFloat);
 
         Column strCol = attrTable.getColumn("string_column");
+        int numColumns = attrTable.countColumns();
         Column strToFloat = getNumericColumn(gephiDiagram.getGephiState(),
                                              strCol, Float.class);
         assertEquals("Converted column has incorrect name",
-                     strCol.getTitle() + "_numeric", strToFloat.getTitle());
+                     strCol.getTitle(), strToFloat.getTitle());
         assertTrue("String column not converted to float", strToFloat.isNumber());
+        assertEquals("Column not converted in place",
+                     numColumns, attrTable.countColumns());
+        assertEquals("Converted column not in table",
+                     strToFloat, attrTable.getColumn("string_column"));
+        assertEquals("Value not converted",
+                     5f, (Float) graph.getNode("5").getAttribute(strToFloat), 0f);
 
         Column strToFloat2 = getNumericColumn(gephiDiagram.getGephiState(),
-                                              strCol, Float.class);
+                                              attrTable.getColumn("string_column"), Float.class);
         assertEquals("Column converted twice",
                      strToFloat, strToFloat2);
     }
 
+    /**
+     * Test that nodes are ranked by a string column once it has been
+     * converted to numbers in place
+     */
+    @Test
+    public void testResizeNodesByStringColumn() {
+        gephiDiagram.getGephiState().initializeGraphModel();
+        gephiDiagram.setNodeSizeColumn("string_column");
+        gephiDiagram.convertNumericColumns();
+        gephiDiagram.resizeNodes();
+        assertEquals("Largest value not given largest size",
+                     gephiDiagram.getMaxNodeSize(), graph.getNode("109").size(), 1e-3f);
+        assertEquals("Smallest value not given smallest size",
+                     gephiDiagram.getMinNodeSize(), graph.getNode("0").size(), 1e-3f);
+    }
+
+    /**
+     * Test that a string column sizing and labeling nodes is ranked by a
+     * numeric copy, so that labels keep their text
+     */
+    @Test
+    public void testSizeAndLabelByStringColumn() throws GephiForceDiagramException {
+        gephiDiagram.getGephiState().initializeGraphModel();
+        gephiDiagram.setNodeSizeColumn("string_column");
+        gephiDiagram.setNodeLabelColumn("string_column");
+        gephiDiagram.convertNumericColumns();
+        assertEquals(String.class, attrTable.getColumn("string_column").getTypeClass());
+        gephiDiagram.resizeNodes();
+        gephiDiagram.labelNodes();
+        assertEquals("Largest value not given largest size",
+                     gephiDiagram.getMaxNodeSize(), graph.getNode("109").size(), 1e-3f);
+        assertEquals("109", graph.getNode("109").getLabel());
+        assertEquals("", graph.getNode("0").getLabel());
+    }
+
     /**
      * Test filtering of graph by node degree.
      * <p>
@@ -245,6 +299,33 @@ public class GephiForceDiagramTest {
                      100, graph.getNodeCount());
     }
 
+    /**
+     * Test that filtering by node degree removes a long chain of nodes
+     * completely, even though only its end initially falls below the cutoff.
+     */
+    @Test
+    public void testDegreeFilterChain() {
+        // Attach chain of nodes to first fully-connected node
+        int chainLength = 20;
+        GraphFactory graphFactory = graphModel.factory();
+        Node prev = graph.getNode("0");
+        for (int i = 0; i < chainLength; i++) {
+            Node n = graphFactory.newNode("chain" + i);
+            graph.addNode(n);
+            graph.addEdge(graphFactory.newEdge(prev, n));
+            graph.addEdge(graphFactory.newEdge(n, prev));
+            prev = n;
+        }
+        assertEquals("Unexpected graph size for tests",
+                     110 + chainLength, graph.getNodeCount());
+
+        // Interior chain nodes have degree 4, and the end of the chain degree 2
+        gephiDiagram.setDegreeFilter(3);
+        gephiDiagram.degreeFilterNodes();
+        assertEquals("Error filtering chain by node degree",
+                     110, graph.getNodeCount());
+    }
+
     /**
      * Test validation of columns
      */
@@ -291,6 +372,17 @@ public class GephiForceDiagramTest {
             assertEquals(targetNames[i], dp.getCanonicalName());
             assertEquals(targetVals[i], dp.getValue(0.0f));
         }
+        assertEquals(4, dplistArg.getValue().length);
+
+        // A fixed number of iterations runs on one thread, to be reproducible
+        gephiDiagram.setLayoutIterations(40);
+        autoLayout = spy(new AutoLayout(gephiDiagram.getLayoutTime(), TimeUnit.SECONDS));
+        autoLayout.setGraphModel(graphModel);
+        gephiDiagram.initializeLayout(autoLayout);
+        verify(autoLayout).addLayout(any(Layout.class), eq(1.0f), dplistArg.capture());
+        AutoLayout.DynamicProperty dp = dplistArg.getValue()[4];
+        assertEquals("ForceAtlas2.threads.name", dp.getCanonicalName());
+        assertEquals(1, dp.getValue(0.0f));
     }
 
     /**
@@ -329,6 +421,31 @@ public class GephiForceDiagramTest {
         assertEquals("Error coloring nodes", 8, colorsSeen.size());
     }
 
+    /**
+     * Test that percentiles found by selection match those of commons-math,
+     * including for repeated values and NaN
+     */
+    @Test
+    public void testPercentile() {
+        Random random = new Random(4L);
+        double[] ps = {0.01, 1.0, 25.0, 50.0, 98.0, 99.99, 100.0};
+        for (int n = 1; n < 300; n += 7) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = i % 5 == 0 ? random.nextInt(4) : random.nextGaussian();
+            }
+            if (n % 3 == 0) {
+                values[n / 2] = Double.NaN;
+            }
+            for (double p : ps) {
+                double expected = new Percentile().evaluate(values, p);
+                assertEquals("Percentile " + p + " of " + n + " values", expected,
+                             GephiUtils.percentile(values.clone(), p), 0.0);
+            }
+        }
+        assertTrue(Double.isNaN(GephiUtils.percentile(new double[] {Double.NaN}, 50.0)));
+    }
+
     /**
      * Test that half of all nodes are given a visible label
      * (as specified by {@code labelPercentile})
@@ -356,6 +473,331 @@ public class GephiForceDiagramTest {
      */
     @Test
     public void testDoLayout() throws GephiForceDiagramException {
+        assertOutliersOnPeriphery();
+    }
+
+    /**
+     * Test that the multithreaded ForceAtlas2 layout also places less
+     * strongly-connected nodes on the periphery of the figure.
+     */
+    @Test
+    public void testDoFastLayout() throws GephiForceDiagramException {
+        gephiDiagram.setLayoutAlgorithm("force_atlas2_fast");
+        assertOutliersOnPeriphery();
+    }
+
+    /**
+     * Test that the multilevel ForceAtlas2 layout also places less
+     * strongly-connected nodes on the periphery of the figure.
+     */
+    @Test
+    public void testDoMultilevelLayout() throws GephiForceDiagramException {
+        gephiDiagram.setLayoutAlgorithm("force_atlas2_multilevel");
+        assertOutliersOnPeriphery();
+    }
+
+    /**
+     * Test that a fixed number of iterations from seeded positions gives
+     * identical layouts, for each ForceAtlas2 algorithm
+     */
+    @Test
+    public void testReproducibleLayout() throws GephiForceDiagramException {
+        gephiDiagram.setLayoutIterations(40);
+        gephiDiagram.setSeed(7L);
+        for (String algorithm : new String[] {"force_atlas2", "force_atlas2_fast",
+                                              "force_atlas2_multilevel"}) {
+            gephiDiagram.setLayoutAlgorithm(algorithm);
+            float[][] positions = new float[2][];
+            for (int run = 0; run < 2; run++) {
+                GmlReader.placeNodes(graph, true, new Random(gephiDiagram.getSeed()));
+                gephiDiagram.executeLayout();
+                Node[] nodes = graph.getNodes().toArray();
+                positions[run] = new float[2 * nodes.length];
+                for (int i = 0; i < nodes.length; i++) {
+                    positions[run][2 * i] = nodes[i].x();
+                    positions[run][2 * i + 1] = nodes[i].y();
+                }
+
+                List<PhaseMetrics.Phase> phases = gephiDiagram.getMetrics().getPhases();
+                assertEquals("Wrong number of iterations of " + algorithm, 40,
+                             phases.get(phases.size() - 1).getCounts().get("iterations"));
+            }
+            assertTrue("Layouts by " + algorithm + " differ",
+                       Arrays.equals(positions[0], positions[1]));
+        }
+    }
+
+    /**
+     * Test that a repeated run reuses its cached figure, and that a run
+     * differing only in colors reuses the cached layout
+     */
+    @Test
+    public void testRenderCache() throws GephiForceDiagramException, IOException {
+        GraphGenerator generator = new GraphGenerator();
+        generator.setNumNodes(200);
+        File gml = folder.newFile("graph.gml");
+        generator.writeGml(gml);
+
+        gephiDiagram.setNodeSizeColumn("centrality");
+        gephiDiagram.setNodeLabelColumn("name");
+        gephiDiagram.setNodeColorColumn("community");
+        gephiDiagram.setLabelAdjust(false);
+        gephiDiagram.setFigureWidth(256);
+        gephiDiagram.setFigureHeight(256);
+        gephiDiagram.setTileSize(128);
+        gephiDiagram.setLayoutIterations(10);
+        gephiDiagram.setSeed(1L);
+        gephiDiagram.setRenderCacheDir(folder.newFolder("cache"));
+
+        File[] outfiles = new File[3];
+        Object[] cached = new Object[3];
+        for (int run = 0; run < 3; run++) {
+            if (run == 2) {
+                gephiDiagram.setNumColors(4);
+            }
+            outfiles[run] = new File(folder.getRoot(), "out" + run + ".png");
+            gephiDiagram.run(gml, outfiles[run]);
+            List<PhaseMetrics.Phase> phases = gephiDiagram.getMetrics().getPhases();
+            assertEquals("Figure of run " + run + " wrongly cached", run == 1,
+                         phases.get(0).getCounts().get("figure_cached"));
+            for (PhaseMetrics.Phase phase : phases) {
+                if (phase.getCounts().containsKey("layout_cached")) {
+                    cached[run] = phase.getCounts().get("layout_cached");
+                }
+            }
+        }
+
+        // Layout is looked up only when the figure is not cached
+        assertEquals(false, cached[0]);
+        assertEquals(null, cached[1]);
+        assertEquals(true, cached[2]);
+        assertEquals(outfiles[0].length(), outfiles[1].length());
+        assertTrue(outfiles[2].length() > 0);
+    }
+
+    /**
+     * Test that restyling saved positions applies new colors without moving
+     * nodes or running layout
+     */
+    @Test
+    public void testRestyle() throws GephiForceDiagramException, IOException {
+        GraphGenerator generator = new GraphGenerator();
+        generator.setNumNodes(200);
+        File gml = folder.newFile("graph.gml");
+        generator.writeGml(gml);
+
+        gephiDiagram.setNodeSizeColumn("centrality");
+        gephiDiagram.setNodeLabelColumn("name");
+        gephiDiagram.setNodeColorColumn("community");
+        gephiDiagram.setLabelAdjust(false);
+        gephiDiagram.setFigureWidth(256);
+        gephiDiagram.setFigureHeight(256);
+        gephiDiagram.setTileSize(128);
+        gephiDiagram.setLayoutIterations(10);
+        File saved = new File(folder.getRoot(), "saved.csv");
+        gephiDiagram.setPositionsOutputFile(saved);
+        gephiDiagram.run(gml, new File(folder.getRoot(), "out.png"));
+
+        gephiDiagram.setRestyle(true);
+        gephiDiagram.setPositionsInputFile(saved);
+        gephiDiagram.setNumColors(4);
+        File restyled = new File(folder.getRoot(), "restyled.csv");
+        gephiDiagram.setPositionsOutputFile(restyled);
+        gephiDiagram.run(gml, new File(folder.getRoot(), "restyled.png"));
+
+        for (PhaseMetrics.Phase phase : gephiDiagram.getMetrics().getPhases()) {
+            assertTrue("Layout ran while restyling", !phase.getName().equals("layout"));
+        }
+        List<String> before = Files.readAllLines(saved.toPath(), StandardCharsets.UTF_8);
+        List<String> after = Files.readAllLines(restyled.toPath(), StandardCharsets.UTF_8);
+        assertEquals(before.size(), after.size());
+        Set<String> colors = new HashSet<String>();
+        for (int i = 1; i < before.size(); i++) {
+            List<String> b = LayoutIO.parseCsvLine(before.get(i));
+            List<String> a = LayoutIO.parseCsvLine(after.get(i));
+            // Columns id, x, y, size, color, label
+            assertEquals(b.subList(0, 4), a.subList(0, 4));
+            colors.add(a.get(4));
+        }
+        assertTrue("Too many colors after restyling", colors.size() <= 4);
+    }
+
+    /**
+     * Test that restyling renders all edges of the graph, without
+     * sparsifying them for the layout it skips
+     */
+    @Test
+    public void testRestyleWithoutSparsification()
+        throws GephiForceDiagramException, IOException {
+        GraphGenerator generator = new GraphGenerator();
+        generator.setNumNodes(200);
+        File gml = folder.newFile("graph.gml");
+        generator.writeGml(gml);
+
+        gephiDiagram.setNodeSizeColumn("centrality");
+        gephiDiagram.setNodeLabelColumn("name");
+        gephiDiagram.setNodeColorColumn("community");
+        gephiDiagram.setFigureWidth(256);
+        gephiDiagram.setFigureHeight(256);
+        gephiDiagram.setTileSize(128);
+        gephiDiagram.setLayoutIterations(10);
+        File saved = new File(folder.getRoot(), "saved.csv");
+        gephiDiagram.setPositionsOutputFile(saved);
+        gephiDiagram.run(gml, new File(folder.getRoot(), "out.png"));
+        int numEdges = gephiDiagram.getGephiState().graph.getEdgeCount();
+
+        gephiDiagram.setRestyle(true);
+        gephiDiagram.setPositionsInputFile(saved);
+        gephiDiagram.setPositionsOutputFile(null);
+        gephiDiagram.setEdgeSparsification("top_k");
+        gephiDiagram.setSparsifyTopK(1);
+        gephiDiagram.run(gml, new File(folder.getRoot(), "restyled.png"));
+
+        for (PhaseMetrics.Phase phase : gephiDiagram.getMetrics().getPhases()) {
+            assertTrue("Edges sparsified while restyling", !phase.getName().equals("sparsify"));
+        }
+        assertEquals(numEdges, gephiDiagram.getGephiState().graph.getEdgeCount());
+    }
+
+    /**
+     * Test that restyling without saved positions is rejected
+     */
+    @Test(expected = GephiForceDiagramException.class)
+    public void testRestyleWithoutPositions() throws GephiForceDiagramException, IOException {
+        gephiDiagram.setRestyle(true);
+        gephiDiagram.run(folder.newFile("graph.gml"), new File(folder.getRoot(), "out.png"));
+    }
+
+    /**
+     * Test that incremental layout moves only nodes near changed nodes, and
+     * releases the nodes it held fixed
+     */
+    @Test
+    public void testIncrementalLayout() throws GephiForceDiagramException {
+        gephiDiagram.setLayoutIterations(10);
+        gephiDiagram.setRefinementHops(0);
+        gephiDiagram.setGlobalPassThreshold(Double.POSITIVE_INFINITY);
+        for (String algorithm : new String[] {"force_atlas2", "force_atlas2_fast"}) {
+            gephiDiagram.setLayoutAlgorithm(algorithm);
+            GmlReader.placeNodes(graph, true, new Random(1L));
+            Node[] nodes = graph.getNodes().toArray();
+            float[] xs = new float[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                xs[i] = nodes[i].x();
+            }
+
+            // An outlier is adjacent to the first three connected nodes
+            Node changed = graph.getNode(String.valueOf(numConnectedNodes));
+            gephiDiagram.executeIncrementalLayout(Arrays.asList(changed));
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == changed) {
+                    assertTrue("Changed node not moved by " + algorithm, nodes[i].x() != xs[i]);
+                } else {
+                    assertEquals("Unchanged node moved by " + algorithm, xs[i], nodes[i].x(), 0f);
+                }
+                assertTrue("Node left fixed", !nodes[i].isFixed());
+            }
+
+            for (PhaseMetrics.Phase phase : gephiDiagram.getMetrics().getPhases()) {
+                if (phase.getName().equals("select_neighborhood")) {
+                    assertEquals(1, phase.getCounts().get("moved_nodes"));
+                    assertEquals(3, phase.getCounts().get("boundary_nodes"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the local pass of incremental layout runs fewer iterations
+     * than a full layout
+     */
+    @Test
+    public void testIncrementalLayoutBudget() throws GephiForceDiagramException {
+        gephiDiagram.setLayoutIterations(100);
+        gephiDiagram.setRefinementHops(0);
+        gephiDiagram.setGlobalPassThreshold(Double.POSITIVE_INFINITY);
+        gephiDiagram.setLayoutAlgorithm("force_atlas2_fast");
+        GmlReader.placeNodes(graph, true, new Random(1L));
+        gephiDiagram.executeLayout();
+        List<PhaseMetrics.Phase> phases = gephiDiagram.getMetrics().getPhases();
+        assertEquals(100, phases.get(phases.size() - 1).getCounts().get("iterations"));
+
+        Node changed = graph.getNode(String.valueOf(numConnectedNodes));
+        gephiDiagram.executeIncrementalLayout(Arrays.asList(changed));
+        phases = gephiDiagram.getMetrics().getPhases();
+        int iterations = 0;
+        for (PhaseMetrics.Phase phase : phases) {
+            if (phase.getName().equals("layout")) {
+                iterations = (Integer) phase.getCounts().get("iterations");
+            }
+        }
+        assertTrue("Local pass ran " + iterations + " iterations",
+                   iterations > 0 && iterations < 100);
+        assertEquals(100, gephiDiagram.getLayoutIterations());
+        assertEquals(0.0, gephiDiagram.getConvergenceTolerance(), 0.0);
+    }
+
+    /**
+     * Test that incremental layout passes its local budget and algorithm
+     * to layout, leaving the diagram's layout options unchanged
+     */
+    @Test
+    public void testIncrementalLayoutOptions() throws GephiForceDiagramException {
+        GephiForceDiagram diagram = spy(gephiDiagram);
+        diagram.setLayoutIterations(100);
+        diagram.setRefinementHops(0);
+        diagram.setGlobalPassThreshold(Double.POSITIVE_INFINITY);
+        diagram.setLayoutAlgorithm("force_atlas2_multilevel");
+        GmlReader.placeNodes(graph, true, new Random(1L));
+
+        Node changed = graph.getNode(String.valueOf(numConnectedNodes));
+        diagram.executeIncrementalLayout(Arrays.asList(changed));
+        ArgumentCaptor<Integer> iterations = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Double> tolerance = ArgumentCaptor.forClass(Double.class);
+        verify(diagram).initializeLayout(any(AutoLayout.class), eq("force_atlas2_fast"),
+                                         anyInt(), iterations.capture(), tolerance.capture());
+        assertTrue("Local pass given " + iterations.getValue() + " iterations",
+                   iterations.getValue() < 100);
+        assertTrue("Local pass not stopped on convergence", tolerance.getValue() > 0);
+        assertEquals("force_atlas2_multilevel", diagram.getayoutAlgorithm());
+        assertEquals(100, diagram.getLayoutIterations());
+        assertEquals(0.0, diagram.getConvergenceTolerance(), 0.0);
+    }
+
+    /**
+     * Test that layout runs on a sparsified graph, with all edges shown
+     * again afterwards, and that the fraction of edges kept is reported
+     */
+    @Test
+    public void testSparsifyEdges() throws GephiForceDiagramException {
+        int numEdges = graph.getEdgeCount();
+        gephiDiagram.setEdgeSparsification("top_k");
+        gephiDiagram.setSparsifyTopK(5);
+        gephiDiagram.setRenderAllEdges(true);
+        gephiDiagram.setLayoutIterations(10);
+        GmlReader.placeNodes(graph, true, new Random(1L));
+        float x = graph.getNode("0").x();
+
+        EdgeSparsifier sparsifier = gephiDiagram.sparsifyEdges();
+        int numKept = graphModel.getGraphVisible().getEdgeCount();
+        assertTrue(numKept < numEdges);
+        gephiDiagram.executeLayout();
+        sparsifier.restore();
+        assertTrue(graph.getNode("0").x() != x);
+        assertEquals(numEdges, graphModel.getGraphVisible().getEdgeCount());
+
+        PhaseMetrics.Phase phase = gephiDiagram.getMetrics().getPhases().get(0);
+        assertEquals("sparsify", phase.getName());
+        assertEquals(numKept, phase.getCounts().get("edges_kept"));
+        assertEquals((double) numKept / numEdges,
+                     (Double) phase.getCounts().get("kept_fraction"), 1e-9);
+    }
+
+    /**
+     * Run layout from random positions on a circle, and assert that fully-connected
+     * nodes end up closer to the origin than outliers
+     */
+    private void assertOutliersOnPeriphery() throws GephiForceDiagramException {
         AutoLayout autoLayout = new AutoLayout(gephiDiagram.getLayoutTime(),
                                                TimeUnit.SECONDS);
         autoLayout.setGraphModel(graphModel);
@@ -394,6 +836,42 @@ public class GephiForceDiagramTest {
                    (connectedDistance + delta) < outlierDistance);
     }
 
+    /**
+     * Test that layout with convergence-based stopping finishes well before
+     * its time limit, and that the time limit is respected otherwise
+     */
+    @Test
+    public void testConvergenceLayout() throws GephiForceDiagramException {
+        int timeLimit = 30;
+        AutoLayout autoLayout = new AutoLayout(timeLimit, TimeUnit.SECONDS);
+        autoLayout.setGraphModel(graphModel);
+        ConvergenceLayout layout = new ConvergenceLayout(new ForceAtlas2Builder().buildLayout(),
+                                                         autoLayout, 0.05, 5);
+        autoLayout.addLayout(layout, 1.0f);
+
+        long start = System.currentTimeMillis();
+        autoLayout.execute();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Layout did not converge", layout.isConverged());
+        assertTrue("Converged layout ran until time limit", elapsed < timeLimit * 1000L / 2);
+        assertTrue("Too few layout iterations before convergence", layout.getIterations() > 5);
+
+        // Without convergence-based stopping, layout runs for the time limit
+        autoLayout = new AutoLayout(1, TimeUnit.SECONDS);
+        autoLayout.setGraphModel(graphModel);
+        layout = new ConvergenceLayout(new ForceAtlas2Builder().buildLayout(), autoLayout, 0, 5);
+        autoLayout.addLayout(layout, 1.0f);
+
+        start = System.currentTimeMillis();
+        autoLayout.execute();
+        elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Layout converged with tolerance 0", !layout.isConverged());
+        assertTrue("Layout stopped before time limit (" + elapsed + " ms)", elapsed >= 900);
+        assertTrue("Layout ran past time limit (" + elapsed + " ms)", elapsed < 5000);
+    }
+
     /**
      * Get the smallest layout distance from {@code n0} to any other
      * node in the graph.
@@ -446,4 +924,32 @@ public class GephiForceDiagramTest {
                    getMinDistanceToNode(n0) > minDist + delta);
     }
 
+
+    /**
+     * Test that only labeled nodes are moved by {@code adjustLabels}, and
+     * that the whole graph remains visible afterwards
+     */
+    @Test
+    public void testAdjustOnlyLabeledNodes() throws GephiForceDiagramException {
+        for (Node n : graph.getNodes()) {
+            n.setX(0.0f);
+            n.setY(0.0f);
+        }
+        gephiDiagram.labelNodes();
+        gephiDiagram.setLabelAdjustAlgorithm("grid");
+        gephiDiagram.adjustLabels();
+
+        int numMoved = 0;
+        for (Node n : graph.getNodes()) {
+            boolean moved = n.x() != 0.0f || n.y() != 0.0f;
+            if (n.getLabel().isEmpty()) {
+                assertTrue("Unlabeled node moved", !moved);
+            } else if (moved) {
+                numMoved++;
+            }
+        }
+        assertTrue("Labeled nodes should be moved apart", numMoved > 0);
+        assertEquals(numConnectedNodes + numOutliers,
+                     graphModel.getGraphVisible().getNodeCount());
+    }
 }
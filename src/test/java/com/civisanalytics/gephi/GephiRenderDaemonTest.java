@@ -0,0 +1,100 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.writeGml;
+
+public class GephiRenderDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that invalid jobs are reported without stopping the daemon,
+     * and that the daemon stops on request
+     */
+    @Test
+    public void testHandleRequests() {
+        GephiRenderDaemon daemon = new GephiRenderDaemon();
+        String response = daemon.handleRequest("--no_such_option 1");
+        assertTrue("Unexpected response " + response, response.startsWith("ERROR"));
+        assertTrue("Daemon stopped by invalid job", daemon.isRunning());
+
+        response = daemon.handleRequest("--gml_input_file does_not_exist.gml"
+                                        + " --png_output_file out.png");
+        assertTrue("Unexpected response " + response, response.startsWith("ERROR"));
+        assertTrue("Daemon stopped by invalid job", daemon.isRunning());
+
+        response = daemon.handleRequest("--gml_input_file 'unterminated.gml");
+        assertTrue("Unexpected response " + response, response.startsWith("ERROR"));
+        assertTrue("Daemon stopped by invalid job", daemon.isRunning());
+
+        response = daemon.handleRequest(GephiRenderDaemon.SHUTDOWN);
+        assertTrue("Unexpected response " + response, response.startsWith("OK"));
+        assertFalse("Daemon not stopped", daemon.isRunning());
+    }
+
+    /**
+     * Test that requests are split into arguments as by a shell
+     */
+    @Test
+    public void testSplitArgs() {
+        assertEquals(Arrays.asList("-gml", "a b.gml", "-png", "c'd e.png", "x\"y", ""),
+                     GephiRenderDaemon.splitArgs(" -gml\t'a b.gml' -png \"c'd\"\\ e.png"
+                                                 + " \"x\\\"y\" ''  "));
+    }
+
+    /**
+     * Test that one daemon runs successive jobs, with file names containing spaces
+     */
+    @Test
+    public void testRunJobs() throws IOException {
+        File dir = folder.newFolder("with space");
+        GephiRenderDaemon daemon = new GephiRenderDaemon();
+        for (int job = 0; job < 2; job++) {
+            File gml = writeGml(folder, "graph " + job + ".gml", 100, job);
+            File png = new File(dir, "graph " + job + ".png");
+            String response = daemon.handleRequest("--gml_input_file '" + gml.getPath() + "'"
+                                                   + " --png_output_file \"" + png.getPath() + "\""
+                                                   + " --layout_iterations 10 --tile_size 128"
+                                                   + " --figure_width 256 --figure_height 256");
+            assertTrue("Unexpected response " + response, response.startsWith("OK "));
+            assertTrue("Figure of job " + job + " not written", png.length() > 0);
+        }
+        assertTrue(daemon.isRunning());
+    }
+
+    /**
+     * Test that the daemon runs a job reading CSV input, and rejects a
+     * batch manifest
+     */
+    @Test
+    public void testRunCsvJob() throws IOException {
+        File nodes = writeFile(folder, "nodes.csv",
+                               "Id,centrality,community,name\n"
+                               + "a,3,1,a\nb,2,1,b\nc,2,2,c\nd,1,2,d\n");
+        File edges = writeFile(folder, "edges.csv", "source,target\na,b\na,c\nb,c\na,d\n");
+        File png = new File(folder.getRoot(), "graph.png");
+        GephiRenderDaemon daemon = new GephiRenderDaemon();
+        String response = daemon.handleRequest("--edges_csv " + edges.getPath()
+                                               + " --nodes_csv " + nodes.getPath()
+                                               + " --png_output_file " + png.getPath()
+                                               + " --layout_iterations 10 --tile_size 128"
+                                               + " --figure_width 256 --figure_height 256");
+        assertTrue("Unexpected response " + response, response.startsWith("OK "));
+        assertTrue("Figure not written", png.length() > 0);
+
+        response = daemon.handleRequest("--batch_manifest " + edges.getPath());
+        assertTrue("Unexpected response " + response,
+                   response.startsWith("ERROR Parameter --batch_manifest"));
+        assertTrue(daemon.isRunning());
+    }
+}
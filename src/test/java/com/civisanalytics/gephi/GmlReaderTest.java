@@ -0,0 +1,113 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class GmlReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphModel readGml(final File gml) throws IOException {
+        GraphModel graphModel = newGraphModel();
+        new GmlReader(graphModel, Arrays.asList("Centrality", "community", "name")).read(gml);
+        return graphModel;
+    }
+
+    /**
+     * Test that nodes, requested attributes and edges are read as by
+     * Gephi's GML importer
+     */
+    @Test
+    public void testRead() throws IOException {
+        File gml = writeFile(folder, "graph.gml",
+                             "# comment\n"
+                             + "Creator \"test\"\n"
+                             + "graph [\n  directed 0\n"
+                             + "  node [ id 1 label \"a\" centrality 0.5 community 3\n"
+                             + "         name \"Alpha\" foo \"x\"\n"
+                             + "         graphics [ x 1.0 y 2.0 w 5 fill \"#ff0000\" ] ]\n"
+                             + "  node [ id 2 label \"b\" centrality 2 community 4\n"
+                             + "         name \"Beta\" ]\n"
+                             + "  node [ label \"c\" centrality 2.5 community 4 id 3 ]\n"
+                             + "  edge [ source 1 target 2 value 2.0 ]\n"
+                             + "  edge [ source 1 target 2 value 3.0 ]\n"
+                             + "  edge [ source 2 target 1 ]\n"
+                             + "  edge [ source 3 target 3 ]\n"
+                             + "]\n");
+        GraphModel graphModel = readGml(gml);
+        Graph graph = graphModel.getGraph();
+        Table table = graphModel.getNodeTable();
+
+        assertEquals(Double.class, table.getColumn("centrality").getTypeClass());
+        assertEquals(Long.class, table.getColumn("community").getTypeClass());
+        assertEquals(String.class, table.getColumn("name").getTypeClass());
+        assertNull("Unrequested attribute was read", table.getColumn("foo"));
+
+        assertEquals("Incorrect number of nodes", 3, graph.getNodeCount());
+        Node a = graph.getNode("1");
+        Node b = graph.getNode("2");
+        Node c = graph.getNode("3");
+        assertEquals("a", a.getLabel());
+        assertEquals("c", c.getLabel());
+        assertEquals(0.5, (Double) a.getAttribute("centrality"), 0.0);
+        assertEquals(2.0, (Double) b.getAttribute("centrality"), 0.0);
+        assertEquals(4L, c.getAttribute("community"));
+        assertEquals("Beta", b.getAttribute("name"));
+        assertNull(c.getAttribute("name"));
+        assertEquals(5f, a.size(), 0f);
+        assertEquals(10f, b.size(), 0f);
+
+        // Positions are centered on origin
+        assertEquals(1f - 1f / 3, a.x(), 1e-6f);
+        assertEquals(2f - 2f / 3, a.y(), 1e-6f);
+        assertEquals(-1f / 3, b.x(), 1e-6f);
+
+        // Parallel edges are merged, and all edges are directed
+        assertEquals("Incorrect number of edges", 3, graph.getEdgeCount());
+        Edge ab = graph.getEdge(a, b);
+        assertNotNull(ab);
+        assertEquals(5.0, ab.getWeight(), 0.0);
+        assertEquals(1.0, graph.getEdge(b, a).getWeight(), 0.0);
+        assertNotNull("Missing self-loop", graph.getEdge(c, c));
+        for (Edge e : graph.getEdges()) {
+            assertEquals(true, e.isDirected());
+        }
+    }
+
+    /**
+     * Test that nodes are spread out when no positions are given
+     */
+    @Test
+    public void testRandomPositions() throws IOException {
+        File gml = writeFile(folder, "graph.gml",
+                             "graph [ node [ id a ] node [ id b ] edge [ source a target b ] ]");
+        Graph graph = readGml(gml).getGraph();
+        Node a = graph.getNode("a");
+        Node b = graph.getNode("b");
+        assertEquals(0f, a.x() + b.x(), 1e-3f);
+        assertEquals(true, a.x() != b.x() || a.y() != b.y());
+    }
+
+    /**
+     * Test that malformed input is reported
+     */
+    @Test(expected = IOException.class)
+    public void testUnterminatedList() throws IOException {
+        readGml(writeFile(folder, "graph.gml", "graph [ node [ id 1 ]\n"));
+    }
+}
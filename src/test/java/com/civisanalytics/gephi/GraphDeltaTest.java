@@ -0,0 +1,118 @@
+package com.civisanalytics.gephi;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class GraphDeltaTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphModel graphModel;
+    private Graph graph;
+
+    /**
+     * Build the path a - b - c - d, with nodes at their indices along the x axis
+     */
+    @Before
+    public void setUp() {
+        graphModel = newGraphModel();
+        graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+        String[] ids = {"a", "b", "c", "d"};
+        Node previous = null;
+        for (int i = 0; i < ids.length; i++) {
+            Node n = factory.newNode(ids[i]);
+            n.setX(100f * i);
+            n.setY(0f);
+            graph.addNode(n);
+            if (previous != null) {
+                graph.addEdge(factory.newEdge(previous, n, 0, 1.0, true));
+            }
+            previous = n;
+        }
+    }
+
+    private static Set<String> ids(final Set<Node> nodes) {
+        Set<String> ids = new HashSet<String>();
+        for (Node n : nodes) {
+            ids.add((String) n.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Test that nodes and edges are added and removed, and that the nodes
+     * affected are those added, the endpoints of changed edges, and the
+     * neighbors of removed nodes
+     */
+    @Test
+    public void testApply() throws IOException {
+        GraphDelta delta = new GraphDelta(graphModel);
+        delta.apply(writeFile(folder, "delta.csv",
+                              "Action,Source,Target,Weight\n"
+                              + "add,e,a,2\n"
+                              + "add,e,b,\n"
+                              + "add,a,b,3\n"
+                              + "\n"
+                              + "remove,d,,\n"
+                              + "remove,x,y,\n"), new Random(1L));
+
+        assertEquals(1, delta.getNodesAdded());
+        assertEquals(1, delta.getNodesRemoved());
+        assertEquals(2, delta.getEdgesAdded());
+        assertEquals(0, delta.getEdgesRemoved());
+        assertEquals(4, graph.getNodeCount());
+        assertNull(graph.getNode("d"));
+        assertEquals(2.0, graph.getEdge(graph.getNode("e"), graph.getNode("a")).getWeight(), 0.0);
+        assertEquals(4.0, graph.getEdge(graph.getNode("a"), graph.getNode("b")).getWeight(), 0.0);
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "e")),
+                     ids(delta.getChangedNodes()));
+
+        // Added node is placed near the centroid of its neighbors
+        Node e = graph.getNode("e");
+        assertEquals(50f, e.x(), e.size());
+        assertEquals(0f, e.y(), e.size());
+    }
+
+    /**
+     * Test that removing an edge affects only its endpoints, and that
+     * tab-separated deltas are read
+     */
+    @Test
+    public void testRemoveEdge() throws IOException {
+        GraphDelta delta = new GraphDelta(graphModel);
+        delta.apply(writeFile(folder, "delta.csv", "source\ttarget\taction\nc\td\tremove\n"),
+                    new Random(1L));
+        assertEquals(1, delta.getEdgesRemoved());
+        assertNull(graph.getEdge(graph.getNode("c"), graph.getNode("d")));
+        assertNotNull(graph.getNode("d"));
+        assertEquals(new HashSet<String>(Arrays.asList("c", "d")),
+                     ids(delta.getChangedNodes()));
+    }
+
+    /**
+     * Test that unknown actions are reported
+     */
+    @Test(expected = IOException.class)
+    public void testBadAction() throws IOException {
+        new GraphDelta(graphModel).apply(writeFile(folder, "delta.csv", "action,source\nmove,a\n"),
+                                         new Random());
+    }
+}
@@ -0,0 +1,142 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class GraphGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static GraphGenerator generator(final String model, final int n, final long seed) {
+        GraphGenerator g = new GraphGenerator();
+        g.setModel(model);
+        g.setNumNodes(n);
+        g.setAverageDegree(10.0);
+        g.setNumCommunities(5);
+        g.setMixing(0.2);
+        g.setSeed(seed);
+        return g;
+    }
+
+    /**
+     * Count edges, edges between communities, self-loops and duplicates
+     */
+    private static long[] countEdges(final GraphGenerator g) throws IOException {
+        final long[] counts = new long[4];
+        final Set<Long> seen = new HashSet<Long>();
+        g.generateEdges(new GraphGenerator.EdgeVisitor() {
+                @Override
+                public void visit(final int source, final int target) {
+                    counts[0]++;
+                    if (g.getCommunity(source) != g.getCommunity(target)) {
+                        counts[1]++;
+                    }
+                    if (source == target) {
+                        counts[2]++;
+                    }
+                    long a = Math.min(source, target);
+                    long b = Math.max(source, target);
+                    if (!seen.add(a * g.getNumNodes() + b)) {
+                        counts[3]++;
+                    }
+                }
+            });
+        return counts;
+    }
+
+    @Test
+    public void testErdosRenyi() throws IOException {
+        long[] counts = countEdges(generator("er", 4000, 1L));
+        assertEquals("Incorrect mean degree", 10.0, 2.0 * counts[0] / 4000, 0.5);
+        assertEquals("Incorrect fraction of edges between communities",
+                     0.8, (double) counts[1] / counts[0], 0.05);
+        assertEquals("Self-loops generated", 0, counts[2]);
+        assertEquals("Duplicate edges generated", 0, counts[3]);
+    }
+
+    @Test
+    public void testStochasticBlockModel() throws IOException {
+        long[] counts = countEdges(generator("sbm", 4000, 1L));
+        assertEquals("Incorrect mean degree", 10.0, 2.0 * counts[0] / 4000, 0.5);
+        assertEquals("Incorrect fraction of edges between communities",
+                     0.2, (double) counts[1] / counts[0], 0.05);
+        assertEquals("Self-loops generated", 0, counts[2]);
+        assertEquals("Duplicate edges generated", 0, counts[3]);
+    }
+
+    @Test
+    public void testBarabasiAlbert() throws IOException {
+        long[] counts = countEdges(generator("ba", 1000, 1L));
+        // Node v links to min(5, v) earlier nodes
+        assertEquals("Incorrect number of edges", 1 + 2 + 3 + 4 + 5 * 995, counts[0]);
+        assertEquals("Self-loops generated", 0, counts[2]);
+        assertEquals("Duplicate edges generated", 0, counts[3]);
+    }
+
+    /**
+     * Test that output depends only on the seed
+     */
+    @Test
+    public void testDeterministic() throws IOException {
+        File a = folder.newFile("a.gml");
+        File b = folder.newFile("b.gml");
+        File c = folder.newFile("c.gml");
+        generator("ba", 500, 7L).writeGml(a);
+        generator("ba", 500, 7L).writeGml(b);
+        generator("ba", 500, 8L).writeGml(c);
+        assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+        assertFalse(Arrays.equals(Files.readAllBytes(a.toPath()),
+                                  Files.readAllBytes(c.toPath())));
+    }
+
+    /**
+     * Test that GML and snapshot output describe the same graph
+     */
+    @Test
+    public void testSnapshotMatchesGml() throws IOException {
+        GraphGenerator g = generator("sbm", 300, 3L);
+        File gml = folder.newFile("graph.gml");
+        File snapshot = folder.newFile("graph.gsnap");
+        long numEdges = g.writeGml(gml);
+        assertEquals(numEdges, g.writeSnapshot(snapshot));
+        assertTrue(GraphSnapshot.isSnapshot(snapshot));
+        assertFalse(GraphSnapshot.isSnapshot(gml));
+
+        GraphModel fromGml = newGraphModel();
+        new GmlReader(fromGml, Arrays.asList("centrality", "community", "name")).read(gml);
+        GraphModel fromSnapshot = newGraphModel();
+        GraphSnapshot.read(snapshot, fromSnapshot);
+
+        Graph expected = fromGml.getGraph();
+        Graph actual = fromSnapshot.getGraph();
+        assertEquals(300, actual.getNodeCount());
+        assertEquals(numEdges, actual.getEdgeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (Node node : expected.getNodes()) {
+            Node copy = actual.getNode(node.getId());
+            assertNotNull("Missing node", copy);
+            assertEquals(node.getAttribute("centrality"), copy.getAttribute("centrality"));
+            assertEquals(node.getAttribute("community"), copy.getAttribute("community"));
+            assertEquals(node.getAttribute("name"), copy.getAttribute("name"));
+            assertEquals((double) expected.getDegree(node),
+                         (Double) copy.getAttribute("centrality"), 0.0);
+        }
+    }
+}
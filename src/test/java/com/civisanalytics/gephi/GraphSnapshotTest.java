@@ -0,0 +1,161 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+import org.gephi.project.api.Workspace;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+
+public class GraphSnapshotTest {
+
+    private static final String GML = "graph [\n directed 1\n"
+        + " node [ id 1 label \"a\" centrality 0.5 community 1 ]\n"
+        + " node [ id 2 label \"b\" centrality 1.5 community 2 ]\n"
+        + " node [ id 3 label \"c\" centrality 2.5 community 1 ]\n"
+        + " edge [ source 1 target 2 ]\n"
+        + " edge [ source 2 target 3 ]\n"
+        + "]\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that nodes, attributes and edges survive a round trip
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        GraphModel graphModel = newGraphModel();
+        Table table = graphModel.getNodeTable();
+        table.addColumn("centrality", Float.class);
+        table.addColumn("name", String.class);
+        GraphFactory factory = graphModel.factory();
+        Graph graph = graphModel.getGraph();
+
+        int n = 50;
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = factory.newNode("n" + i);
+            nodes[i].setX(i);
+            nodes[i].setY(-i);
+            nodes[i].setAttribute("centrality", (float) i / n);
+            if (i % 2 == 0) {
+                nodes[i].setAttribute("name", "node " + i);
+            }
+            graph.addNode(nodes[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            graph.addEdge(factory.newEdge(nodes[i], nodes[(i * 7 + 1) % n], 0, i + 0.5, true));
+        }
+
+        File snapshot = new File(folder.getRoot(), "graph.gsnap");
+        GraphSnapshot.write(graph, table, snapshot);
+
+        GraphModel loadedModel = newGraphModel();
+        GraphSnapshot.read(snapshot, loadedModel);
+        Graph loaded = loadedModel.getGraph();
+
+        assertEquals("Incorrect number of nodes", n, loaded.getNodeCount());
+        assertEquals("Incorrect number of edges", n, loaded.getEdgeCount());
+        for (int i = 0; i < n; i++) {
+            Node node = loaded.getNode("n" + i);
+            assertNotNull("Missing node", node);
+            assertEquals(i, node.x(), 0.0);
+            assertEquals(-i, node.y(), 0.0);
+            assertEquals((float) i / n, (Float) node.getAttribute("centrality"), 0.0);
+            if (i % 2 == 0) {
+                assertEquals("node " + i, node.getAttribute("name"));
+            } else {
+                assertNull(node.getAttribute("name"));
+            }
+        }
+        for (Edge e : graph.getEdges()) {
+            Edge copy = loaded.getEdge(loaded.getNode(e.getSource().getId()),
+                                       loaded.getNode(e.getTarget().getId()));
+            assertNotNull("Missing edge", copy);
+            assertEquals(e.getWeight(), copy.getWeight(), 0.0);
+            assertTrue(copy.isDirected());
+        }
+    }
+
+    /**
+     * Test that a snapshot is written on first import and reused afterwards
+     */
+    @Test
+    public void testSnapshotCache() throws IOException {
+        File gml = writeFile(folder, "graph.gml", GML);
+        File cacheDir = new File(folder.getRoot(), "cache");
+        File snapshot = GraphSnapshot.getSnapshotFile(gml, cacheDir);
+        assertFalse("Snapshot exists before import", snapshot.exists());
+
+        GephiForceDiagram fd = new GephiForceDiagram();
+        fd.setSnapshotCache(true);
+        fd.setSnapshotDir(cacheDir);
+        GephiState gs = fd.getGephiState();
+
+        gs.projectController.newProject();
+        Workspace imported = gs.projectController.getCurrentWorkspace();
+        fd.importGraph(gml, imported);
+        assertTrue("Snapshot not written", snapshot.isFile());
+
+        gs.projectController.newProject();
+        Workspace restored = gs.projectController.getCurrentWorkspace();
+        fd.importGraph(gml, restored);
+
+        Graph expected = gs.graphController.getGraphModel(imported).getGraph();
+        Graph actual = gs.graphController.getGraphModel(restored).getGraph();
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (Node node : expected.getNodes()) {
+            Node copy = actual.getNode(node.getId());
+            assertNotNull("Missing node", copy);
+            assertEquals(node.getLabel(), copy.getLabel());
+            assertEquals(node.getAttribute("centrality"), copy.getAttribute("centrality"));
+        }
+    }
+
+    /**
+     * Test that a streaming import, which keeps only the columns it needs,
+     * is not cached as a snapshot for later runs needing other columns
+     */
+    @Test
+    public void testStreamingImportNotCached() throws IOException {
+        File gml = writeFile(folder, "graph.gml", GML);
+        File cacheDir = new File(folder.getRoot(), "cache");
+        File snapshot = GraphSnapshot.getSnapshotFile(gml, cacheDir);
+
+        GephiForceDiagram fd = new GephiForceDiagram();
+        fd.setSnapshotCache(true);
+        fd.setSnapshotDir(cacheDir);
+        fd.setStreamingImport(true);
+        fd.setNodeSizeColumn("centrality");
+        fd.setNodeColorColumn("centrality");
+        fd.setNodeLabelColumn("label");
+        GephiState gs = fd.getGephiState();
+        gs.projectController.newProject();
+        fd.importGraph(gml, gs.projectController.getCurrentWorkspace());
+        assertFalse("Snapshot written after streaming import", snapshot.exists());
+
+        fd.setStreamingImport(false);
+        fd.setNodeColorColumn("community");
+        gs.projectController.newProject();
+        Workspace workspace = gs.projectController.getCurrentWorkspace();
+        fd.importGraph(gml, workspace);
+        assertTrue("Snapshot not written", snapshot.isFile());
+        Table nodeTable = gs.graphController.getGraphModel(workspace).getNodeTable();
+        assertNotNull("Column of later run missing", nodeTable.getColumn("community"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.civisanalytics.gephi;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class GridLabelAdjustTest {
+
+    /**
+     * Create a graph of nodes whose labels cover about a quarter of the
+     * square they are placed in, with every tenth node unlabeled
+     */
+    private static GraphModel crowdedGraph(final int n, final long seed) {
+        GraphModel graphModel = newGraphModel();
+        Graph graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+        Random random = new Random(seed);
+        for (int i = 0; i < n; i++) {
+            Node node = factory.newNode(String.valueOf(i));
+            node.setX(random.nextFloat() * 2000f);
+            node.setY(random.nextFloat() * 2000f);
+            node.setSize(1f + random.nextFloat() * 4f);
+            node.setLabel(i % 10 == 0 ? "" : "node " + i);
+            node.getTextProperties().setSize(0.5f + random.nextFloat());
+            graph.addNode(node);
+        }
+        GephiUtils.hackLabels(graph);
+        return graphModel;
+    }
+
+    private static GridLabelAdjust run(final GraphModel graphModel, final int threads) {
+        GridLabelAdjust layout = new GridLabelAdjust();
+        layout.setThreadCount(threads);
+        layout.setGraphModel(graphModel);
+        layout.initAlgo();
+        while (layout.canAlgo() && layout.getIterations() < 10000) {
+            layout.goAlgo();
+        }
+        layout.endAlgo();
+        return layout;
+    }
+
+    private static boolean overlap(final Node a, final Node b) {
+        float aw = Math.max(a.getTextProperties().getWidth() / 2, a.size() / 2);
+        float ah = Math.max(a.getTextProperties().getHeight() / 2, a.size() / 2);
+        float bw = Math.max(b.getTextProperties().getWidth() / 2, b.size() / 2);
+        float bh = Math.max(b.getTextProperties().getHeight() / 2, b.size() / 2);
+        return Math.abs(a.x() - b.x()) < aw + bw && Math.abs(a.y() - b.y()) < ah + bh;
+    }
+
+    @Test
+    public void testRemovesOverlaps() {
+        GraphModel graphModel = crowdedGraph(2000, 1L);
+        Node[] nodes = graphModel.getGraph().getNodes().toArray();
+        float[] unlabeledX = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i += 10) {
+            unlabeledX[i] = nodes[i].x();
+        }
+
+        GridLabelAdjust layout = run(graphModel, 4);
+        assertTrue(layout.isConverged());
+        assertEquals(0, layout.getOverlaps());
+        assertTrue(layout.getIterations() > 1);
+        for (int i = 0; i < nodes.length; i++) {
+            if (i % 10 == 0) {
+                assertEquals(unlabeledX[i], nodes[i].x(), 0f);
+                continue;
+            }
+            for (int j = i + 1; j < nodes.length; j++) {
+                if (j % 10 != 0) {
+                    assertFalse("Labels of " + i + " and " + j + " overlap",
+                                overlap(nodes[i], nodes[j]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testThreadCount() {
+        GraphModel graphModel = crowdedGraph(3000, 2L);
+        run(graphModel, 1);
+        Node[] nodes = graphModel.getGraph().getNodes().toArray();
+        float[] xs = new float[nodes.length];
+        float[] ys = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            xs[i] = nodes[i].x();
+            ys[i] = nodes[i].y();
+        }
+
+        graphModel = crowdedGraph(3000, 2L);
+        run(graphModel, 4);
+        nodes = graphModel.getGraph().getNodes().toArray();
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(xs[i], nodes[i].x(), 0f);
+            assertEquals(ys[i], nodes[i].y(), 0f);
+        }
+    }
+
+    @Test
+    public void testSeparatedLabelsUnmoved() {
+        GraphModel graphModel = crowdedGraph(3, 3L);
+        Node[] nodes = graphModel.getGraph().getNodes().toArray();
+        nodes[1].setX(-1000f);
+        nodes[2].setX(1000f);
+        GridLabelAdjust layout = run(graphModel, 1);
+        assertTrue(layout.isConverged());
+        assertEquals(1, layout.getIterations());
+        assertEquals(-1000f, nodes[1].x(), 0f);
+        assertEquals(1000f, nodes[2].x(), 0f);
+    }
+}
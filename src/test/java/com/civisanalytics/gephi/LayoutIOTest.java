@@ -0,0 +1,169 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class LayoutIOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Graph graph;
+
+    /**
+     * Create a path a - b - "c,d" - e, with all nodes at the origin
+     */
+    public LayoutIOTest() {
+        GraphModel graphModel = newGraphModel();
+        GraphFactory factory = graphModel.factory();
+        graph = graphModel.getGraph();
+        Node previous = null;
+        for (String id : new String[] {"a", "b", "c,d", "e"}) {
+            Node node = factory.newNode(id);
+            node.setSize(1f);
+            graph.addNode(node);
+            if (previous != null) {
+                graph.addEdge(factory.newEdge(previous, node, 0, 1.0, false));
+            }
+            previous = node;
+        }
+    }
+
+    @Test
+    public void testParseCsvLine() {
+        assertEquals(Arrays.asList("a", "", "b,c", "say \"hi\""),
+                     LayoutIO.parseCsvLine("a,,\"b,c\",\"say \"\"hi\"\"\""));
+    }
+
+    /**
+     * Test that positions are read, and that a node missing from the file
+     * is placed near its positioned neighbors
+     */
+    @Test
+    public void testReadPositions() throws IOException {
+        File positions = writeFile(folder, "positions.csv",
+                                   "x,id,y\n"
+                                   + "10.0,a,20.0\n"
+                                   + "30.0,b,40.0\n"
+                                   + "50.0,\"c,d\",60.0\n"
+                                   + "70.0,missing,80.0\n");
+        int numPositioned = LayoutIO.readPositions(positions, graph);
+
+        assertEquals("Incorrect number of positioned nodes", 3, numPositioned);
+        assertEquals(10f, graph.getNode("a").x(), 0f);
+        assertEquals(40f, graph.getNode("b").y(), 0f);
+        assertEquals(50f, graph.getNode("c,d").x(), 0f);
+
+        // Only neighbor of e is "c,d"
+        Node e = graph.getNode("e");
+        assertEquals(50f, e.x(), 0.5f);
+        assertEquals(60f, e.y(), 0.5f);
+    }
+
+    /**
+     * Test that positions written in each format are read back
+     */
+    @Test
+    public void testWriteReadPositions() throws IOException {
+        graph.getNode("a").setLabel("label, \"quoted\"");
+        int i = 0;
+        for (Node node : graph.getNodes()) {
+            node.setX(i);
+            node.setY(-2 * i);
+            i++;
+        }
+
+        for (String format : new String[] {"csv", "binary"}) {
+            File positions = new File(folder.getRoot(), "positions." + format);
+            LayoutIO.writePositions(graph, positions, format);
+            for (Node node : graph.getNodes()) {
+                node.setX(0f);
+                node.setY(0f);
+            }
+            assertEquals(format, 4, LayoutIO.readPositions(positions, graph));
+            i = 0;
+            for (Node node : graph.getNodes()) {
+                assertEquals(format, i, node.x(), 0f);
+                assertEquals(format, -2 * i, node.y(), 0f);
+                i++;
+            }
+        }
+
+        List<String> lines = Files.readAllLines(new File(folder.getRoot(), "positions.csv")
+                                                .toPath(), Charset.forName("UTF-8"));
+        assertEquals("id,x,y,size,color,label", lines.get(0));
+        assertEquals(Arrays.asList("a", "0.0", "0.0", "1.0", "#000000", "label, \"quoted\""),
+                     LayoutIO.parseCsvLine(lines.get(1)));
+    }
+
+    /**
+     * Test that ids and labels with line breaks are read back from CSV
+     */
+    @Test
+    public void testWriteReadLineBreaks() throws IOException {
+        Node node = graph.getModel().factory().newNode("f\ng");
+        node.setLabel("two\r\n\"lines\"");
+        node.setX(3f);
+        node.setY(4f);
+        graph.addNode(node);
+        Node after = graph.getModel().factory().newNode("h");
+        after.setX(5f);
+        graph.addNode(after);
+
+        File positions = new File(folder.getRoot(), "positions.csv");
+        LayoutIO.writePositions(graph, positions, "csv");
+        node.setX(0f);
+        node.setY(0f);
+        after.setX(0f);
+        assertEquals(6, LayoutIO.readPositions(positions, graph));
+        assertEquals(3f, node.x(), 0f);
+        assertEquals(4f, node.y(), 0f);
+        assertEquals(5f, after.x(), 0f);
+    }
+
+    /**
+     * Test that errors are reported at the right line after a skipped
+     * record spanning several lines, and within such a record
+     */
+    @Test
+    public void testLineNumbers() throws IOException {
+        String[] contents = {
+            "id,x,y\n\"unknown\nnode\",1.0,2.0\na,one,2.0\n",
+            "id,x,y\na,1.0,2.0\nb,\"1.0\nx\",2.0\n"
+        };
+        String[] expected = {"Line 4 of ", "Line 3 of "};
+        for (int i = 0; i < contents.length; i++) {
+            try {
+                LayoutIO.readPositions(writeFile(folder, "positions" + i + ".csv", contents[i]),
+                                       graph);
+                fail("Invalid coordinates not reported");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(expected[i]));
+            }
+        }
+    }
+
+    /**
+     * Test that a file without the required columns is rejected
+     */
+    @Test(expected = IOException.class)
+    public void testMissingColumns() throws IOException {
+        LayoutIO.readPositions(writeFile(folder, "positions.csv", "id,x\na,1.0\n"), graph);
+    }
+}
@@ -0,0 +1,119 @@
+package com.civisanalytics.gephi;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MultilevelLayoutTest {
+
+    /**
+     * Build a level from an undirected edge list, with nodes at their
+     * indices along the x axis
+     */
+    private static MultilevelLayout.Level level(final int n, final int[][] edges,
+                                                final double[] edgeWeights) {
+        int[] offsets = new int[n + 1];
+        for (int[] e : edges) {
+            offsets[e[0] + 1]++;
+            offsets[e[1] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = new int[n];
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int k = 0; k < edges.length; k++) {
+            int u = edges[k][0];
+            int v = edges[k][1];
+            neighbors[offsets[u] + fill[u]] = v;
+            weights[offsets[u] + fill[u]++] = edgeWeights[k];
+            neighbors[offsets[v] + fill[v]] = u;
+            weights[offsets[v] + fill[v]++] = edgeWeights[k];
+        }
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double[] sizes = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            sizes[i] = 1.0;
+        }
+        return new MultilevelLayout.Level(offsets, neighbors, weights, xs, ys, sizes);
+    }
+
+    private static double totalWeight(final MultilevelLayout.Level level) {
+        double total = 0.0;
+        for (int k = 0; k < level.offsets[level.numNodes]; k++) {
+            total += level.weights[k];
+        }
+        return total;
+    }
+
+    /**
+     * Test that a path is matched along its heaviest edges, with the weight
+     * of edges between merged nodes kept and that of merged edges dropped
+     */
+    @Test
+    public void testCoarsenPath() {
+        int[][] edges = {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}};
+        double[] weights = {3.0, 1.0, 3.0, 1.0, 3.0};
+        MultilevelLayout.Level fine = level(6, edges, weights);
+        MultilevelLayout.Level coarse = MultilevelLayout.coarsen(fine);
+        assertEquals(3, coarse.numNodes);
+        assertEquals(fine.parent[0], fine.parent[1]);
+        assertEquals(fine.parent[2], fine.parent[3]);
+        assertEquals(fine.parent[4], fine.parent[5]);
+        assertEquals(2 * 2.0, totalWeight(coarse), 0.0);
+        assertEquals(0.5, coarse.x[fine.parent[0]], 1e-12);
+        assertEquals(Math.sqrt(2.0), coarse.size[fine.parent[0]], 1e-12);
+    }
+
+    /**
+     * Test that the leaves of a star, left unmatched once one of them is
+     * matched with the center, join the center rather than staying alone
+     */
+    @Test
+    public void testCoarsenStar() {
+        int n = 50;
+        int[][] edges = new int[n - 1][];
+        double[] weights = new double[n - 1];
+        for (int i = 1; i < n; i++) {
+            edges[i - 1] = new int[] {0, i};
+            weights[i - 1] = 1.0;
+        }
+        MultilevelLayout.Level fine = level(n, edges, weights);
+        MultilevelLayout.Level coarse = MultilevelLayout.coarsen(fine);
+        assertEquals(1, coarse.numNodes);
+        assertEquals(0, coarse.offsets[1]);
+
+        // A single node cannot be coarsened further
+        assertNull(MultilevelLayout.coarsen(coarse));
+    }
+
+    /**
+     * Test that interpolation places the members of a merged node around
+     * it, and a lone member on it
+     */
+    @Test
+    public void testInterpolate() {
+        int[][] edges = {{0, 1}, {1, 2}};
+        double[] weights = {2.0, 1.0};
+        MultilevelLayout.Level fine = level(4, edges, weights);
+        MultilevelLayout.Level coarse = MultilevelLayout.coarsen(fine);
+        assertTrue(coarse.numNodes < 4);
+        for (int c = 0; c < coarse.numNodes; c++) {
+            coarse.x[c] = 100.0 * c;
+            coarse.y[c] = -100.0 * c;
+        }
+        MultilevelLayout.interpolate(coarse, fine);
+        int isolated = fine.parent[3];
+        assertEquals(coarse.x[isolated], fine.x[3], 0.0);
+        assertEquals(coarse.y[isolated], fine.y[3], 0.0);
+        for (int i = 0; i < 3; i++) {
+            int c = fine.parent[i];
+            double r = Math.hypot(fine.x[i] - coarse.x[c], fine.y[i] - coarse.y[c]);
+            assertEquals(0.5 * coarse.size[c], r, 1e-9);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.civisanalytics.gephi;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhaseMetricsTest {
+
+    /**
+     * Test that phases are recorded in order, each ended by the next
+     */
+    @Test
+    public void testPhases() throws InterruptedException {
+        PhaseMetrics metrics = new PhaseMetrics();
+        metrics.start("first");
+        Thread.sleep(20);
+        metrics.count("nodes", 10);
+        metrics.start("second");
+        byte[][] garbage = new byte[100][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[10000];
+        }
+        metrics.stop();
+        metrics.stop();
+
+        List<PhaseMetrics.Phase> phases = metrics.getPhases();
+        assertEquals("Incorrect number of phases", 2, phases.size());
+        assertEquals("first", phases.get(0).getName());
+        assertEquals("second", phases.get(1).getName());
+        assertTrue("Wall time too short", phases.get(0).getWallSeconds() >= 0.015);
+        assertEquals(10, phases.get(0).getCounts().get("nodes"));
+        assertTrue("Allocation not measured",
+                   phases.get(1).getAllocatedBytes() < 0
+                   || phases.get(1).getAllocatedBytes() >= 100 * 10000);
+        assertTrue("Peak heap not measured", phases.get(1).getPeakHeapBytes() > 0);
+    }
+
+    /**
+     * Test that peak heap usage is sampled during a phase, without
+     * resetting the JVM's peak usage of memory pools, which phases
+     * measured concurrently rely on
+     */
+    @Test
+    public void testPeakHeap() throws InterruptedException {
+        List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        long poolPeak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+                poolPeak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        // Compare with usage while the allocation is held, rather than at
+        // the start of the phase, since collection of garbage from other
+        // tests may free more than the allocation
+        PhaseMetrics metrics = new PhaseMetrics();
+        metrics.start("allocate");
+        byte[] held = new byte[32 << 20];
+        long heldUsage = heapUsed(pools);
+        Thread.sleep(100);
+        assertEquals(0, held[held.length - 1]);
+        held = null;
+        System.gc();
+        metrics.stop();
+
+        long poolPeakAfter = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            poolPeakAfter += pool.getPeakUsage().getUsed();
+        }
+        assertTrue("Peak usage of memory pools reset", poolPeakAfter >= poolPeak);
+        PhaseMetrics.Phase phase = metrics.getPhases().get(0);
+        assertTrue("Held allocation missing from peak heap",
+                   phase.getPeakHeapBytes() >= heldUsage - (8 << 20));
+    }
+
+    private static long heapUsed(final List<MemoryPoolMXBean> pools) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    @Test
+    public void testWriteJson() {
+        PhaseMetrics metrics = new PhaseMetrics();
+        metrics.put("input_file", "dir\\\"graph\".gml");
+        metrics.start("import");
+        metrics.count("converged", true);
+        metrics.stop();
+
+        StringWriter json = new StringWriter();
+        metrics.writeJson(new PrintWriter(json));
+        String s = json.toString();
+        assertTrue(s, s.contains("\"input_file\": \"dir\\\\\\\"graph\\\".gml\","));
+        assertTrue(s, s.contains("{\"name\": \"import\", \"wall_seconds\": "));
+        assertTrue(s, s.contains(", \"converged\": true}"));
+        assertTrue(s, s.trim().endsWith("]\n}"));
+    }
+}
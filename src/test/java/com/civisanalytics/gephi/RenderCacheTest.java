@@ -0,0 +1,121 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static com.civisanalytics.gephi.TestUtils.writeFile;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class RenderCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that keys depend on input contents and option values, but not
+     * on input file names or the order of options
+     */
+    @Test
+    public void testKey() throws IOException {
+        List<File> inputs = Arrays.asList(writeFile(folder, "a.gml", new byte[] {1, 2, 3}), null);
+        List<File> copies = Arrays.asList(writeFile(folder, "b.gml", new byte[] {1, 2, 3}));
+        List<File> modified = Arrays.asList(writeFile(folder, "c.gml", new byte[] {1, 2, 4}));
+        Map<String, Object> options = new LinkedHashMap<String, Object>();
+        options.put("gravity", 1.0);
+        options.put("seed", null);
+        Map<String, Object> reordered = new LinkedHashMap<String, Object>();
+        reordered.put("seed", null);
+        reordered.put("gravity", 1.0);
+        Map<String, Object> changed = new HashMap<String, Object>(options);
+        changed.put("gravity", 2.0);
+
+        String key = RenderCache.key(inputs, options);
+        assertEquals(64, key.length());
+        assertEquals(key, RenderCache.key(copies, reordered));
+        assertFalse(key.equals(RenderCache.key(modified, options)));
+        assertFalse(key.equals(RenderCache.key(inputs, changed)));
+    }
+
+    /**
+     * Test that a cached layout sets the positions of the same nodes
+     */
+    @Test
+    public void testLayout() throws IOException {
+        GraphModel graphModel = newGraphModel();
+        Graph graph = graphModel.getGraph();
+        for (int i = 0; i < 3; i++) {
+            Node n = graphModel.factory().newNode("n" + i);
+            n.setX(i);
+            n.setY(-i);
+            graph.addNode(n);
+        }
+
+        RenderCache cache = new RenderCache(new File(folder.getRoot(), "cache"), 1 << 20);
+        assertFalse(cache.readLayout("k", graph));
+        cache.writeLayout("k", graph);
+        for (Node n : graph.getNodes()) {
+            n.setX(0f);
+            n.setY(0f);
+        }
+        assertTrue(cache.readLayout("k", graph));
+        assertEquals(2f, graph.getNode("n2").x(), 0f);
+        assertEquals(-2f, graph.getNode("n2").y(), 0f);
+    }
+
+    /**
+     * Test that cached figures are copied out, and that least recently used
+     * entries (with all their files) are evicted once the cache is too large
+     */
+    @Test
+    public void testFigureEviction() throws IOException {
+        File dir = new File(folder.getRoot(), "cache");
+        RenderCache cache = new RenderCache(dir, 250);
+        File png = writeFile(folder, "figure.png", new byte[100]);
+        File positions = writeFile(folder, "positions.csv", new byte[] {7, 8, 9});
+        File out = new File(folder.getRoot(), "out.png");
+        File outPositions = new File(folder.getRoot(), "out.csv");
+
+        cache.writeFigure("a", png, positions);
+        assertTrue(cache.readFigure("a", out, outPositions));
+        assertArrayEquals(new byte[] {7, 8, 9}, Files.readAllBytes(outPositions.toPath()));
+        assertEquals(100, out.length());
+
+        // An entry without positions does not satisfy a job that needs them
+        cache.writeFigure("b", png, null);
+        assertFalse(cache.readFigure("b", out, outPositions));
+        assertTrue(cache.readFigure("b", out, null));
+
+        // Make "a" the most recently used, so that adding "c" evicts "b"
+        long now = System.currentTimeMillis();
+        new File(dir, "b.png").setLastModified(now - 20000);
+        new File(dir, "a.png").setLastModified(now - 10000);
+        new File(dir, "a.positions").setLastModified(now - 10000);
+        cache.writeFigure("c", png, null);
+        assertTrue(cache.readFigure("a", out, outPositions));
+        assertFalse(cache.readFigure("b", out, null));
+        assertTrue(cache.readFigure("c", out, null));
+
+        // Adding "d" evicts "a" along with its positions file
+        new File(dir, "a.png").setLastModified(now - 10000);
+        new File(dir, "a.positions").setLastModified(now - 10000);
+        cache.writeFigure("d", png, null);
+        assertFalse(new File(dir, "a.png").exists());
+        assertFalse(new File(dir, "a.positions").exists());
+        assertEquals(2, dir.listFiles().length);
+    }
+}
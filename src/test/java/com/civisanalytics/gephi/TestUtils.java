@@ -0,0 +1,64 @@
+package com.civisanalytics.gephi;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.junit.rules.TemporaryFolder;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.project.api.ProjectController;
+import org.openide.util.Lookup;
+
+/**
+ * Fixtures shared by tests
+ */
+final class TestUtils {
+
+    private TestUtils() { }
+
+    /**
+     * Open a new Gephi project, and get the graph model of its workspace
+     */
+    static GraphModel newGraphModel() {
+        Lookup.getDefault().lookup(ProjectController.class).newProject();
+        return Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+    }
+
+    /**
+     * Write a generated graph, with node columns centrality, community and
+     * name, as GML to a new file in a temporary folder
+     */
+    static File writeGml(final TemporaryFolder folder, final String name, final int numNodes,
+                         final long seed) throws IOException {
+        GraphGenerator generator = new GraphGenerator();
+        generator.setNumNodes(numNodes);
+        generator.setSeed(seed);
+        File f = folder.newFile(name);
+        generator.writeGml(f);
+        return f;
+    }
+
+    /**
+     * Write UTF-8 text to a new file in a temporary folder
+     */
+    static File writeFile(final TemporaryFolder folder, final String name,
+                          final String contents) throws IOException {
+        return writeFile(folder, name, contents.getBytes(Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Write bytes to a new file in a temporary folder
+     */
+    static File writeFile(final TemporaryFolder folder, final String name,
+                          final byte[] contents) throws IOException {
+        File f = folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+}
@@ -0,0 +1,152 @@
+package com.civisanalytics.gephi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.preview.api.PreviewController;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+import static com.civisanalytics.gephi.TestUtils.newGraphModel;
+
+public class TiledPngExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BufferedImage randomImage(final int width, final int height,
+                                             final int type, final long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encode an image in bands of rows and decode it with ImageIO
+     */
+    private static BufferedImage roundTrip(final BufferedImage image, final int band,
+                                           final boolean alpha) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PngStreamWriter writer = new PngStreamWriter(bytes, image.getWidth(),
+                                                     image.getHeight(), alpha);
+        for (int y = 0; y < image.getHeight(); y += band) {
+            int rows = Math.min(band, image.getHeight() - y);
+            writer.writeRows(image.getSubimage(0, y, image.getWidth(), rows), rows);
+        }
+        writer.close();
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testWriteRgb() throws IOException {
+        BufferedImage image = randomImage(37, 23, BufferedImage.TYPE_INT_RGB, 1L);
+        BufferedImage decoded = roundTrip(image, 5, false);
+        assertEquals(37, decoded.getWidth());
+        assertEquals(23, decoded.getHeight());
+        assertFalse(decoded.getColorModel().hasAlpha());
+        for (int y = 0; y < 23; y++) {
+            for (int x = 0; x < 37; x++) {
+                assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteRgba() throws IOException {
+        BufferedImage image = randomImage(16, 9, BufferedImage.TYPE_INT_ARGB, 2L);
+        BufferedImage decoded = roundTrip(image, 4, true);
+        assertTrue(decoded.getColorModel().hasAlpha());
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 16; x++) {
+                assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testMissingRows() throws IOException {
+        PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 4, 4, false);
+        writer.writeRows(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB), 3);
+        try {
+            writer.close();
+            fail("Incomplete image written");
+        } catch (IOException e) {
+            assertEquals("PNG has 3 of 4 rows", e.getMessage());
+        }
+    }
+
+    /**
+     * Test that the figure does not depend on the size of tiles
+     */
+    @Test
+    public void testTileSizes() throws IOException {
+        GraphModel graphModel = newGraphModel();
+        Graph graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+        Random random = new Random(3L);
+        Node[] nodes = new Node[50];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = factory.newNode(String.valueOf(i));
+            nodes[i].setX(random.nextFloat() * 1000f);
+            nodes[i].setY(random.nextFloat() * 1000f);
+            graph.addNode(nodes[i]);
+            if (i > 0) {
+                graph.addEdge(factory.newEdge(nodes[i], nodes[random.nextInt(i)]));
+            }
+        }
+        Workspace workspace = Lookup.getDefault().lookup(ProjectController.class)
+            .getCurrentWorkspace();
+
+        TiledPngExporter exporter = new TiledPngExporter(
+            Lookup.getDefault().lookup(PreviewController.class));
+        exporter.setWorkspace(workspace);
+        exporter.setWidth(300);
+        exporter.setHeight(200);
+        File whole = folder.newFile("whole.png");
+        exporter.setTileSize(200);
+        exporter.export(whole);
+        File tiled = folder.newFile("tiled.png");
+        exporter.setTileSize(17);
+        exporter.export(tiled);
+
+        BufferedImage expected = ImageIO.read(whole);
+        BufferedImage actual = ImageIO.read(tiled);
+        assertEquals(300, actual.getWidth());
+        assertEquals(200, actual.getHeight());
+        // Antialiasing of curves may differ slightly where they are clipped
+        int background = 0;
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    assertEquals(e >> shift & 0xff, a >> shift & 0xff, 32);
+                }
+                if (a == 0xffffffff) {
+                    background++;
+                }
+            }
+        }
+        assertTrue("Nothing rendered", background < 300 * 200);
+    }
+}